@@ -0,0 +1,66 @@
+package com.erp.scripting.benchmark;
+
+import com.erp.scripting.engine.GraalJSEngine;
+import com.erp.scripting.engine.ScriptLibraries;
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link GraalJSEngine} for benchmarks the way the application does: through a
+ * Spring context, so every {@code scripting.*} setting takes its production default and can
+ * be overridden with a system property (e.g. {@code -jvmArgs -Dscripting.pool.enabled=false}).
+ */
+final class BenchmarkEngines {
+
+    private BenchmarkEngines() {
+    }
+
+    static AnnotationConfigApplicationContext start(DataProxyService dataProxyService) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.registerBean(GraalJSEngine.class,
+                () -> new GraalJSEngine(new ObjectMapper(), dataProxyService, new SimpleMeterRegistry(),
+                        ScriptLibraries.NONE));
+        context.refresh();
+        return context;
+    }
+
+    static AnnotationConfigApplicationContext start() {
+        return start(new StubDataProxyService());
+    }
+
+    /**
+     * Fail the benchmark up front if the script does not run, rather than timing errors.
+     */
+    static void check(GraalJSEngine.ExecutionResult result) {
+        if (!result.success()) {
+            throw new IllegalStateException("Benchmark script failed: " + result.error());
+        }
+    }
+
+    /**
+     * Answers every query in-process with a fixed customer list, so ERP.query benchmarks
+     * measure the engine's host-call path rather than the network.
+     */
+    static final class StubDataProxyService extends DataProxyService {
+
+        private static final Map<String, Object> RESPONSE = Map.of("data", Map.of("customers", List.of(
+                Map.of("id", "c-1", "name", "ACME Corp", "creditLimit", 5000),
+                Map.of("id", "c-2", "name", "Globex", "creditLimit", 12000),
+                Map.of("id", "c-3", "name", "Initech", "creditLimit", 750))));
+
+        StubDataProxyService() {
+            super(new ObjectMapper());
+        }
+
+        @Override
+        public Map<String, Object> forwardGraphQLQuery(String service, String query, Map<String, Object> variables,
+                                                       String authToken, String companyId) {
+            return RESPONSE;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.erp.scripting.benchmark;
+
+import com.erp.scripting.engine.GraalJSEngine;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GraalJSEngine#execute} for a typical CALCULATION script.
+ *
+ * <ul>
+ *   <li>{@code warm} – the same script version over and over: source cache hit, pooled
+ *       context, compiled code</li>
+ *   <li>{@code cold} – a never-seen script version on every call: the source is parsed and
+ *       compiled again, the sandbox context still comes from the pool</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineExecutionBenchmark {
+
+    private static final String CODE = """
+            var total = 0;
+            for (var i = 0; i < order.lines.length; i++) {
+                var line = order.lines[i];
+                total += line.quantity * line.price * (1 - (line.discount || 0));
+            }
+            return { total: ERP.round(total, 2), lines: order.lines.length };
+            """;
+
+    private AnnotationConfigApplicationContext context;
+    private GraalJSEngine engine;
+    private Map<String, Object> input;
+    private UUID scriptId;
+    private int coldVersion;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkEngines.start();
+        engine = context.getBean(GraalJSEngine.class);
+        input = Map.of("order", Map.of("id", "o-1", "lines", List.of(
+                Map.of("quantity", 2, "price", 19.99),
+                Map.of("quantity", 1, "price", 250.0, "discount", 0.1),
+                Map.of("quantity", 12, "price", 1.25))));
+        scriptId = UUID.randomUUID();
+        BenchmarkEngines.check(warm());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public GraalJSEngine.ExecutionResult warm() {
+        return engine.execute(scriptId, 1, CODE, input, null, "benchmark");
+    }
+
+    @Benchmark
+    public GraalJSEngine.ExecutionResult cold() {
+        // A new version is a new source for the engine; the comment keeps its code cache from matching
+        int version = ++coldVersion;
+        return engine.execute(scriptId, version + 1, "// v" + version + "\n" + CODE, input, null, "benchmark");
+    }
+}
@@ -0,0 +1,92 @@
+package com.erp.scripting.benchmark;
+
+import com.erp.scripting.engine.GraalJSEngine;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scripts calling {@code ERP.query} against an in-process {@link BenchmarkEngines.StubDataProxyService},
+ * so the numbers cover the host-call path (argument conversion, per-run memo, response
+ * conversion) without network time.
+ *
+ * <ul>
+ *   <li>{@code singleQuery} – one query per run</li>
+ *   <li>{@code distinctQueries} – ten queries with different variables per run</li>
+ *   <li>{@code repeatedQuery} – the same query ten times per run, answered by the run's memo</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErpQueryBenchmark {
+
+    private static final String SINGLE = """
+            var data = ERP.query('masterdata', 'query($id: ID) { customers(id: $id) { id name creditLimit } }', { id: id });
+            return data.customers.length;
+            """;
+
+    private static final String DISTINCT = """
+            var total = 0;
+            for (var i = 0; i < 10; i++) {
+                var data = ERP.query('masterdata', 'query($id: ID) { customers(id: $id) { id name creditLimit } }', { id: id + i });
+                total += data.customers[0].creditLimit;
+            }
+            return total;
+            """;
+
+    private static final String REPEATED = """
+            var total = 0;
+            for (var i = 0; i < 10; i++) {
+                var data = ERP.query('masterdata', 'query($id: ID) { customers(id: $id) { id name creditLimit } }', { id: id });
+                total += data.customers[0].creditLimit;
+            }
+            return total;
+            """;
+
+    private AnnotationConfigApplicationContext context;
+    private GraalJSEngine engine;
+    private Map<String, Object> input;
+    private UUID singleId;
+    private UUID distinctId;
+    private UUID repeatedId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkEngines.start();
+        engine = context.getBean(GraalJSEngine.class);
+        input = Map.of("id", "c-1");
+        singleId = UUID.randomUUID();
+        distinctId = UUID.randomUUID();
+        repeatedId = UUID.randomUUID();
+        BenchmarkEngines.check(singleQuery());
+        BenchmarkEngines.check(distinctQueries());
+        BenchmarkEngines.check(repeatedQuery());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public GraalJSEngine.ExecutionResult singleQuery() {
+        return engine.execute(singleId, 1, SINGLE, input, "benchmark-token", "benchmark");
+    }
+
+    @Benchmark
+    public GraalJSEngine.ExecutionResult distinctQueries() {
+        return engine.execute(distinctId, 1, DISTINCT, input, "benchmark-token", "benchmark");
+    }
+
+    @Benchmark
+    public GraalJSEngine.ExecutionResult repeatedQuery() {
+        return engine.execute(repeatedId, 1, REPEATED, input, "benchmark-token", "benchmark");
+    }
+}
@@ -0,0 +1,100 @@
+package com.erp.scripting.benchmark;
+
+import com.erp.scripting.engine.HostValues;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of script input and output, i.e. what the engine's {@code convertToGraalValue}
+ * and {@code convertFromGraalValue} do through {@link HostValues}, for order payloads of
+ * about 1 KB, 100 KB and 1 MB of JSON.
+ *
+ * <ul>
+ *   <li>{@code toGuest} – wrapping the host payload for the script</li>
+ *   <li>{@code toGuestAndRead} – wrapping it and letting a script walk every line</li>
+ *   <li>{@code toHost} – converting a script-built object of the same shape back</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueConversionBenchmark {
+
+    @Param({"1", "100", "1024"})
+    public int payloadKb;
+
+    private Context context;
+    private Map<String, Object> payload;
+    private Value sumLines;
+    private Value guestPayload;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        context = Context.newBuilder("js").option("engine.WarnInterpreterOnly", "false").build();
+        payload = order(payloadKb * 1024);
+        sumLines = context.eval(Source.create("js", """
+                (function(order) {
+                    var total = 0;
+                    for (var i = 0; i < order.lines.length; i++) total += order.lines[i].quantity * order.lines[i].price;
+                    return total;
+                })
+                """));
+        String json = new ObjectMapper().writeValueAsString(payload);
+        guestPayload = context.eval("js", "JSON.parse").execute(json);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close(true);
+    }
+
+    @Benchmark
+    public Value toGuest() {
+        return context.asValue(HostValues.toGuest(payload));
+    }
+
+    @Benchmark
+    public double toGuestAndRead() {
+        return sumLines.execute(context.asValue(HostValues.toGuest(payload))).asDouble();
+    }
+
+    @Benchmark
+    public Object toHost() {
+        return HostValues.toHost(guestPayload);
+    }
+
+    /**
+     * An order with as many lines as fit into roughly {@code bytes} of JSON.
+     */
+    private static Map<String, Object> order(int bytes) {
+        List<Object> lines = new ArrayList<>();
+        // Each line serializes to about 100 bytes
+        for (int i = 0; i < Math.max(1, bytes / 100); i++) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("sku", "SKU-" + (100000 + i));
+            line.put("description", "Line item " + i);
+            line.put("quantity", 1 + i % 7);
+            line.put("price", 9.99 + i % 13);
+            line.put("taxable", i % 2 == 0);
+            lines.add(line);
+        }
+        Map<String, Object> order = new LinkedHashMap<>();
+        order.put("id", "o-1");
+        order.put("customer", Map.of("id", "c-1", "name", "ACME Corp"));
+        order.put("lines", lines);
+        return order;
+    }
+}
@@ -2,8 +2,10 @@ package com.erp.scripting;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class ScriptingServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(ScriptingServiceApplication.class, args);
@@ -1,11 +1,15 @@
 package com.erp.scripting.controller;
 
 import com.erp.scripting.service.DataProxyService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -24,6 +28,10 @@ public class DataProxyController {
 
     private final DataProxyService dataProxyService;
 
+    /** Copy downstream query responses straight to the client instead of parsing them. */
+    @Value("${erp.proxy.streaming.enabled:false}")
+    private boolean streamingEnabled;
+
     /**
      * Proxy a GraphQL query to a target ERP service.
      * 
@@ -33,18 +41,35 @@ public class DataProxyController {
      *   "query": "{ customers { nodes { id name email } } }",
      *   "variables": { ... }  // optional
      * }
+     *
+     * A query registered for the company can be run by name instead:
+     * { "queryId": "openInvoices", "variables": { ... } } (requires X-Company-Id).
+     *
+     * When the proxy cache is enabled, "Cache-Control: no-cache" or "X-ERP-Cache: bypass"
+     * forces a fresh response from the target service.
+     *
+     * In streaming mode (erp.proxy.streaming.enabled) the downstream body is copied to the
+     * client as is, keeping its Content-Encoding, so memory use does not grow with its size.
      */
     @PostMapping("/query")
     public ResponseEntity<Map<String, Object>> proxyQuery(
             @RequestBody Map<String, Object> request,
             @RequestHeader(value = "Authorization", required = false) String authHeader,
-            @RequestHeader(value = "X-Company-Id", required = false) String companyId
+            @RequestHeader(value = "X-Company-Id", required = false) String companyId,
+            @RequestHeader(value = "Cache-Control", required = false) String cacheControl,
+            @RequestHeader(value = "X-ERP-Cache", required = false) String cacheMode,
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+            HttpServletResponse servletResponse
     ) {
         String service = (String) request.get("service");
         String query = (String) request.get("query");
+        String queryId = (String) request.get("queryId");
         @SuppressWarnings("unchecked")
         Map<String, Object> variables = (Map<String, Object>) request.get("variables");
 
+        if (queryId != null && !queryId.isBlank()) {
+            return persistedQuery(queryId, variables, authHeader, companyId, bypassCache(cacheControl, cacheMode));
+        }
         if (service == null || service.isBlank()) {
             return ResponseEntity.badRequest().body(Map.of("error", "Missing 'service' field"));
         }
@@ -52,9 +77,14 @@ public class DataProxyController {
             return ResponseEntity.badRequest().body(Map.of("error", "Missing 'query' field"));
         }
 
+        if (streamingEnabled) {
+            return streamQuery(service, query, variables, authHeader, companyId, acceptEncoding, servletResponse);
+        }
+
         try {
-            Map<String, Object> result = dataProxyService.executeGraphQL(
-                    service, query, variables, authHeader, companyId);
+            Map<String, Object> result = bypassCache(cacheControl, cacheMode)
+                    ? dataProxyService.executeGraphQL(service, query, variables, authHeader, companyId, false)
+                    : dataProxyService.executeGraphQL(service, query, variables, authHeader, companyId);
             return ResponseEntity.ok(result);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -107,6 +137,60 @@ public class DataProxyController {
         }
     }
 
+    private ResponseEntity<Map<String, Object>> persistedQuery(
+            String queryId, Map<String, Object> variables, String authHeader, String companyId, boolean bypassCache) {
+        if (companyId == null || companyId.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Missing 'X-Company-Id' header"));
+        }
+        try {
+            return ResponseEntity.ok(dataProxyService.executePersistedQuery(
+                    queryId, variables, authHeader, companyId, !bypassCache));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Persisted query '{}' failed: {}", queryId, e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Query failed: " + e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> streamQuery(
+            String service, String query, Map<String, Object> variables, String authHeader, String companyId,
+            String acceptEncoding, HttpServletResponse servletResponse) {
+        DataProxyService.StreamedResponse streamed;
+        try {
+            streamed = dataProxyService.streamGraphQL(service, query, variables, authHeader, companyId, acceptEncoding);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Data proxy query failed for service '{}': {}", service, e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Query failed: " + e.getMessage()));
+        }
+
+        try (streamed) {
+            servletResponse.setStatus(HttpServletResponse.SC_OK);
+            servletResponse.setContentType(streamed.contentType());
+            if (streamed.contentEncoding() != null) {
+                servletResponse.setHeader(HttpHeaders.CONTENT_ENCODING, streamed.contentEncoding());
+                servletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (streamed.contentLength() >= 0) {
+                servletResponse.setContentLengthLong(streamed.contentLength());
+            }
+            streamed.body().transferTo(servletResponse.getOutputStream());
+        } catch (IOException e) {
+            // Headers are already sent; all we can do is cut the response short
+            log.warn("Streaming response from '{}' aborted: {}", service, e.getMessage());
+        }
+        return null;
+    }
+
+    private boolean bypassCache(String cacheControl, String cacheMode) {
+        return (cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("no-store")))
+                || "bypass".equalsIgnoreCase(cacheMode);
+    }
+
     /**
      * List available services and their capabilities.
      */
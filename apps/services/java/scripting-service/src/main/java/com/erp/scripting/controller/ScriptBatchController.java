@@ -0,0 +1,138 @@
+package com.erp.scripting.controller;
+
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.service.ScriptService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Streaming batch execution of a script over many inputs, for bulk imports.
+ *
+ * The request body is NDJSON: one JSON object per line, each bound as the script's input.
+ * The response is NDJSON as well, one result per input line in the same order:
+ * { "line": 1, "executionId": "...", "success": true, "result": ..., "error": null, "executionTimeMs": 3 }
+ *
+ * Lines are processed in chunks of scripting.batch.chunk-size, so neither side has to
+ * hold the whole import in memory; results of a chunk are flushed as soon as it is done.
+ */
+@RestController
+@RequestMapping("/api/scripts")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*", allowCredentials = "false")
+public class ScriptBatchController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final ScriptService scriptService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${scripting.batch.chunk-size:1000}")
+    private int chunkSize;
+
+    @PostMapping(value = "/{scriptId}/execute-batch", consumes = NDJSON, produces = NDJSON)
+    public ResponseEntity<Map<String, Object>> executeBatch(
+            @PathVariable UUID scriptId,
+            @RequestParam(value = "executedBy", required = false) UUID executedBy,
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestHeader(value = "X-Company-Id", required = false) String companyId,
+            HttpServletRequest servletRequest,
+            HttpServletResponse servletResponse
+    ) throws IOException {
+        Script script = scriptService.findById(scriptId).orElse(null);
+        if (script == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Script not found: " + scriptId));
+        }
+
+        servletResponse.setStatus(HttpServletResponse.SC_OK);
+        servletResponse.setContentType(NDJSON);
+        servletResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(servletRequest.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer = new OutputStreamWriter(servletResponse.getOutputStream(), StandardCharsets.UTF_8);
+
+        List<Line> chunk = new ArrayList<>(chunkSize);
+        int lineNumber = 0;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            lineNumber++;
+            if (text.isBlank()) {
+                continue;
+            }
+            chunk.add(parse(lineNumber, text));
+            if (chunk.size() >= chunkSize) {
+                runChunk(script, chunk, executedBy, authHeader, companyId, writer);
+            }
+        }
+        runChunk(script, chunk, executedBy, authHeader, companyId, writer);
+        return null;
+    }
+
+    private void runChunk(Script script, List<Line> chunk, UUID executedBy, String authHeader, String companyId,
+                          Writer writer) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Map<String, Object>> inputs = new ArrayList<>(chunk.size());
+        for (Line line : chunk) {
+            if (line.input() != null) {
+                inputs.add(line.input());
+            }
+        }
+        List<ScriptService.ScriptExecutionResult> results =
+                scriptService.executeBatch(script, inputs, executedBy, authHeader, companyId);
+
+        int next = 0;
+        for (Line line : chunk) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("line", line.number());
+            if (line.input() == null) {
+                out.put("success", false);
+                out.put("error", line.error());
+            } else {
+                ScriptService.ScriptExecutionResult result = results.get(next++);
+                out.put("executionId", result.executionId());
+                out.put("success", result.success());
+                out.put("result", result.result());
+                out.put("error", result.error());
+                out.put("executionTimeMs", result.executionTimeMs());
+            }
+            writer.write(objectMapper.writeValueAsString(out));
+            writer.write('\n');
+        }
+        writer.flush();
+        chunk.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Line parse(int number, String text) {
+        try {
+            Object value = objectMapper.readValue(text, Object.class);
+            if (value instanceof Map<?, ?> map) {
+                return new Line(number, (Map<String, Object>) map, null);
+            }
+            return new Line(number, null, "Each line must be a JSON object");
+        } catch (JsonProcessingException e) {
+            return new Line(number, null, "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private record Line(int number, Map<String, Object> input, String error) {}
+}
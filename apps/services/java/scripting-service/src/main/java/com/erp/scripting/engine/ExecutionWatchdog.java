@@ -0,0 +1,58 @@
+package com.erp.scripting.engine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels sandbox contexts whose run passed its deadline.
+ *
+ * <p>Interrupting the worker thread does not stop a script busy inside Graal; closing
+ * the context with {@code cancelIfExecuting} does, so the worker is actually freed.
+ */
+@Slf4j
+public class ExecutionWatchdog implements AutoCloseable {
+
+    private final ScheduledExecutorService scheduler;
+    private final Counter cancelled;
+
+    public ExecutionWatchdog(MeterRegistry meterRegistry) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "script-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cancelled = Counter.builder("scripting.execution.cancelled")
+                .description("Script runs cancelled by the watchdog after their deadline")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Arm the watchdog for a run. The returned handle must be disarmed when the run ends.
+     */
+    public ScheduledFuture<?> arm(SandboxContext sandbox, long deadlineNanos) {
+        long delay = Math.max(0, deadlineNanos - System.nanoTime());
+        return scheduler.schedule(() -> {
+            log.warn("Cancelling script run for tenant {} after deadline", sandbox.tenant());
+            cancelled.increment();
+            sandbox.close();
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return false if the watchdog already fired, in which case the context is closed
+     */
+    public boolean disarm(ScheduledFuture<?> handle) {
+        return handle == null || handle.cancel(false);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -1,15 +1,30 @@
 package com.erp.scripting.engine;
 
 import com.erp.scripting.service.DataProxyService;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.graalvm.polyglot.*;
+import org.graalvm.polyglot.io.IOAccess;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -17,7 +32,258 @@ public class GraalJSEngine {
     
     private final ObjectMapper objectMapper;
     private final DataProxyService dataProxyService;
-    private final ExecutorService executorService;
+    private final MeterRegistry meterRegistry;
+    
+    /**
+     * Runs scripts: a bounded platform-thread pool with an admission queue, or one virtual
+     * thread per run (scripting.execution.mode=virtual) for I/O-heavy ERP.query workloads.
+     */
+    private ExecutorService executorService;
+    
+    /** Per-company concurrency quota applied in both execution modes. */
+    private TenantConcurrencyLimiter tenantLimiter;
+    
+    /** Cancels contexts whose run passed its deadline so the worker thread is really freed. */
+    private ExecutionWatchdog watchdog;
+    
+    /** Spans and metrics for the ERP requests scripts make. */
+    private HostCallTracer hostCallTracer;
+    
+    /** Library scripts the sandboxes' module loaders resolve imports against. */
+    private final ScriptLibraries libraries;
+    
+    private Counter rejectedCounter;
+    
+    /**
+     * Single polyglot engine shared by every sandbox context, so compiled code
+     * (and Truffle's JIT profiles) survive across executions.
+     */
+    private final Engine sharedEngine;
+    
+    private static final long PROFILE_GRACE_MS = 2000;
+    
+    /** Start of the async IIFE every script is wrapped in, on the script's first line. */
+    private static final String WRAPPER_PREFIX = "(async function() { ";
+    
+    private static final String MODULE_MIME_TYPE = "application/javascript+module";
+    
+    /** Parsed sources keyed by script id and version; drives engine-level code caching. */
+    private Cache<SourceKey, Source> sourceCache;
+    
+    /** Pre-initialized contexts per tenant; null when pooling is disabled. */
+    private SandboxContextPool contextPool;
+    
+    /**
+     * Utilities installed into every sandbox context. Parsed once and shared through the engine's code cache.
+     * The objects are frozen so one run cannot alter them for the next run leasing the same context.
+     */
+    private static final Source PRELUDE = Source.newBuilder("js", """
+            var console = {
+                log: function(...args) { _log(args.map(String).join(' ')); },
+                warn: function(...args) { _log('[WARN] ' + args.map(String).join(' ')); },
+                error: function(...args) { _log('[ERROR] ' + args.map(String).join(' ')); }
+            };
+            var ERP = {
+                // Database access — synchronous wrappers around host callbacks.
+                // ERP.query(queryId, variables) runs a query registered for the company.
+                query: function(service, query, variables) {
+                    var result = typeof query === 'string'
+                        ? _queryService(service, query, variables || null)
+                        : _queryPersisted(service, query || null);
+                    if (result.errors && result.errors.length) throw new Error(result.errors[0].message);
+                    return result.data;
+                },
+                mutate: function(service, mutation, variables) {
+                    var result = _mutateService(service, mutation, variables || null);
+                    if (result.errors && result.errors.length) throw new Error(result.errors[0].message);
+                    return result.data;
+                },
+
+                // Batched query: calls made in the same tick are sent to each service as one
+                // merged request, e.g. await Promise.all(lines.map(l => ERP.load('shop', q, { id: l.id })))
+                load: (function() {
+                    var state = { run: -1, pending: null };
+                    function flush() {
+                        var batch = state.pending;
+                        state.pending = null;
+                        var byService = {};
+                        batch.forEach(function(item) { (byService[item.service] = byService[item.service] || []).push(item); });
+                        Object.keys(byService).forEach(function(service) {
+                            var items = byService[service];
+                            var results;
+                            try {
+                                results = _batchQueryService(service, items.map(function(item) {
+                                    return { query: item.query, variables: item.variables };
+                                }));
+                            } catch (e) {
+                                items.forEach(function(item) { item.reject(e); });
+                                return;
+                            }
+                            items.forEach(function(item, i) {
+                                var result = results[i];
+                                if (result.errors && result.errors.length) item.reject(new Error(result.errors[0].message));
+                                else item.resolve(result.data);
+                            });
+                        });
+                    }
+                    return function(service, query, variables) {
+                        return new Promise(function(resolve, reject) {
+                            var run = _runId();
+                            if (state.run !== run || state.pending === null) {
+                                // A previous run may have ended with an unflushed batch
+                                state.run = run;
+                                state.pending = [];
+                                Promise.resolve().then(flush);
+                            }
+                            state.pending.push({ service: service, query: query, variables: variables || null,
+                                                 resolve: resolve, reject: reject });
+                        });
+                    };
+                })(),
+
+                // Concurrent queries: each call starts its request immediately and returns a promise,
+                // e.g. var [customers, stock] = await ERP.all([ERP.queryAsync('masterdata', q1), ERP.queryAsync('shop', q2)])
+                queryAsync: (function() {
+                    var state = { run: -1, pending: {}, count: 0, pumping: false };
+                    function pump() {
+                        // Blocks in the host until at least one request completes
+                        var completions = _awaitQueries();
+                        completions.forEach(function(completion) {
+                            var entry = state.pending[completion.id];
+                            delete state.pending[completion.id];
+                            state.count--;
+                            if (!entry) return;
+                            var result = completion.result;
+                            if (result.errors && result.errors.length) entry.reject(new Error(result.errors[0].message));
+                            else entry.resolve(result.data);
+                        });
+                        if (state.count > 0 && completions.length > 0) Promise.resolve().then(pump);
+                        else state.pumping = false;
+                    }
+                    return function(service, query, variables) {
+                        var run = _runId();
+                        if (state.run !== run) {
+                            state.run = run;
+                            state.pending = {};
+                            state.count = 0;
+                            state.pumping = false;
+                        }
+                        var id = _startQuery(service, query, variables || null);
+                        var promise = new Promise(function(resolve, reject) {
+                            state.pending[id] = { resolve: resolve, reject: reject };
+                        });
+                        state.count++;
+                        if (!state.pumping) {
+                            state.pumping = true;
+                            Promise.resolve().then(pump);
+                        }
+                        return promise;
+                    };
+                })(),
+                // Promise.all over an array, or over the values of an object (resolving to an object)
+                all: function(promises) {
+                    if (Array.isArray(promises)) return Promise.all(promises);
+                    var keys = Object.keys(promises);
+                    return Promise.all(keys.map(function(key) { return promises[key]; })).then(function(values) {
+                        var result = {};
+                        keys.forEach(function(key, i) { result[key] = values[i]; });
+                        return result;
+                    });
+                },
+
+                // Safe math utilities
+                round: function(num, decimals) { return Math.round(num * Math.pow(10, decimals || 0)) / Math.pow(10, decimals || 0); },
+                clamp: function(num, min, max) { return Math.min(Math.max(num, min), max); },
+                
+                // String utilities
+                slugify: function(str) { return str.toLowerCase().replace(/[^a-z0-9]+/g, '-').replace(/(^-|-$)/g, ''); },
+                
+                // Array utilities
+                sum: function(arr) { return arr.reduce((a, b) => a + b, 0); },
+                avg: function(arr) { return arr.length ? ERP.sum(arr) / arr.length : 0; },
+                unique: function(arr) { return [...new Set(arr)]; },
+                groupBy: function(arr, key) { return arr.reduce((acc, item) => { (acc[item[key]] = acc[item[key]] || []).push(item); return acc; }, {}); },
+                
+                // Validation
+                isEmail: function(str) { return /^[^\\s@]+@[^\\s@]+\\.[^\\s@]+$/.test(str); },
+                isUUID: function(str) { return /^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$/i.test(str); },
+                
+                // Date utilities (limited)
+                now: function() { return Date.now(); },
+                formatDate: function(timestamp) { return new Date(timestamp).toISOString(); }
+            };
+            // Frozen all the way down, so neither ERP.load.x = ... nor console.log.x = ... reaches the next run
+            (function freeze(value) {
+                if ((typeof value !== 'object' && typeof value !== 'function') || value === null || Object.isFrozen(value)) return;
+                Object.freeze(value);
+                Reflect.ownKeys(value).forEach(function(key) { freeze(Object.getOwnPropertyDescriptor(value, key).value); });
+            })({ console: console, ERP: ERP });
+            """, "erp-prelude.js").buildLiteral();
+    
+    /**
+     * Evaluates to a function telling whether the built-ins still look as they did when the context
+     * was created. A run may patch them, e.g. {@code Math.round = ...} or {@code parseInt = ...};
+     * such a context would leak the patch into the next run and into the prelude, so it is discarded
+     * instead of pooled. The snapshot covers every object reachable from the global object through
+     * prototypes and property values, plus the intrinsics no global names (the generator and async
+     * function prototypes, the iterator prototypes). The built-ins are not frozen: assigning e.g.
+     * {@code obj.toString} would then silently fail in existing scripts. The check only uses
+     * functions captured here, and compares key counts before reading any descriptor, so a patched
+     * {@code Object.prototype} cannot fool it.
+     */
+    private static final Source BUILTINS_CHECK = Source.newBuilder("js", """
+            (function() {
+                var ownKeys = Reflect.ownKeys, describe = Object.getOwnPropertyDescriptor,
+                    prototypeOf = Object.getPrototypeOf, isExtensible = Object.isExtensible,
+                    isFrozen = Object.isFrozen, same = Object.is;
+                var targets = [], snapshots = [], seen = new Set(), pending = [globalThis];
+                [function*() {}, async function() {}, async function*() {}, [][Symbol.iterator](), ''[Symbol.iterator](),
+                    new Map()[Symbol.iterator](), new Set()[Symbol.iterator](), 'a'.matchAll(/a/g)
+                ].forEach(function(hidden) { pending.push(prototypeOf(hidden)); });
+                while (pending.length) {
+                    var target = pending.pop();
+                    if ((typeof target !== 'object' && typeof target !== 'function') || target === null || seen.has(target)) continue;
+                    seen.add(target);
+                    var keys, entries = [];
+                    try {
+                        keys = ownKeys(target);
+                        for (var k = 0; k < keys.length; k++) entries.push([keys[k], describe(target, keys[k])]);
+                    } catch (e) {
+                        continue;  // host objects (_log, _queryService, ...) cannot be patched by scripts
+                    }
+                    pending.push(prototypeOf(target));
+                    for (var d = 0; d < entries.length; d++) {
+                        pending.push(entries[d][1].value, entries[d][1].get, entries[d][1].set);
+                    }
+                    // Nothing about a frozen object can change
+                    if (!isFrozen(target)) {
+                        targets.push(target);
+                        snapshots.push({ proto: prototypeOf(target), extensible: isExtensible(target), entries: entries });
+                    }
+                }
+                seen = pending = null;
+                function intact(target, snapshot) {
+                    if (prototypeOf(target) !== snapshot.proto || isExtensible(target) !== snapshot.extensible) return false;
+                    var entries = snapshot.entries;
+                    for (var e = 0; e < entries.length; e++) {
+                        var was = entries[e][1], now = describe(target, entries[e][0]);
+                        if (now === undefined || !same(now.value, was.value) || now.get !== was.get || now.set !== was.set
+                                || now.writable !== was.writable || now.enumerable !== was.enumerable
+                                || now.configurable !== was.configurable) return false;
+                    }
+                    return true;
+                }
+                return function() {
+                    for (var t = 0; t < targets.length; t++) {
+                        if (ownKeys(targets[t]).length !== snapshots[t].entries.length) return false;
+                    }
+                    for (var u = 0; u < targets.length; u++) {
+                        if (!intact(targets[u], snapshots[u])) return false;
+                    }
+                    return true;
+                };
+            })()
+            """, "erp-builtins-check.js").buildLiteral();
     
     @org.springframework.beans.factory.annotation.Value("${scripting.execution.timeout-ms:5000}")
     private long timeoutMs;
@@ -34,15 +300,118 @@ public class GraalJSEngine {
     @org.springframework.beans.factory.annotation.Value("${scripting.execution.allow-file-access:false}")
     private boolean allowFileAccess;
     
-    public GraalJSEngine(ObjectMapper objectMapper, DataProxyService dataProxyService) {
+    @org.springframework.beans.factory.annotation.Value("${scripting.cache.enabled:true}")
+    private boolean cacheEnabled;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.cache.max-size:100}")
+    private long cacheMaxSize;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.cache.expire-after-write-minutes:60}")
+    private long cacheExpireAfterWriteMinutes;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.execution.mode:platform}")
+    private String executionMode;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.execution.max-concurrent-per-company:4}")
+    private int maxConcurrentPerCompany;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.execution.quota-wait-ms:250}")
+    private long quotaWaitMs;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.execution.worker-threads:16}")
+    private int workerThreads;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.execution.queue-capacity:200}")
+    private int queueCapacity;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.batch.parallelism:0}")
+    private int batchParallelism;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.pool.enabled:true}")
+    private boolean poolEnabled;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.pool.max-per-tenant:8}")
+    private int poolMaxPerTenant;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.pool.max-uses:500}")
+    private int poolMaxUses;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.pool.acquire-timeout-ms:1000}")
+    private long poolAcquireTimeoutMs;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.pool.max-tenants:1000}")
+    private long poolMaxTenants;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.pool.idle-timeout-minutes:10}")
+    private long poolIdleTimeoutMinutes;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.profile.timeout-ms:30000}")
+    private long profileTimeoutMs;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.profile.sample-period-ms:1}")
+    private long profileSamplePeriodMs;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.profile.max-entries:25}")
+    private int profileMaxEntries;
+    
+    @org.springframework.beans.factory.annotation.Value("${scripting.tracing.count-bytes:false}")
+    private boolean countHostCallBytes;
+    
+    public GraalJSEngine(ObjectMapper objectMapper, DataProxyService dataProxyService, MeterRegistry meterRegistry,
+                         ScriptLibraries libraries) {
         this.objectMapper = objectMapper;
         this.dataProxyService = dataProxyService;
-        this.executorService = Executors.newCachedThreadPool();
+        this.meterRegistry = meterRegistry;
+        this.libraries = libraries;
+        this.sharedEngine = Engine.newBuilder("js")
+                .option("engine.WarnInterpreterOnly", "false")
+                .build();
+    }
+    
+    @PostConstruct
+    void init() {
+        this.sourceCache = Caffeine.newBuilder()
+                .maximumSize(cacheEnabled ? cacheMaxSize : 0)
+                .expireAfterWrite(Duration.ofMinutes(cacheExpireAfterWriteMinutes))
+                .build();
+        if (poolEnabled) {
+            this.contextPool = new SandboxContextPool(this::createSandbox, poolMaxPerTenant, poolMaxUses,
+                    poolAcquireTimeoutMs, poolMaxTenants, poolIdleTimeoutMinutes, meterRegistry);
+        }
+        
+        if ("virtual".equalsIgnoreCase(executionMode)) {
+            this.executorService = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("script-vt-", 0).factory());
+        } else {
+            AtomicInteger threadCounter = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> new Thread(runnable, "script-worker-" + threadCounter.incrementAndGet()),
+                    new ThreadPoolExecutor.AbortPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            Gauge.builder("scripting.executor.active", pool, ThreadPoolExecutor::getActiveCount)
+                    .register(meterRegistry);
+            Gauge.builder("scripting.executor.queued", pool, e -> e.getQueue().size())
+                    .register(meterRegistry);
+            this.executorService = pool;
+        }
+        log.info("Script execution mode: {}", executionMode);
+        this.tenantLimiter = new TenantConcurrencyLimiter(maxConcurrentPerCompany, meterRegistry);
+        this.hostCallTracer = new HostCallTracer(objectMapper, meterRegistry, countHostCallBytes);
+        this.watchdog = new ExecutionWatchdog(meterRegistry);
+        this.rejectedCounter = Counter.builder("scripting.executor.rejected")
+                .description("Script runs rejected because the worker queue was full")
+                .register(meterRegistry);
     }
     
     @PreDestroy
     public void shutdown() {
         executorService.shutdown();
+        watchdog.close();
+        if (contextPool != null) {
+            contextPool.close();
+        }
+        sharedEngine.close();
     }
     
     public ExecutionResult execute(String code, Map<String, Object> context) {
@@ -50,14 +419,288 @@ public class GraalJSEngine {
     }
 
     public ExecutionResult execute(String code, Map<String, Object> context, String authToken, String companyId) {
+        return execute(adHocSource(code), context, authToken, companyId);
+    }
+    
+    /**
+     * Execute a stored script. The parsed source is cached per script id and version so
+     * repeated runs reuse the code already compiled by the shared engine.
+     */
+    public ExecutionResult execute(UUID scriptId, int version, String code, Map<String, Object> context,
+                                   String authToken, String companyId) {
+        if (scriptId == null) {
+            return execute(code, context, authToken, companyId);
+        }
+        return execute(storedSource(scriptId, version, code), context, authToken, companyId);
+    }
+    
+    /**
+     * Execute a stored script that is stopped at {@code deadlineNanos} (a {@link System#nanoTime()}
+     * value) if that comes before the configured timeout, e.g. when its trigger's deadline passes.
+     * If the company's quota is exhausted, the run waits for a slot until that deadline.
+     */
+    public ExecutionResult execute(UUID scriptId, int version, String code, Map<String, Object> context,
+                                   String authToken, String companyId, long deadlineNanos) {
+        Source source = scriptId != null ? storedSource(scriptId, version, code) : adHocSource(code);
+        return execute(source, context, authToken, companyId, null, deadlineNanos);
+    }
+    
+    /**
+     * Execute a stored script with the CPU sampler attached and return its profile along
+     * with the result. Profiled runs use a throwaway engine (see {@link ScriptProfiler}),
+     * count against the company's quota like any run, and get scripting.profile.timeout-ms
+     * since profiling slows the script down. A run that times out still yields its profile.
+     */
+    public ProfiledResult executeProfiled(UUID scriptId, int version, String code, Map<String, Object> context,
+                                          String authToken, String companyId) {
+        Source source = scriptId != null ? storedSource(scriptId, version, code) : adHocSource(code);
+        AtomicReference<Map<String, Object>> profile = new AtomicReference<>();
+        ExecutionResult result = execute(source, context, authToken, companyId, profile, null);
+        return new ProfiledResult(result, profile.get());
+    }
+    
+    /**
+     * Check that code parses, without running it or caching anything.
+     *
+     * @throws ScriptSyntaxException with the position of the first syntax error
+     */
+    public void validate(String code) {
+        parse(adHocSource(code), code, prefixLength(code));
+    }
+    
+    /**
+     * Check that library code parses as an ES module. Its imports are not resolved; a missing
+     * library fails the importing run.
+     *
+     * @throws ScriptSyntaxException with the position of the first syntax error
+     */
+    public void validateLibrary(String code) {
+        Source source = Source.newBuilder("js", code, "inline-library.mjs")
+                .mimeType(MODULE_MIME_TYPE)
+                .cached(false)
+                .buildLiteral();
+        parse(source, code, 0);
+    }
+    
+    /**
+     * Parse a stored script version without running it and keep the parsed source, so its
+     * first execution finds the code already compiled by the shared engine.
+     *
+     * @throws ScriptSyntaxException with the position of the first syntax error
+     */
+    public void compile(UUID scriptId, int version, String code) {
+        Source source = storedSource(scriptId, version, code);
+        try {
+            parse(source, code, prefixLength(code));
+        } catch (RuntimeException e) {
+            sourceCache.invalidate(new SourceKey(scriptId, version));
+            throw e;
+        }
+    }
+    
+    /**
+     * Parse in a throwaway context rather than a pooled sandbox: saving a script must not wait
+     * for, or fail on, a tenant pool busy with runs. The context is built like the sandboxes,
+     * so the parsed code lands in the shared engine's cache all the same.
+     */
+    private void parse(Source source, String code, int prefixLength) {
+        try (Context parser = contextBuilder(sharedEngine).allowIO(IOAccess.NONE).build()) {
+            parser.parse(source);
+        } catch (PolyglotException e) {
+            if (!e.isSyntaxError()) {
+                throw e;
+            }
+            throw syntaxError(e, code, prefixLength);
+        }
+    }
+    
+    private static ScriptSyntaxException syntaxError(PolyglotException e, String code, int prefixLength) {
+        SourceSection location = e.getSourceLocation();
+        int line = location != null ? location.getStartLine() : 1;
+        int column = location != null ? location.getStartColumn() : 1;
+        if (line == 1) {
+            // Column in the script's own code, not in the wrapper around it
+            column = Math.max(1, column - prefixLength);
+        }
+        String[] lines = code.split("\n", -1);
+        if (line > lines.length) {
+            // Unexpected end of input is reported on the wrapper's closing line
+            line = lines.length;
+            column = lines[lines.length - 1].length() + 1;
+        }
+        // GraalJS reports "SyntaxError: <source>:<line>:<column> <message>" followed by the offending line
+        String message = e.getMessage() != null ? e.getMessage().lines().findFirst().orElse("") : "";
+        message = message.replaceFirst("^(SyntaxError: )?\\S+:\\d+:\\d+\\s*", "");
+        return new ScriptSyntaxException(line, column, message);
+    }
+    
+    /**
+     * Drop all cached versions of a script, e.g. after it was updated or deleted.
+     */
+    public void evict(UUID scriptId) {
+        sourceCache.asMap().keySet().removeIf(key -> key.scriptId().equals(scriptId));
+    }
+    
+    /**
+     * Execute a stored script once per input. The source is resolved once; the inputs are
+     * spread over up to {@code scripting.batch.parallelism} workers (capped by the company's
+     * concurrency quota), and each worker keeps one warmed sandbox for all the items it
+     * takes, resetting its globals between items. Every item gets the normal execution
+     * timeout. Results are returned in input order.
+     */
+    public List<ExecutionResult> executeBatch(UUID scriptId, int version, String code,
+                                              List<Map<String, Object>> inputs, String authToken, String companyId) {
+        if (inputs.isEmpty()) {
+            return List.of();
+        }
+        Source source = storedSource(scriptId, version, code);
+        int parallelism = Math.min(inputs.size(), batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors());
+        
+        ExecutionResult[] results = new ExecutionResult[inputs.size()];
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                // The first worker may wait for a quota slot; further workers only use free ones
+                TenantConcurrencyLimiter.Permit permit = tenantLimiter.tryAcquire(companyId, i == 0 ? quotaWaitMs : 0);
+                if (permit == null) {
+                    break;
+                }
+                try {
+                    workers.add(executorService.submit(() -> {
+                        try {
+                            runBatchWorker(source, inputs, next, results, authToken, companyId);
+                        } finally {
+                            permit.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    permit.release();
+                    rejectedCounter.increment();
+                    break;
+                }
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.forEach(worker -> worker.cancel(true));
+        } catch (ExecutionException e) {
+            log.error("Batch worker for script {} failed", scriptId, e.getCause());
+        }
+        
+        String unprocessed = workers.isEmpty()
+                ? "Too many concurrent script executions for this company"
+                : "Batch execution aborted";
+        List<ExecutionResult> ordered = new ArrayList<>(results.length);
+        for (ExecutionResult result : results) {
+            ordered.add(result != null ? result : ExecutionResult.error(unprocessed, 0));
+        }
+        return ordered;
+    }
+    
+    private void runBatchWorker(Source source, List<Map<String, Object>> inputs, AtomicInteger next,
+                                ExecutionResult[] results, String authToken, String companyId) {
+        SandboxContext sandbox = null;
+        try {
+            int index;
+            while (!Thread.currentThread().isInterrupted() && (index = next.getAndIncrement()) < inputs.size()) {
+                if (sandbox == null) {
+                    try {
+                        sandbox = leaseSandbox(companyId);
+                    } catch (RuntimeException e) {
+                        results[index] = ExecutionResult.error(e.getMessage(), 0);
+                        continue;
+                    }
+                }
+                long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                SandboxRun run = runInSandbox(sandbox, source, inputs.get(index), authToken, companyId, deadlineNanos);
+                results[index] = run.result();
+                // Retire the context like the pool would, or clear the item's globals for the next one
+                if (!run.reusable() || sandbox.uses() >= poolMaxUses || !sandbox.reset()) {
+                    releaseSandbox(sandbox, false);
+                    sandbox = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (sandbox != null) {
+                releaseSandbox(sandbox, true);
+            }
+        }
+    }
+    
+    private ExecutionResult execute(Source source, Map<String, Object> context, String authToken, String companyId) {
+        return execute(source, context, authToken, companyId, null, null);
+    }
+    
+    /**
+     * @param profile receives the run's profile if not null; the run is then profiled
+     * @param callerDeadlineNanos stops the run earlier than its timeout if not null
+     */
+    private ExecutionResult execute(Source source, Map<String, Object> context, String authToken, String companyId,
+                                    AtomicReference<Map<String, Object>> profile, Long callerDeadlineNanos) {
         long startTime = System.currentTimeMillis();
         
-        Future<ExecutionResult> future = executorService.submit(() -> executeInSandbox(code, context, authToken, companyId));
+        // A run with a caller deadline (e.g. one of a trigger's scripts) queues for a quota slot
+        // until that deadline instead of failing after quota-wait-ms
+        long quotaWait = callerDeadlineNanos != null
+                ? Math.max(quotaWaitMs, TimeUnit.NANOSECONDS.toMillis(callerDeadlineNanos - System.nanoTime()))
+                : quotaWaitMs;
+        TenantConcurrencyLimiter.Permit permit;
+        try {
+            permit = tenantLimiter.tryAcquire(companyId, quotaWait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ExecutionResult.error("Execution interrupted", System.currentTimeMillis() - startTime);
+        }
+        if (permit == null) {
+            log.warn("Company {} reached its script concurrency quota", companyId);
+            return ExecutionResult.error("Too many concurrent script executions for this company", System.currentTimeMillis() - startTime);
+        }
+        
+        // The timeout counts from when the run got its slot
+        long runTimeoutMs = profile != null ? profileTimeoutMs : timeoutMs;
+        long timeoutNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(runTimeoutMs);
+        long deadlineNanos = callerDeadlineNanos != null && callerDeadlineNanos - timeoutNanos < 0
+                ? callerDeadlineNanos : timeoutNanos;
         
+        // Whoever flips this first owns the run: the worker starting it, or the caller abandoning it
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<ExecutionResult> future;
         try {
-            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            future = executorService.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return ExecutionResult.timeout(0);
+                }
+                try {
+                    return profile != null
+                            ? executeProfiledInSandbox(source, context, authToken, companyId, deadlineNanos, profile)
+                            : executeInSandbox(source, context, authToken, companyId, deadlineNanos);
+                } finally {
+                    permit.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permit.release();
+            rejectedCounter.increment();
+            log.warn("Script executor saturated, rejecting run for company {}", companyId);
+            return ExecutionResult.error("Script executor is saturated, try again later", System.currentTimeMillis() - startTime);
+        }
+        
+        try {
+            // A profiled run is stopped by the watchdog; allow it time to hand over the profile
+            long waitNanos = Math.max(0, deadlineNanos - System.nanoTime())
+                    + (profile != null ? TimeUnit.MILLISECONDS.toNanos(PROFILE_GRACE_MS) : 0);
+            return future.get(waitNanos, TimeUnit.NANOSECONDS);
         } catch (TimeoutException e) {
+            // Removes the task if still queued; a running script is stopped by the watchdog
             future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                permit.release();
+            }
             return ExecutionResult.timeout(System.currentTimeMillis() - startTime);
         } catch (ExecutionException e) {
             return ExecutionResult.error(
@@ -66,31 +709,92 @@ public class GraalJSEngine {
             );
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                permit.release();
+            }
             return ExecutionResult.error("Execution interrupted", System.currentTimeMillis() - startTime);
         }
     }
     
-    private ExecutionResult executeInSandbox(String code, Map<String, Object> context, String authToken, String companyId) {
+    private ExecutionResult executeInSandbox(Source source, Map<String, Object> context, String authToken, String companyId,
+                                             long deadlineNanos) {
         long startTime = System.currentTimeMillis();
+        if (System.nanoTime() >= deadlineNanos) {
+            // Deadline passed while queued; the caller has already given up
+            return ExecutionResult.timeout(0);
+        }
         
-        // Create sandboxed context with resource limits
-        try (Context graalContext = Context.newBuilder("js")
-                .allowHostAccess(HostAccess.SCOPED)
-                .allowHostClassLookup(className -> false)  // No Java class access
-                .allowAllAccess(false)  // Explicitly disable all access, then selectively enable
-                .allowNativeAccess(false)
-                .allowCreateThread(false)
-                .allowCreateProcess(false)
-                .allowEnvironmentAccess(EnvironmentAccess.NONE)
-                .option("js.ecmascript-version", "2022")
-                .option("engine.WarnInterpreterOnly", "false")
-                .resourceLimits(ResourceLimits.newBuilder()
-                        .statementLimit(maxStatements, null)
-                        .build())
-                .build()) {
-            
-            // Create sandbox bindings
-            Value bindings = graalContext.getBindings("js");
+        SandboxContext sandbox;
+        try {
+            sandbox = leaseSandbox(companyId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ExecutionResult.error("Execution interrupted", System.currentTimeMillis() - startTime);
+        } catch (RuntimeException e) {
+            log.warn("Could not obtain sandbox context: {}", e.getMessage());
+            return ExecutionResult.error(e.getMessage(), System.currentTimeMillis() - startTime);
+        }
+        
+        boolean reusable = false;
+        try {
+            SandboxRun run = runInSandbox(sandbox, source, context, authToken, companyId, deadlineNanos);
+            reusable = run.reusable();
+            return run.result();
+        } finally {
+            releaseSandbox(sandbox, reusable);
+        }
+    }
+    
+    private ExecutionResult executeProfiledInSandbox(Source source, Map<String, Object> context, String authToken,
+                                                     String companyId, long deadlineNanos,
+                                                     AtomicReference<Map<String, Object>> profile) {
+        long startTime = System.currentTimeMillis();
+        try (ScriptProfiler profiler = new ScriptProfiler(objectMapper, profileSamplePeriodMs, profileMaxEntries)) {
+            SandboxContext sandbox = createSandbox(companyId, profiler.engine());
+            SandboxRun run;
+            try {
+                profiler.begin();
+                run = runInSandbox(sandbox, source, context, authToken, companyId, deadlineNanos);
+                profiler.end();
+            } finally {
+                sandbox.close();
+            }
+            profile.set(profiler.finish(source.getName(), sandbox.hostCalls(), sandbox.spans()));
+            return run.result();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not profile script: {}", e.getMessage());
+            return ExecutionResult.error("Could not start the profiler", System.currentTimeMillis() - startTime);
+        }
+    }
+    
+    /**
+     * Run one script invocation in a leased sandbox, guarded by the watchdog.
+     *
+     * @return the result, and whether the context may run further scripts
+     */
+    private SandboxRun runInSandbox(SandboxContext sandbox, Source source, Map<String, Object> context,
+                                    String authToken, String companyId, long deadlineNanos) {
+        ScheduledFuture<?> watchdogHandle = watchdog.arm(sandbox, deadlineNanos);
+        SandboxRun run;
+        boolean intact;
+        try {
+            run = evaluate(sandbox, source, context, authToken, companyId, deadlineNanos);
+        } finally {
+            intact = watchdog.disarm(watchdogHandle);
+        }
+        ExecutionResult result = run.result().withHostCalls(sandbox.hostCallSummary());
+        // If the watchdog already fired, the context is closed and must not go back to the pool
+        return new SandboxRun(result, intact && run.reusable());
+    }
+    
+    private SandboxRun evaluate(SandboxContext sandbox, Source source, Map<String, Object> context,
+                                String authToken, String companyId, long deadlineNanos) {
+        long startTime = System.currentTimeMillis();
+        try {
+            sandbox.beginRun(authToken, companyId, deadlineNanos);
+            Context graalContext = sandbox.context();
+            Value bindings = sandbox.bindings();
             
             // Add context data
             if (context != null) {
@@ -99,184 +803,397 @@ public class GraalJSEngine {
                 }
             }
             
-            // Add safe utility functions
-            addUtilityFunctions(graalContext, bindings, authToken, companyId);
-            
-            // Wrap code to capture return value
-            String wrappedCode = wrapCode(code);
-            
-            // Execute
-            Value result = graalContext.eval("js", wrappedCode);
+            // Execute (source is already wrapped in an async function to capture the return value)
+            Value result = graalContext.eval(source);
             
-            // Convert result back to Java
-            Object javaResult = convertFromGraalValue(result);
+            // Settle the returned promise and convert the result back to Java
+            PromiseOutcome outcome = settle(result);
             
             long executionTime = System.currentTimeMillis() - startTime;
-            return ExecutionResult.success(javaResult, executionTime);
+            if (outcome.error() != null) {
+                log.error("Script execution failed: {}", outcome.error());
+                return new SandboxRun(ExecutionResult.error(sanitizeErrorMessage(outcome.error()), executionTime), true);
+            }
+            return new SandboxRun(ExecutionResult.success(outcome.value(), executionTime), true);
             
         } catch (PolyglotException e) {
-            log.error("Script execution failed", e);
             long executionTime = System.currentTimeMillis() - startTime;
             
-            if (e.isResourceExhausted()) {
-                return ExecutionResult.timeout(executionTime);
+            if (e.isResourceExhausted() || e.isCancelled()) {
+                log.warn("Script execution stopped: {}", e.isCancelled() ? "deadline exceeded" : "resource limit");
+                return new SandboxRun(ExecutionResult.timeout(executionTime), false);
             }
+            log.error("Script execution failed", e);
             
-            return ExecutionResult.error(sanitizeErrorMessage(e.getMessage()), executionTime);
+            // A plain guest exception leaves the context intact
+            boolean reusable = e.isGuestException() && !e.isInternalError();
+            return new SandboxRun(ExecutionResult.error(sanitizeErrorMessage(e.getMessage()), executionTime), reusable);
         } catch (Exception e) {
             log.error("Script execution error", e);
-            return ExecutionResult.error(e.getMessage(), System.currentTimeMillis() - startTime);
+            return new SandboxRun(ExecutionResult.error(e.getMessage(), System.currentTimeMillis() - startTime), false);
         }
     }
     
-    private Value convertToGraalValue(Context context, Object value) {
-        if (value == null) {
-            return context.asValue(null);
-        }
-        if (value instanceof Map || value instanceof java.util.List) {
-            try {
-                String json = objectMapper.writeValueAsString(value);
-                return context.eval("js", "(" + json + ")");
-            } catch (JsonProcessingException e) {
-                return context.asValue(value.toString());
-            }
+    private record SandboxRun(ExecutionResult result, boolean reusable) {}
+    
+    /**
+     * Resolve the script's result. Jobs queued by the script (e.g. ERP.load batches) run when
+     * control returns from the guest, so by the time {@code then} returns the promise has
+     * settled unless it waits on something that never completes.
+     */
+    private PromiseOutcome settle(Value result) {
+        if (!isPromise(result)) {
+            return new PromiseOutcome(convertFromGraalValue(result), null);
         }
-        return context.asValue(value);
+        PromiseOutcome[] outcome = new PromiseOutcome[1];
+        result.invokeMember("then",
+                (org.graalvm.polyglot.proxy.ProxyExecutable) args -> {
+                    outcome[0] = new PromiseOutcome(args.length > 0 ? convertFromGraalValue(args[0]) : null, null);
+                    return null;
+                },
+                (org.graalvm.polyglot.proxy.ProxyExecutable) args -> {
+                    outcome[0] = new PromiseOutcome(null, args.length > 0 ? args[0].toString() : "Script failed");
+                    return null;
+                });
+        return outcome[0] != null ? outcome[0] : new PromiseOutcome(null, "Script did not complete: awaited a promise that never settled");
     }
     
-    private Object convertFromGraalValue(Value value) {
-        if (value == null || value.isNull()) {
-            return null;
-        }
-        if (value.isBoolean()) {
-            return value.asBoolean();
-        }
-        if (value.isNumber()) {
-            if (value.fitsInInt()) {
-                return value.asInt();
-            }
-            if (value.fitsInLong()) {
-                return value.asLong();
-            }
-            return value.asDouble();
-        }
-        if (value.isString()) {
-            return value.asString();
-        }
-        if (value.hasArrayElements()) {
-            int size = (int) value.getArraySize();
-            java.util.List<Object> list = new java.util.ArrayList<>(size);
-            for (int i = 0; i < size; i++) {
-                list.add(convertFromGraalValue(value.getArrayElement(i)));
-            }
-            return list;
+    private boolean isPromise(Value value) {
+        Value metaObject = value.getMetaObject();
+        return metaObject != null && "Promise".equals(metaObject.getMetaSimpleName());
+    }
+    
+    private record PromiseOutcome(Object value, String error) {}
+    
+    private SandboxContext leaseSandbox(String companyId) throws InterruptedException {
+        return contextPool != null ? contextPool.lease(companyId) : createSandbox(companyId);
+    }
+    
+    private void releaseSandbox(SandboxContext sandbox, boolean reusable) {
+        if (contextPool != null) {
+            contextPool.release(sandbox, reusable);
+        } else {
+            sandbox.close();
         }
-        if (value.hasMembers()) {
-            Map<String, Object> map = new java.util.HashMap<>();
-            for (String key : value.getMemberKeys()) {
-                map.put(key, convertFromGraalValue(value.getMember(key)));
-            }
-            return map;
+    }
+    
+    /**
+     * Build a sandboxed context with resource limits, attached to the shared engine,
+     * and evaluate the console/ERP prelude into it.
+     */
+    private SandboxContext createSandbox(String tenant) {
+        return createSandbox(tenant, sharedEngine);
+    }
+    
+    private SandboxContext createSandbox(String tenant, Engine engine) {
+        LibraryFileSystem modules = new LibraryFileSystem(libraries, tenant);
+        Context graalContext = contextBuilder(engine)
+                .allowIO(IOAccess.newBuilder()
+                        .fileSystem(modules)  // Library imports only
+                        .build())
+                .build();
+        try {
+            SandboxContext sandbox = new SandboxContext(tenant, graalContext, modules::loaded);
+            addUtilityFunctions(sandbox);
+            sandbox.captureBaseline(graalContext.eval(BUILTINS_CHECK));
+            return sandbox;
+        } catch (RuntimeException e) {
+            graalContext.close(true);
+            throw e;
         }
-        return value.toString();
     }
     
-    private void addUtilityFunctions(Context context, Value bindings, String authToken, String companyId) {
-        // Add console.log that captures output
-        StringBuilder logOutput = new StringBuilder();
-        context.eval("js", """
-            var console = {
-                log: function(...args) { _log(args.map(String).join(' ')); },
-                warn: function(...args) { _log('[WARN] ' + args.map(String).join(' ')); },
-                error: function(...args) { _log('[ERROR] ' + args.map(String).join(' ')); }
-            };
-            """);
-        bindings.putMember("_log", (java.util.function.Consumer<String>) msg -> {
-            logOutput.append(msg).append("\n");
+    /**
+     * Sandbox settings without I/O. Contexts built from it share the engine's parsed code.
+     */
+    private Context.Builder contextBuilder(Engine engine) {
+        return Context.newBuilder("js")
+                .engine(engine)
+                .allowHostAccess(HostAccess.SCOPED)
+                .allowHostClassLookup(className -> false)  // No Java class access
+                .allowAllAccess(false)  // Explicitly disable all access, then selectively enable
+                .allowNativeAccess(false)
+                .allowCreateThread(false)
+                .allowCreateProcess(false)
+                .allowEnvironmentAccess(EnvironmentAccess.NONE)
+                .option("js.ecmascript-version", "2022")
+                .resourceLimits(ResourceLimits.newBuilder()
+                        // The built-ins check is not part of any run's budget
+                        .statementLimit(maxStatements, source -> !BUILTINS_CHECK.getName().equals(source.getName()))
+                        .build());
+    }
+    
+    private Value convertToGraalValue(Context context, Object value) {
+        // Maps and lists are bound as lazy views; the script reads the host data in place
+        return context.asValue(HostValues.toGuest(value));
+    }
+    
+    private Object convertFromGraalValue(Value value) {
+        return HostValues.toHost(value);
+    }
+    
+    private void addUtilityFunctions(SandboxContext sandbox) {
+        Context context = sandbox.context();
+        Value bindings = sandbox.bindings();
+        
+        // Capture console output into the current run's log buffer
+        bindings.putMember("_log", (org.graalvm.polyglot.proxy.ProxyExecutable) args -> {
+            String msg = args[0].asString();
+            sandbox.logOutput().append(msg).append("\n");
             log.debug("Script log: {}", msg);
+            return null;
         });
 
-        // Add _queryService and _mutateService host functions for ERP.query/mutate
-        bindings.putMember("_queryService", (org.graalvm.polyglot.proxy.ProxyExecutable) args -> {
+        // Add _queryService and _mutateService host functions for ERP.query/mutate.
+        // Auth and company are read from the sandbox, as they change with every leased run.
+        // Identical queries within one run are answered from the run's memo until the run mutates.
+        bindings.putMember("_queryService", timed(sandbox, "_queryService", args -> {
             String service = args[0].asString();
             String queryStr = args[1].asString();
-            String varsJson = args.length > 2 && !args[2].isNull() ? args[2].asString() : null;
+            Map<String, Object> variables = args.length > 2 ? toVariables(args[2]) : null;
+            String memoKey = memoKey(service, queryStr, variables);
+            Map<String, Object> memoized = sandbox.queryMemo().get(memoKey);
+            if (memoized != null) {
+                return HostValues.toGuest(memoized);
+            }
+            HostCallTracer.Pending trace = hostCallTracer.start(service, "query", queryStr, variables);
             try {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> variables = varsJson != null && !varsJson.isEmpty()
-                        ? objectMapper.readValue(varsJson, Map.class) : null;
-                Map<String, Object> result = dataProxyService.forwardGraphQLQuery(service, queryStr, variables, authToken, companyId);
-                return context.asValue(objectMapper.writeValueAsString(result));
+                Map<String, Object> result = dataProxyService.forwardGraphQLQuery(
+                        service, queryStr, variables, sandbox.authToken(), sandbox.companyId());
+                hostCallTracer.finish(sandbox, trace, result, null);
+                memoize(sandbox, memoKey, result);
+                return HostValues.toGuest(result);
             } catch (Exception e) {
+                hostCallTracer.finish(sandbox, trace, null, e);
                 log.error("Script query failed: {}", e.getMessage());
-                return context.asValue("{\"errors\":[{\"message\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}]}");
+                return HostValues.toGuest(errorResult(e));
+            }
+        }));
+
+        // Registered queries share the memo, under a key no service name can collide with
+        bindings.putMember("_queryPersisted", timed(sandbox, "_queryPersisted", args -> {
+            String queryId = args[0].asString();
+            Map<String, Object> variables = args.length > 1 ? toVariables(args[1]) : null;
+            String memoKey = memoKey("#persisted", queryId, variables);
+            Map<String, Object> memoized = sandbox.queryMemo().get(memoKey);
+            if (memoized != null) {
+                return HostValues.toGuest(memoized);
             }
+            // The binding only knows the query id; the target service is resolved by the proxy
+            HostCallTracer.Pending trace = hostCallTracer.start("persisted", "persisted", queryId, variables);
+            try {
+                Map<String, Object> result = dataProxyService.forwardPersistedQuery(
+                        queryId, variables, sandbox.authToken(), sandbox.companyId());
+                hostCallTracer.finish(sandbox, trace, result, null);
+                memoize(sandbox, memoKey, result);
+                return HostValues.toGuest(result);
+            } catch (Exception e) {
+                hostCallTracer.finish(sandbox, trace, null, e);
+                log.error("Script persisted query '{}' failed: {}", queryId, e.getMessage());
+                return HostValues.toGuest(errorResult(e));
+            }
+        }));
+
+        // Backs ERP.load: one call per service and tick with all queued {query, variables}
+        bindings.putMember("_batchQueryService", timed(sandbox, "_batchQueryService", args -> {
+            String service = args[0].asString();
+            List<Map<String, Object>> results = new ArrayList<>();
+            List<DataProxyService.BatchQuery> missing = new ArrayList<>();
+            List<Integer> missingIndexes = new ArrayList<>();
+            List<String> missingKeys = new ArrayList<>();
+            for (long i = 0; i < args[1].getArraySize(); i++) {
+                Value request = args[1].getArrayElement(i);
+                String queryStr = request.getMember("query").asString();
+                Map<String, Object> variables = toVariables(request.getMember("variables"));
+                String memoKey = memoKey(service, queryStr, variables);
+                Map<String, Object> memoized = sandbox.queryMemo().get(memoKey);
+                results.add(memoized);
+                if (memoized == null) {
+                    missing.add(new DataProxyService.BatchQuery(queryStr, variables));
+                    missingIndexes.add((int) i);
+                    missingKeys.add(memoKey);
+                }
+            }
+            if (!missing.isEmpty()) {
+                HostCallTracer.Pending trace = hostCallTracer.start(service, "batch",
+                        missing.stream().map(DataProxyService.BatchQuery::query).collect(Collectors.joining("\n")),
+                        missing.stream().map(DataProxyService.BatchQuery::variables).toList());
+                try {
+                    List<Map<String, Object>> fetched = dataProxyService.forwardGraphQLBatch(
+                            service, missing, sandbox.authToken(), sandbox.companyId());
+                    hostCallTracer.finish(sandbox, trace, fetched, null);
+                    for (int i = 0; i < fetched.size(); i++) {
+                        results.set(missingIndexes.get(i), fetched.get(i));
+                        memoize(sandbox, missingKeys.get(i), fetched.get(i));
+                    }
+                } catch (Exception e) {
+                    hostCallTracer.finish(sandbox, trace, null, e);
+                    log.error("Script batch query failed: {}", e.getMessage());
+                    Map<String, Object> error = errorResult(e);
+                    missingIndexes.forEach(index -> results.set(index, error));
+                }
+            }
+            return HostValues.toGuest(results);
+        }));
+
+        bindings.putMember("_runId", (org.graalvm.polyglot.proxy.ProxyExecutable) args -> sandbox.uses());
+
+        // Backs ERP.queryAsync: start a non-blocking request and return its id
+        bindings.putMember("_startQuery", (org.graalvm.polyglot.proxy.ProxyExecutable) args -> {
+            String service = args[0].asString();
+            String queryStr = args[1].asString();
+            Map<String, Object> variables = args.length > 2 ? toVariables(args[2]) : null;
+            String memoKey = memoKey(service, queryStr, variables);
+            Map<String, Object> memoized = sandbox.queryMemo().get(memoKey);
+            CompletableFuture<Map<String, Object>> future;
+            HostCallTracer.Pending trace = null;
+            if (memoized != null) {
+                future = CompletableFuture.completedFuture(memoized);
+            } else {
+                trace = hostCallTracer.start(service, "async", queryStr, variables);
+                try {
+                    future = dataProxyService.forwardGraphQLQueryAsync(
+                            service, queryStr, variables, sandbox.authToken(), sandbox.companyId());
+                } catch (Exception e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+            }
+            return sandbox.startQuery(future, memoKey, trace);
         });
 
-        bindings.putMember("_mutateService", (org.graalvm.polyglot.proxy.ProxyExecutable) args -> {
+        // Called by the ERP.queryAsync pump on the script thread: wait for completed requests
+        bindings.putMember("_awaitQueries", timed(sandbox, "_awaitQueries", args -> {
+            List<SandboxContext.AsyncCompletion> completions;
+            try {
+                completions = sandbox.awaitCompletions();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completions = List.of();
+            }
+            List<Map<String, Object>> results = new ArrayList<>(completions.size());
+            for (SandboxContext.AsyncCompletion completion : completions) {
+                if (completion.trace() != null) {
+                    hostCallTracer.finish(sandbox, completion.trace(), completion.result(), completion.failure(),
+                            completion.completedNanos());
+                }
+                Map<String, Object> result;
+                if (completion.failure() != null) {
+                    Throwable cause = completion.failure() instanceof CompletionException && completion.failure().getCause() != null
+                            ? completion.failure().getCause() : completion.failure();
+                    log.error("Script async query failed: {}", cause.getMessage());
+                    result = errorResult(cause instanceof Exception ex ? ex : new RuntimeException(cause));
+                } else {
+                    result = completion.result();
+                    if (completion.memoizable(sandbox)) {
+                        memoize(sandbox, completion.memoKey(), result);
+                    }
+                }
+                Map<String, Object> entry = new java.util.LinkedHashMap<>();
+                entry.put("id", completion.id());
+                entry.put("result", result);
+                results.add(entry);
+            }
+            return HostValues.toGuest(results);
+        }));
+
+        bindings.putMember("_mutateService", timed(sandbox, "_mutateService", args -> {
             String service = args[0].asString();
             String mutationStr = args[1].asString();
-            String varsJson = args.length > 2 && !args[2].isNull() ? args[2].asString() : null;
+            Map<String, Object> variables = args.length > 2 ? toVariables(args[2]) : null;
+            // A mutation may change what any memoized query (of any service) answered. Queries
+            // still in flight may have been read before its writes, so they are not memoized either.
+            sandbox.clearQueryMemo();
+            HostCallTracer.Pending trace = hostCallTracer.start(service, "mutation", mutationStr, variables);
             try {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> variables = varsJson != null && !varsJson.isEmpty()
-                        ? objectMapper.readValue(varsJson, Map.class) : null;
-                Map<String, Object> result = dataProxyService.forwardGraphQLMutation(service, mutationStr, variables, authToken, companyId);
-                return context.asValue(objectMapper.writeValueAsString(result));
+                Map<String, Object> result = dataProxyService.forwardGraphQLMutation(
+                        service, mutationStr, variables, sandbox.authToken(), sandbox.companyId());
+                hostCallTracer.finish(sandbox, trace, result, null);
+                return HostValues.toGuest(result);
             } catch (Exception e) {
+                hostCallTracer.finish(sandbox, trace, null, e);
                 log.error("Script mutation failed: {}", e.getMessage());
-                return context.asValue("{\"errors\":[{\"message\":\"" + e.getMessage().replace("\"", "\\\"") + "\"}]}");
+                return HostValues.toGuest(errorResult(e));
+            } finally {
+                sandbox.clearQueryMemo();
             }
-        });
+        }));
         
-        // Add safe JSON utilities and ERP object with query/mutate
-        context.eval("js", """
-            var ERP = {
-                // Database access — synchronous wrappers around host callbacks
-                query: function(service, query, variables) {
-                    var varsJson = variables ? JSON.stringify(variables) : '';
-                    var resultJson = _queryService(service, query, varsJson);
-                    var result = JSON.parse(resultJson);
-                    if (result.errors && result.errors.length) throw new Error(result.errors[0].message);
-                    return result.data;
-                },
-                mutate: function(service, mutation, variables) {
-                    var varsJson = variables ? JSON.stringify(variables) : '';
-                    var resultJson = _mutateService(service, mutation, varsJson);
-                    var result = JSON.parse(resultJson);
-                    if (result.errors && result.errors.length) throw new Error(result.errors[0].message);
-                    return result.data;
-                },
-
-                // Safe math utilities
-                round: function(num, decimals) { return Math.round(num * Math.pow(10, decimals || 0)) / Math.pow(10, decimals || 0); },
-                clamp: function(num, min, max) { return Math.min(Math.max(num, min), max); },
-                
-                // String utilities
-                slugify: function(str) { return str.toLowerCase().replace(/[^a-z0-9]+/g, '-').replace(/(^-|-$)/g, ''); },
-                
-                // Array utilities
-                sum: function(arr) { return arr.reduce((a, b) => a + b, 0); },
-                avg: function(arr) { return arr.length ? ERP.sum(arr) / arr.length : 0; },
-                unique: function(arr) { return [...new Set(arr)]; },
-                groupBy: function(arr, key) { return arr.reduce((acc, item) => { (acc[item[key]] = acc[item[key]] || []).push(item); return acc; }, {}); },
-                
-                // Validation
-                isEmail: function(str) { return /^[^\\s@]+@[^\\s@]+\\.[^\\s@]+$/.test(str); },
-                isUUID: function(str) { return /^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$/i.test(str); },
-                
-                // Date utilities (limited)
-                now: function() { return Date.now(); },
-                formatDate: function(timestamp) { return new Date(timestamp).toISOString(); }
-            };
-            """);
+        // console, safe JSON utilities and ERP object with query/mutate
+        context.eval(PRELUDE);
+    }
+    
+    /**
+     * Wrap a host function so its calls and wait time are recorded in the sandbox's run.
+     */
+    private static org.graalvm.polyglot.proxy.ProxyExecutable timed(SandboxContext sandbox, String function,
+                                                                     org.graalvm.polyglot.proxy.ProxyExecutable call) {
+        return args -> {
+            long start = System.nanoTime();
+            try {
+                return call.execute(args);
+            } finally {
+                sandbox.recordHostCall(function, start);
+            }
+        };
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toVariables(Value variables) {
+        Object converted = HostValues.toHost(variables);
+        return converted instanceof Map<?, ?> map && !map.isEmpty() ? (Map<String, Object>) map : null;
+    }
+    
+    private String memoKey(String service, String query, Map<String, Object> variables) {
+        try {
+            return service + '\n' + query + '\n' + objectMapper.writeValueAsString(variables);
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            return service + '\n' + query + '\n' + variables;
+        }
+    }
+    
+    private void memoize(SandboxContext sandbox, String memoKey, Map<String, Object> result) {
+        // Errors may be transient, so only clean responses are reused
+        if (result != null && result.get("errors") == null) {
+            sandbox.queryMemo().put(memoKey, result);
+        }
+    }
+    
+    private Map<String, Object> errorResult(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return Map.of("errors", java.util.List.of(Map.of("message", message)));
+    }
+    
+    private Source storedSource(UUID scriptId, int version, String code) {
+        return sourceCache.get(new SourceKey(scriptId, version),
+                key -> buildSource(code, "script-" + key.scriptId() + "-v" + key.version() + ".js", true));
+    }
+    
+    private Source adHocSource(String code) {
+        // One-off code is not worth keeping in the engine's code cache
+        return buildSource(code, "inline-script.js", false);
+    }
+    
+    private Source buildSource(String code, String name, boolean cached) {
+        return Source.newBuilder("js", wrapCode(code), name)
+                .cached(cached)
+                .buildLiteral();
     }
     
     private String wrapCode(String code) {
-        // Wrap code in an IIFE to capture return value
-        return "(function() { " + code + " })()";
+        // Wrap code in an async IIFE to capture the return value and allow await;
+        // import declarations become awaited dynamic imports, hoisted to its start
+        return WRAPPER_PREFIX + ScriptImports.toDynamicImports(code).code() + "\n})()";
     }
     
+    /** Characters in front of the script's own first line once it is wrapped */
+    private static int prefixLength(String code) {
+        return WRAPPER_PREFIX.length() + ScriptImports.toDynamicImports(code).hoistedLength();
+    }
+    
+    private record SourceKey(UUID scriptId, int version) {}
+    
+    public record ProfiledResult(ExecutionResult result, Map<String, Object> profile) {}
+    
     private String sanitizeErrorMessage(String message) {
         // Remove potentially sensitive information from error messages
         if (message == null) return "Unknown error";
@@ -291,18 +1208,30 @@ public class GraalJSEngine {
             Object result,
             String error,
             long executionTimeMs,
-            boolean timeout
+            boolean timeout,
+            HostCallSummary hostCalls
     ) {
         public static ExecutionResult success(Object result, long executionTimeMs) {
-            return new ExecutionResult(true, result, null, executionTimeMs, false);
+            return new ExecutionResult(true, result, null, executionTimeMs, false, HostCallSummary.NONE);
         }
         
         public static ExecutionResult error(String error, long executionTimeMs) {
-            return new ExecutionResult(false, null, error, executionTimeMs, false);
+            return new ExecutionResult(false, null, error, executionTimeMs, false, HostCallSummary.NONE);
         }
         
         public static ExecutionResult timeout(long executionTimeMs) {
-            return new ExecutionResult(false, null, "Script execution timed out", executionTimeMs, true);
+            return new ExecutionResult(false, null, "Script execution timed out", executionTimeMs, true, HostCallSummary.NONE);
+        }
+        
+        public ExecutionResult withHostCalls(HostCallSummary hostCalls) {
+            return new ExecutionResult(success, result, error, executionTimeMs, timeout, hostCalls);
         }
     }
+    
+    /**
+     * ERP requests a run sent downstream and the time the script spent blocked in host calls.
+     */
+    public record HostCallSummary(int calls, long waitMs) {
+        public static final HostCallSummary NONE = new HostCallSummary(0, 0);
+    }
 }
@@ -0,0 +1,158 @@
+package com.erp.scripting.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces the downstream requests scripts make through ERP.query, ERP.mutate and friends,
+ * so a slow run can be split into guest CPU and time spent waiting on ERP services.
+ *
+ * <p>Every request becomes a {@link Span} on the run's {@link SandboxContext} and is exported
+ * as {@code scripting.host.call} (timer) and {@code scripting.host.call.bytes} (summary),
+ * tagged by service. Answers from the run's memo send nothing and are not traced.
+ *
+ * <p>Byte counts are the JSON sizes of the request (document and variables) and of the parsed
+ * response, not wire sizes. Taking them serializes every payload a second time, so they are
+ * only counted with {@code scripting.tracing.count-bytes}; otherwise spans carry -1 and the
+ * summary is not recorded.
+ */
+@Slf4j
+final class HostCallTracer {
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean countBytes;
+
+    HostCallTracer(ObjectMapper objectMapper, MeterRegistry meterRegistry, boolean countBytes) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.countBytes = countBytes;
+    }
+
+    /**
+     * Start tracing a request.
+     *
+     * @param operation query, mutation, persisted, batch or async
+     * @param document  the GraphQL document (or registered query id) the hash is taken of
+     */
+    Pending start(String service, String operation, String document, Object variables) {
+        document = document != null ? document : "";
+        long bytesOut = !countBytes ? -1
+                : document.getBytes(StandardCharsets.UTF_8).length + (variables != null ? jsonSize(variables) : 0);
+        return new Pending(service, operation, hash(document), bytesOut, System.nanoTime());
+    }
+
+    /**
+     * Finish a request on the script thread, right after it returned.
+     */
+    void finish(SandboxContext sandbox, Pending pending, Object response, Throwable failure) {
+        finish(sandbox, pending, response, failure, System.nanoTime());
+    }
+
+    /**
+     * Finish a request that completed at {@code endNanos}, e.g. an ERP.queryAsync request
+     * picked up by the script later.
+     */
+    void finish(SandboxContext sandbox, Pending pending, Object response, Throwable failure, long endNanos) {
+        String error = failure != null ? message(failure) : graphQLError(response);
+        Span span = new Span(pending.service(), pending.operation(), pending.queryHash(), pending.bytesOut(),
+                !countBytes ? -1 : response != null ? jsonSize(response) : 0, endNanos - pending.startNanos(), error);
+        sandbox.recordSpan(span);
+
+        Timer.builder("scripting.host.call")
+                .description("ERP requests made by scripts, from the script's point of view")
+                .tag("service", span.service())
+                .tag("operation", span.operation())
+                .tag("outcome", error == null ? "success" : "error")
+                .register(meterRegistry)
+                .record(span.durationNanos(), TimeUnit.NANOSECONDS);
+        if (countBytes) {
+            bytes(span.service(), "out").record(span.bytesOut());
+            bytes(span.service(), "in").record(span.bytesIn());
+        }
+        log.debug("Host call {} {} [{}]: {} ms, {} B out, {} B in{}", span.operation(), span.service(),
+                span.queryHash(), TimeUnit.NANOSECONDS.toMillis(span.durationNanos()), span.bytesOut(),
+                span.bytesIn(), error != null ? ", error: " + error : "");
+    }
+
+    private DistributionSummary bytes(String service, String direction) {
+        return DistributionSummary.builder("scripting.host.call.bytes")
+                .description("JSON size of ERP requests and responses of scripts")
+                .baseUnit("bytes")
+                .tag("service", service)
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    private long jsonSize(Object value) {
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            objectMapper.writeValue(out, value);
+            return out.count;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static String graphQLError(Object response) {
+        if (response instanceof Map<?, ?> map && map.get("errors") instanceof List<?> errors && !errors.isEmpty()) {
+            Object first = errors.get(0);
+            return first instanceof Map<?, ?> error && error.get("message") != null
+                    ? String.valueOf(error.get("message")) : "GraphQL error";
+        }
+        return null;
+    }
+
+    private static String message(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * Short SHA-256 prefix; enough to tell documents apart in logs and profiles.
+     */
+    private static String hash(String document) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(document.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** A request that has been sent but not answered yet. */
+    record Pending(String service, String operation, String queryHash, long bytesOut, long startNanos) {}
+
+    /** One finished downstream request of a run. */
+    record Span(String service, String operation, String queryHash, long bytesOut, long bytesIn,
+                long durationNanos, String error) {}
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
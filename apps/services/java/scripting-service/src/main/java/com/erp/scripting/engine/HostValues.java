@@ -0,0 +1,297 @@
+package com.erp.scripting.engine;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.Proxy;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversion between host data (JSON-like maps and lists) and guest values.
+ *
+ * <p>Host maps and lists are exposed to scripts as lazy {@link ProxyObject}/{@link ProxyArray}
+ * views, so scripts read trigger payloads in place instead of having them re-parsed as JSON.
+ * Views are copy-on-write: the first write to an object or array copies that level only,
+ * and the caller's data is never modified. Converting a view back to host data returns the
+ * original objects for every subtree the script did not modify.
+ */
+public final class HostValues {
+
+    private HostValues() {
+    }
+
+    /**
+     * Wrap a host value for the guest. Maps and lists become lazy views, scalars are passed as is.
+     */
+    public static Object toGuest(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return new ObjectView(map);
+        }
+        if (value instanceof List<?> list) {
+            return new ArrayView(list);
+        }
+        return toGuestScalar(value);
+    }
+
+    /**
+     * Convert a guest value into host data. Views created by {@link #toGuest} are unwrapped
+     * without copying unmodified subtrees; guest-native objects are copied once, since they
+     * do not outlive the context they were created in.
+     */
+    public static Object toHost(Value value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (value.isProxyObject()) {
+            Proxy proxy = value.asProxyObject();
+            if (proxy instanceof View view) {
+                return view.materialize();
+            }
+        }
+        if (value.isBoolean()) {
+            return value.asBoolean();
+        }
+        if (value.isNumber()) {
+            if (value.fitsInInt()) {
+                return value.asInt();
+            }
+            if (value.fitsInLong()) {
+                return value.asLong();
+            }
+            return value.asDouble();
+        }
+        if (value.isString()) {
+            return value.asString();
+        }
+        if (value.hasArrayElements()) {
+            int size = (int) value.getArraySize();
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(toHost(value.getArrayElement(i)));
+            }
+            return list;
+        }
+        if (value.hasMembers() && !value.canExecute()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : value.getMemberKeys()) {
+                map.put(key, toHost(value.getMember(key)));
+            }
+            return map;
+        }
+        return value.toString();
+    }
+
+    private static Object toGuestScalar(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean
+                || value instanceof Integer || value instanceof Long || value instanceof Double
+                || value instanceof Float || value instanceof Short || value instanceof Byte) {
+            return value;
+        }
+        if (value instanceof BigInteger bigInteger) {
+            return bigInteger.bitLength() < 64 ? (Object) bigInteger.longValue() : (Object) bigInteger.doubleValue();
+        }
+        if (value instanceof BigDecimal || value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        // Dates, UUIDs, enums: expose their string form, like the JSON encoding did
+        return value.toString();
+    }
+
+    private interface View {
+        Object materialize();
+    }
+
+    /**
+     * Copy-on-write view over a host map.
+     */
+    static final class ObjectView implements ProxyObject, View {
+
+        private final Map<?, ?> source;
+        private Map<String, Object> copy;
+        private final Map<Object, Object> views = new IdentityHashMap<>();
+
+        ObjectView(Map<?, ?> source) {
+            this.source = source;
+        }
+
+        private Map<?, ?> current() {
+            return copy != null ? copy : source;
+        }
+
+        private Map<String, Object> writable() {
+            if (copy == null) {
+                copy = new LinkedHashMap<>(source.size() + 4);
+                source.forEach((k, v) -> copy.put(String.valueOf(k), v));
+            }
+            return copy;
+        }
+
+        @Override
+        public Object getMember(String key) {
+            return view(views, current().get(key));
+        }
+
+        @Override
+        public Object getMemberKeys() {
+            Object[] keys = new Object[current().size()];
+            int i = 0;
+            for (Object key : current().keySet()) {
+                keys[i++] = String.valueOf(key);
+            }
+            return ProxyArray.fromArray(keys);
+        }
+
+        @Override
+        public boolean hasMember(String key) {
+            return current().containsKey(key);
+        }
+
+        @Override
+        public void putMember(String key, Value value) {
+            writable().put(key, fromGuest(value));
+        }
+
+        @Override
+        public boolean removeMember(String key) {
+            if (!current().containsKey(key)) {
+                return false;
+            }
+            writable().remove(key);
+            return true;
+        }
+
+        @Override
+        public Object materialize() {
+            if (copy == null && views.isEmpty()) {
+                return source;
+            }
+            boolean changed = copy != null;
+            Map<String, Object> result = new LinkedHashMap<>(current().size());
+            for (Map.Entry<?, ?> entry : current().entrySet()) {
+                Object raw = entry.getValue();
+                Object value = materializeChild(views, raw);
+                changed |= value != raw;
+                result.put(String.valueOf(entry.getKey()), value);
+            }
+            return changed ? result : source;
+        }
+    }
+
+    /**
+     * Copy-on-write view over a host list.
+     */
+    static final class ArrayView implements ProxyArray, View {
+
+        private final List<?> source;
+        private List<Object> copy;
+        private final Map<Object, Object> views = new IdentityHashMap<>();
+
+        ArrayView(List<?> source) {
+            this.source = source;
+        }
+
+        private List<?> current() {
+            return copy != null ? copy : source;
+        }
+
+        private List<Object> writable() {
+            if (copy == null) {
+                copy = new ArrayList<>(source);
+            }
+            return copy;
+        }
+
+        @Override
+        public Object get(long index) {
+            return view(views, current().get(checkIndex(index)));
+        }
+
+        @Override
+        public void set(long index, Value value) {
+            int i = checkIndex(index, current().size() + 1);
+            Object converted = fromGuest(value);
+            if (i == current().size()) {
+                writable().add(converted);
+            } else {
+                writable().set(i, converted);
+            }
+        }
+
+        @Override
+        public boolean remove(long index) {
+            writable().remove(checkIndex(index));
+            return true;
+        }
+
+        @Override
+        public long getSize() {
+            return current().size();
+        }
+
+        @Override
+        public Object materialize() {
+            if (copy == null && views.isEmpty()) {
+                return source;
+            }
+            boolean changed = copy != null;
+            List<Object> result = new ArrayList<>(current().size());
+            for (Object raw : current()) {
+                Object value = materializeChild(views, raw);
+                changed |= value != raw;
+                result.add(value);
+            }
+            return changed ? result : source;
+        }
+
+        private int checkIndex(long index) {
+            return checkIndex(index, current().size());
+        }
+
+        private static int checkIndex(long index, int bound) {
+            if (index < 0 || index >= bound) {
+                throw new ArrayIndexOutOfBoundsException((int) index);
+            }
+            return (int) index;
+        }
+    }
+
+    /**
+     * Return the (cached) view for a nested map or list so repeated reads see the same
+     * object and writes to it are kept.
+     */
+    private static Object view(Map<Object, Object> views, Object raw) {
+        if (raw instanceof View) {
+            return raw;
+        }
+        if (raw instanceof Map<?, ?> || raw instanceof List<?>) {
+            return views.computeIfAbsent(raw, HostValues::toGuest);
+        }
+        return toGuestScalar(raw);
+    }
+
+    private static Object materializeChild(Map<Object, Object> views, Object raw) {
+        if (raw instanceof View view) {
+            return view.materialize();
+        }
+        Object view = raw != null ? views.get(raw) : null;
+        return view instanceof View nested ? nested.materialize() : raw;
+    }
+
+    /**
+     * Values written by the guest must be converted immediately: under scoped host access
+     * they are not valid after the call returns. Views stay views, so identity is preserved.
+     */
+    private static Object fromGuest(Value value) {
+        if (value != null && value.isProxyObject() && value.asProxyObject() instanceof View view) {
+            return view;
+        }
+        return toHost(value);
+    }
+}
@@ -0,0 +1,203 @@
+package com.erp.scripting.engine;
+
+import org.graalvm.polyglot.io.FileSystem;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Module loader of one sandbox: resolves {@code import 'vat'} to the company's library script
+ * named {@code vat} and serves nothing else, read-only.
+ *
+ * <p>Libraries appear under a virtual {@code /libraries} directory, so imports between
+ * libraries resolve the same way. The real path of a library carries its revision
+ * ({@code /libraries/vat@3.mjs}), so the shared engine caches the parsed source per revision
+ * for all contexts and a changed library is never served from a stale parse.
+ *
+ * <p>A loaded module is not: its exports and module variables live in the context, and the
+ * next script to import it would see whatever the last run left there. The file system
+ * records that a library was read, and {@link SandboxContext#reset()} then discards the context.
+ */
+final class LibraryFileSystem implements FileSystem {
+
+    private static final Path ROOT = Path.of("/libraries");
+    private static final Pattern REVISION_FILE = Pattern.compile("(.+)@[^@]+\\.mjs");
+
+    private final ScriptLibraries libraries;
+    private final String companyId;
+    private volatile boolean loaded;
+
+    LibraryFileSystem(ScriptLibraries libraries, String companyId) {
+        this.libraries = libraries;
+        this.companyId = companyId;
+    }
+
+    @Override
+    public Path parsePath(URI uri) {
+        if (!"file".equals(uri.getScheme())) {
+            throw new UnsupportedOperationException("Unsupported module URI: " + uri);
+        }
+        return Path.of(uri);
+    }
+
+    @Override
+    public Path parsePath(String path) {
+        return Path.of(path);
+    }
+
+    @Override
+    public void checkAccess(Path path, Set<? extends AccessMode> modes, LinkOption... linkOptions) throws IOException {
+        if (modes.contains(AccessMode.WRITE) || modes.contains(AccessMode.EXECUTE)) {
+            throw new AccessDeniedException(path.toString());
+        }
+        library(path);
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
+                                              FileAttribute<?>... attrs) throws IOException {
+        for (OpenOption option : options) {
+            if (option != StandardOpenOption.READ) {
+                throw new AccessDeniedException(path.toString());
+            }
+        }
+        ScriptLibraries.Library library = library(path);
+        loaded = true;
+        return new ReadOnlyChannel(library.code().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Whether a library was read, i.e. the context may hold a module instance.
+     */
+    boolean loaded() {
+        return loaded;
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        long size = library(path).code().getBytes(StandardCharsets.UTF_8).length;
+        FileTime epoch = FileTime.fromMillis(0);
+        return Map.of("isRegularFile", true, "isDirectory", false, "isSymbolicLink", false, "isOther", false,
+                "size", size, "lastModifiedTime", epoch, "lastAccessTime", epoch, "creationTime", epoch);
+    }
+
+    @Override
+    public Path toAbsolutePath(Path path) {
+        return path.isAbsolute() ? path : ROOT.resolve(path);
+    }
+
+    @Override
+    public Path toRealPath(Path path, LinkOption... linkOptions) throws IOException {
+        ScriptLibraries.Library library = library(path);
+        return ROOT.resolve(library.name() + "@" + library.revision() + ".mjs");
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        throw new AccessDeniedException(dir.toString());
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        throw new AccessDeniedException(path.toString());
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        throw new AccessDeniedException(dir.toString());
+    }
+
+    /**
+     * The library a path names: {@code /libraries/<name>}, {@code <name>} relative to it, or
+     * a real path {@code /libraries/<name>@<revision>.mjs}.
+     */
+    private ScriptLibraries.Library library(Path path) throws NoSuchFileException {
+        Path absolute = toAbsolutePath(path).normalize();
+        if (absolute.getParent() == null || !absolute.getParent().equals(ROOT)) {
+            throw new NoSuchFileException(path.toString());
+        }
+        String name = absolute.getFileName().toString();
+        Matcher revisioned = REVISION_FILE.matcher(name);
+        if (revisioned.matches()) {
+            name = revisioned.group(1);
+        }
+        ScriptLibraries.Library library = libraries.find(companyId, name);
+        if (library == null) {
+            throw new NoSuchFileException(name, null, "No library named '" + name + "'");
+        }
+        return library;
+    }
+
+    private static final class ReadOnlyChannel implements SeekableByteChannel {
+        private final byte[] content;
+        private int position;
+
+        ReadOnlyChannel(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) {
+            if (position >= content.length) {
+                return -1;
+            }
+            int count = Math.min(destination.remaining(), content.length - position);
+            destination.put(content, position, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            position = (int) Math.min(newPosition, content.length);
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return content.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
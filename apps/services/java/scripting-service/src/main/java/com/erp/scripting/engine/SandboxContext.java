@@ -0,0 +1,261 @@
+package com.erp.scripting.engine;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A pre-initialized sandbox context with the console/ERP prelude already evaluated.
+ * Host callbacks read the per-run state (auth token, company, log buffer) from this
+ * object, so the same context can be leased for several runs of one tenant.
+ */
+public class SandboxContext implements AutoCloseable {
+
+    private final String tenant;
+    private final Context context;
+    private final Value bindings;
+    /** Whether the context has loaded a library module, see {@link LibraryFileSystem}. */
+    private final BooleanSupplier modulesLoaded;
+    private final Set<String> baselineKeys = new HashSet<>();
+    private final Map<String, Value> baselineValues = new HashMap<>();
+    /** Tells whether the built-ins are unchanged, see GraalJSEngine's BUILTINS_CHECK. */
+    private Value builtinsCheck;
+    private int uses;
+
+    /** Tenant pool this context is currently leased from; set by {@link SandboxContextPool}. */
+    SandboxContextPool.TenantPool owner;
+
+    // Per-run state, reset on every lease
+    private String authToken;
+    private String companyId;
+    private StringBuilder logOutput = new StringBuilder();
+    /** Responses of successful ERP queries in this run, keyed by service, query and variables. */
+    private final Map<String, Map<String, Object>> queryMemo = new HashMap<>();
+    /** Bumped whenever the memo is cleared; answers to requests started before are not memoized. */
+    private int memoGeneration;
+    /** Calls and wait time per host function (_queryService, _mutateService, ...) in this run. */
+    private final Map<String, HostCallStats> hostCalls = new LinkedHashMap<>();
+    /** Downstream requests of this run, see {@link HostCallTracer}. */
+    private final List<HostCallTracer.Span> spans = new ArrayList<>();
+    private long deadlineNanos;
+    // ERP.queryAsync requests of this run; completions arrive on HTTP client threads
+    private final Map<Integer, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private BlockingQueue<AsyncCompletion> completions = new LinkedBlockingQueue<>();
+    private int nextQueryId;
+
+    SandboxContext(String tenant, Context context) {
+        this(tenant, context, () -> false);
+    }
+
+    SandboxContext(String tenant, Context context, BooleanSupplier modulesLoaded) {
+        this.tenant = tenant;
+        this.context = context;
+        this.bindings = context.getBindings("js");
+        this.modulesLoaded = modulesLoaded;
+    }
+
+    /**
+     * Record the globals present after the prelude ran; anything a run adds on top is removed on reset.
+     *
+     * @param builtinsCheck function returning whether the built-ins are unchanged, or null to skip that check
+     */
+    void captureBaseline(Value builtinsCheck) {
+        this.builtinsCheck = builtinsCheck;
+        for (String key : bindings.getMemberKeys()) {
+            baselineKeys.add(key);
+            baselineValues.put(key, bindings.getMember(key));
+        }
+    }
+
+    void beginRun(String authToken, String companyId, long deadlineNanos) {
+        this.authToken = authToken;
+        this.companyId = companyId;
+        this.deadlineNanos = deadlineNanos;
+        this.logOutput = new StringBuilder();
+        this.queryMemo.clear();
+        this.hostCalls.clear();
+        this.spans.clear();
+        this.completions = new LinkedBlockingQueue<>();
+        this.nextQueryId = 0;
+        this.uses++;
+        context.resetLimits();
+    }
+
+    /**
+     * Remove globals added by the last run and verify the prelude bindings and the built-ins
+     * are untouched.
+     *
+     * @return false if the context was tampered with or imported a module, and must be discarded
+     */
+    boolean reset() {
+        authToken = null;
+        companyId = null;
+        queryMemo.clear();
+        cancelQueries();
+        if (modulesLoaded.getAsBoolean()) {
+            // Module state (exports, module variables) would carry over to the next importer
+            return false;
+        }
+        try {
+            for (String key : bindings.getMemberKeys()) {
+                if (!baselineKeys.contains(key) && !bindings.removeMember(key)) {
+                    return false;
+                }
+            }
+            for (Map.Entry<String, Value> entry : baselineValues.entrySet()) {
+                Value current = bindings.getMember(entry.getKey());
+                if (current == null || !current.equals(entry.getValue())) {
+                    return false;
+                }
+            }
+            return builtinsCheck == null || builtinsCheck.execute().asBoolean();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    public Context context() {
+        return context;
+    }
+
+    public Value bindings() {
+        return bindings;
+    }
+
+    String tenant() {
+        return tenant;
+    }
+
+    int uses() {
+        return uses;
+    }
+
+    String authToken() {
+        return authToken;
+    }
+
+    String companyId() {
+        return companyId;
+    }
+
+    StringBuilder logOutput() {
+        return logOutput;
+    }
+
+    Map<String, Map<String, Object>> queryMemo() {
+        return queryMemo;
+    }
+
+    /**
+     * Forget the memoized answers of this run, e.g. because a mutation may have changed them.
+     * Asynchronous queries still in flight will not be memoized either.
+     */
+    void clearQueryMemo() {
+        queryMemo.clear();
+        memoGeneration++;
+    }
+
+    /**
+     * Record a finished host call of the current run, timed from {@code startNanos}.
+     */
+    void recordHostCall(String function, long startNanos) {
+        HostCallStats stats = hostCalls.getOrDefault(function, HostCallStats.NONE);
+        hostCalls.put(function, new HostCallStats(stats.calls() + 1, stats.nanos() + System.nanoTime() - startNanos));
+    }
+
+    Map<String, HostCallStats> hostCalls() {
+        return hostCalls;
+    }
+
+    void recordSpan(HostCallTracer.Span span) {
+        spans.add(span);
+    }
+
+    List<HostCallTracer.Span> spans() {
+        return spans;
+    }
+
+    /**
+     * Downstream requests of the current run and the time the script spent blocked in host calls.
+     */
+    GraalJSEngine.HostCallSummary hostCallSummary() {
+        long waitNanos = 0;
+        for (HostCallStats stats : hostCalls.values()) {
+            waitNanos += stats.nanos();
+        }
+        return new GraalJSEngine.HostCallSummary(spans.size(), TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    /**
+     * Track an asynchronous query of the current run.
+     *
+     * @param trace the request's trace, or null for an answer from the run's memo
+     * @return the id its completion will be reported under
+     */
+    int startQuery(CompletableFuture<Map<String, Object>> future, String memoKey, HostCallTracer.Pending trace) {
+        int id = nextQueryId++;
+        int generation = memoGeneration;
+        BlockingQueue<AsyncCompletion> queue = completions;
+        inFlight.put(id, future);
+        future.whenComplete((result, failure) -> {
+            inFlight.remove(id, future);
+            queue.offer(new AsyncCompletion(id, memoKey, generation, result, failure, trace, System.nanoTime()));
+        });
+        return id;
+    }
+
+    /**
+     * Wait until at least one asynchronous query of this run has completed (or the run's
+     * deadline passes) and return all completions available now.
+     */
+    List<AsyncCompletion> awaitCompletions() throws InterruptedException {
+        List<AsyncCompletion> ready = new ArrayList<>();
+        AsyncCompletion first = completions.poll(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (first != null) {
+            ready.add(first);
+            completions.drainTo(ready);
+        }
+        return ready;
+    }
+
+    private void cancelQueries() {
+        inFlight.values().forEach(future -> future.cancel(true));
+        inFlight.clear();
+    }
+
+    record HostCallStats(long calls, long nanos) {
+        static final HostCallStats NONE = new HostCallStats(0, 0);
+    }
+
+    record AsyncCompletion(int id, String memoKey, int memoGeneration, Map<String, Object> result,
+                           Throwable failure, HostCallTracer.Pending trace, long completedNanos) {
+
+        /** Whether the answer was requested after the run's memo was last cleared. */
+        boolean memoizable(SandboxContext sandbox) {
+            return memoGeneration == sandbox.memoGeneration;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelQueries();
+        try {
+            context.close(true);
+        } catch (RuntimeException ignored) {
+            // Context may already be closed or cancelled
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.erp.scripting.engine;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Bounded pool of pre-initialized sandbox contexts, partitioned per tenant.
+ *
+ * <p>Contexts are only ever reused for the tenant that created them. After a run the
+ * context is reset (globals added by the run are removed) or discarded if the run failed,
+ * tampered with the prelude or the built-ins, or the context reached its maximum number of uses.
+ */
+public class SandboxContextPool {
+
+    private static final String NO_TENANT = "__none__";
+
+    private final Function<String, SandboxContext> factory;
+    private final int maxPerTenant;
+    private final int maxUses;
+    private final long acquireTimeoutMs;
+    private final Cache<String, TenantPool> tenants;
+
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicInteger leased = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter discarded;
+
+    public SandboxContextPool(Function<String, SandboxContext> factory, int maxPerTenant, int maxUses,
+                              long acquireTimeoutMs, long maxTenants, long idleTimeoutMinutes,
+                              MeterRegistry meterRegistry) {
+        this.factory = factory;
+        this.maxPerTenant = maxPerTenant;
+        this.maxUses = maxUses;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.tenants = Caffeine.newBuilder()
+                .maximumSize(maxTenants)
+                .expireAfterAccess(Duration.ofMinutes(idleTimeoutMinutes))
+                // Close evicted contexts on the evicting thread, so close() has closed them all
+                // when it returns and the shared engine can be closed right after
+                .executor(Runnable::run)
+                .removalListener((String tenant, TenantPool pool, RemovalCause cause) -> {
+                    if (pool != null) {
+                        pool.close();
+                    }
+                })
+                .build();
+
+        Gauge.builder("scripting.pool.size", idle, AtomicInteger::get)
+                .description("Idle pre-initialized sandbox contexts")
+                .register(meterRegistry);
+        Gauge.builder("scripting.pool.leased", leased, AtomicInteger::get)
+                .description("Sandbox contexts currently leased for a run")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("scripting.pool.wait")
+                .description("Time spent waiting to lease a sandbox context")
+                .register(meterRegistry);
+        this.hits = Counter.builder("scripting.pool.lease").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("scripting.pool.lease").tag("result", "miss").register(meterRegistry);
+        this.discarded = Counter.builder("scripting.pool.discarded").register(meterRegistry);
+    }
+
+    /**
+     * Lease a context for the given tenant, creating one if no idle context is available.
+     *
+     * @throws IllegalStateException if the tenant's pool stays exhausted for the acquire timeout
+     */
+    public SandboxContext lease(String tenant) throws InterruptedException {
+        String key = tenant != null ? tenant : NO_TENANT;
+        TenantPool pool = tenants.get(key, k -> new TenantPool(maxPerTenant));
+
+        long start = System.nanoTime();
+        if (!pool.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw new IllegalStateException("No sandbox context available for tenant within " + acquireTimeoutMs + "ms");
+        }
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        SandboxContext context = pool.idleContexts.pollFirst();
+        try {
+            if (context != null) {
+                idle.decrementAndGet();
+                hits.increment();
+            } else {
+                misses.increment();
+                context = factory.apply(key);
+            }
+        } catch (RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+        context.owner = pool;
+        leased.incrementAndGet();
+        return context;
+    }
+
+    /**
+     * Return a leased context. It is kept for the next run of the same tenant only when the
+     * run left it reusable; otherwise it is closed.
+     */
+    public void release(SandboxContext context, boolean reusable) {
+        leased.decrementAndGet();
+        TenantPool pool = context.owner;
+        context.owner = null;
+        boolean keep = reusable && pool != null && !pool.closed
+                && context.uses() < maxUses && context.reset();
+        if (keep) {
+            pool.idleContexts.offerFirst(context);
+            idle.incrementAndGet();
+            if (pool.closed) {
+                // Tenant was evicted while we were returning the context
+                pool.close();
+            }
+        } else {
+            discarded.increment();
+            context.close();
+        }
+        if (pool != null) {
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * Close all idle contexts of a tenant, e.g. after code they preloaded has changed.
+     */
+    public void invalidate(String tenant) {
+        tenants.invalidate(tenant != null ? tenant : NO_TENANT);
+    }
+
+    public void close() {
+        tenants.invalidateAll();
+        tenants.cleanUp();
+    }
+
+    class TenantPool {
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<SandboxContext> idleContexts = new ConcurrentLinkedDeque<>();
+        private volatile boolean closed;
+
+        TenantPool(int maxContexts) {
+            this.permits = new Semaphore(maxContexts);
+        }
+
+        void close() {
+            closed = true;
+            SandboxContext context;
+            while ((context = idleContexts.pollFirst()) != null) {
+                idle.decrementAndGet();
+                context.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.erp.scripting.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Import declarations of script code.
+ *
+ * <p>Scripts run as the body of an async function, where {@code import} declarations are not
+ * allowed, so {@link #toDynamicImports} turns them into {@code await import(...)} of the same
+ * module before a script is wrapped. Library scripts are real ES modules and keep theirs.
+ * Declarations are recognised at the start of a line by regular expressions, not by a parser;
+ * the expressions run on a copy of the code whose comments, strings, template literals and
+ * regular expression literals are blanked out, so text inside those never counts as an import.
+ */
+public final class ScriptImports {
+
+    private static final String BINDING = "[\\p{L}_$][\\p{L}\\p{N}_$]*";
+    private static final String NAMESPACE = "\\*\\s*as\\s+" + BINDING;
+    private static final String NAMED = "\\{[^}]*\\}";
+    private static final String CLAUSE = BINDING + "(?:\\s*,\\s*(?:" + NAMESPACE + "|" + NAMED + "))?|"
+            + NAMESPACE + "|" + NAMED;
+
+    /** {@code import [clause from] 'specifier';} on its own line(s) */
+    private static final Pattern DECLARATION = Pattern.compile(
+            "^([ \\t]*)import(?=[\\s{*'\"])\\s*(?:(" + CLAUSE + ")\\s*from\\s*)?(['\"])([^'\"\\r\\n]+)\\3[ \\t]*;?",
+            Pattern.MULTILINE);
+
+    /** {@code import ... from 'x'} and {@code export ... from 'x'} in modules */
+    private static final Pattern FROM = Pattern.compile(
+            "^[ \\t]*(?:import|export)\\b[^;'\"]*?\\bfrom\\s*(['\"])([^'\"\\r\\n]+)\\1", Pattern.MULTILINE);
+
+    /** {@code import 'x'} for its side effects, and {@code import('x')} */
+    private static final Pattern BARE = Pattern.compile(
+            "^[ \\t]*import\\s*(['\"])([^'\"\\r\\n]+)\\1|\\bimport\\s*\\(\\s*(['\"])([^'\"\\r\\n]+)\\3\\s*\\)",
+            Pattern.MULTILINE);
+
+    /** Tokens after which a {@code /} starts a regular expression rather than a division */
+    private static final Pattern REGEX_KEYWORD = Pattern.compile(
+            "(?:^|[^\\p{L}\\p{N}_$])(?:return|typeof|instanceof|in|of|new|delete|void|throw|case|do|else|yield|await)$");
+
+    private ScriptImports() {
+    }
+
+    /**
+     * Code with its import declarations rewritten, see {@link #toDynamicImports}.
+     *
+     * @param hoistedLength number of characters put in front of the script's first line
+     */
+    record DynamicImports(String code, int hoistedLength) {}
+
+    /**
+     * Module specifiers the code imports (statically or via {@code import('x')} with a
+     * literal), in order of appearance.
+     */
+    public static Set<String> specifiers(String code) {
+        Set<String> specifiers = new LinkedHashSet<>();
+        if (code == null || !code.contains("import") && !code.contains("export")) {
+            return specifiers;
+        }
+        String masked = mask(code);
+        Matcher from = FROM.matcher(masked);
+        while (from.find()) {
+            specifiers.add(code.substring(from.start(2), from.end(2)));
+        }
+        Matcher bare = BARE.matcher(masked);
+        while (bare.find()) {
+            int group = bare.group(2) != null ? 2 : 4;
+            specifiers.add(code.substring(bare.start(group), bare.end(group)));
+        }
+        return specifiers;
+    }
+
+    /**
+     * Rewrite import declarations into dynamic imports, e.g.
+     * {@code import vat, { gross as g } from 'vat';} into
+     * {@code const { default: vat, gross: g } = await import('vat');}.
+     *
+     * <p>Like real imports, the rewritten declarations are hoisted: they all run, in order,
+     * at the start of the script's first line, so the bindings can be used anywhere in the
+     * script. The declarations themselves are blanked, keeping every line and column of the
+     * script where it was. Unlike real imports, the bindings are constants holding the
+     * module's exports as they are once the module has loaded, not live bindings.
+     */
+    static DynamicImports toDynamicImports(String code) {
+        if (!code.contains("import")) {
+            return new DynamicImports(code, 0);
+        }
+        String masked = mask(code);
+        Matcher matcher = DECLARATION.matcher(masked);
+        StringBuilder hoisted = new StringBuilder();
+        char[] rewritten = code.toCharArray();
+        while (matcher.find()) {
+            String quote = matcher.group(3);
+            String module = "await import(" + quote + code.substring(matcher.start(4), matcher.end(4)) + quote + ")";
+            hoisted.append(bind(matcher.group(2), module)).append(' ');
+            blank(rewritten, matcher.start(), matcher.end());
+        }
+        if (hoisted.isEmpty()) {
+            return new DynamicImports(code, 0);
+        }
+        return new DynamicImports(hoisted + new String(rewritten), hoisted.length());
+    }
+
+    private static String bind(String clause, String module) {
+        if (clause == null) {
+            return module + ";";
+        }
+        String defaultBinding = null;
+        String rest = clause.trim();
+        if (!rest.startsWith("{") && !rest.startsWith("*")) {
+            int comma = rest.indexOf(',');
+            defaultBinding = (comma < 0 ? rest : rest.substring(0, comma)).trim();
+            rest = comma < 0 ? "" : rest.substring(comma + 1).trim();
+        }
+        if (rest.startsWith("*")) {
+            String namespace = rest.replaceFirst("^\\*\\s*as\\s+", "");
+            return "const " + namespace + " = " + module
+                    + (defaultBinding != null ? ", " + defaultBinding + " = " + namespace + ".default" : "") + ";";
+        }
+        List<String> bindings = new ArrayList<>();
+        if (defaultBinding != null) {
+            bindings.add("default: " + defaultBinding);
+        }
+        if (!rest.isEmpty()) {
+            for (String binding : rest.substring(1, rest.length() - 1).split(",")) {
+                if (!binding.isBlank()) {
+                    bindings.add(binding.trim().replaceFirst("\\s+as\\s+", ": "));
+                }
+            }
+        }
+        return "const { " + String.join(", ", bindings) + " } = " + module + ";";
+    }
+
+    /**
+     * A copy of the code of the same length in which the contents of comments, string and
+     * template literals and regular expression literals are replaced by spaces. Line breaks,
+     * quotes and the {@code ${...}} expressions of templates are kept.
+     */
+    static String mask(String code) {
+        char[] masked = code.toCharArray();
+        // Brace depth at which each open template substitution started
+        Deque<Integer> substitutions = new ArrayDeque<>();
+        int depth = 0;
+        int i = 0;
+        while (i < masked.length) {
+            char c = masked[i];
+            char next = i + 1 < masked.length ? masked[i + 1] : 0;
+            if (c == '/' && next == '/') {
+                int end = indexOfLineEnd(masked, i);
+                blank(masked, i, end);
+                i = end;
+            } else if (c == '/' && next == '*') {
+                int close = code.indexOf("*/", i + 2);
+                int end = close < 0 ? masked.length : close + 2;
+                blank(masked, i, end);
+                i = end;
+            } else if (c == '\'' || c == '"') {
+                int end = skipString(masked, i + 1, c);
+                blank(masked, i + 1, Math.max(i + 1, end - 1));
+                i = end;
+            } else if (c == '`') {
+                i = skipTemplate(masked, i + 1);
+                if (i < masked.length && masked[i - 1] == '{') {
+                    substitutions.push(depth);
+                }
+            } else if (c == '/' && startsRegex(masked, i)) {
+                int end = skipRegex(masked, i + 1);
+                blank(masked, i + 1, Math.max(i + 1, end - 1));
+                i = end;
+            } else if (c == '{') {
+                depth++;
+                i++;
+            } else if (c == '}' && !substitutions.isEmpty() && substitutions.peek() == depth) {
+                // End of a ${...} substitution: the template continues
+                substitutions.pop();
+                i = skipTemplate(masked, i + 1);
+                if (i < masked.length && masked[i - 1] == '{') {
+                    substitutions.push(depth);
+                }
+            } else {
+                if (c == '}') {
+                    depth--;
+                }
+                i++;
+            }
+        }
+        return new String(masked);
+    }
+
+    /**
+     * Blank template text from {@code start} up to the closing backtick or the next
+     * {@code ${}; returns the index after it.
+     */
+    private static int skipTemplate(char[] chars, int start) {
+        int i = start;
+        while (i < chars.length) {
+            char c = chars[i];
+            if (c == '\\') {
+                blank(chars, i, Math.min(chars.length, i + 2));
+                i += 2;
+            } else if (c == '`') {
+                return i + 1;
+            } else if (c == '$' && i + 1 < chars.length && chars[i + 1] == '{') {
+                return i + 2;
+            } else {
+                blank(chars, i, i + 1);
+                i++;
+            }
+        }
+        return chars.length;
+    }
+
+    /** Index after the closing quote, or the line end of an unterminated string. */
+    private static int skipString(char[] chars, int start, char quote) {
+        int i = start;
+        while (i < chars.length && chars[i] != '\n') {
+            if (chars[i] == '\\') {
+                i += 2;
+            } else if (chars[i++] == quote) {
+                return i;
+            }
+        }
+        return Math.min(i, chars.length);
+    }
+
+    /** Index after the closing slash (flags stay code), or the line end if there is none. */
+    private static int skipRegex(char[] chars, int start) {
+        boolean inClass = false;
+        int i = start;
+        while (i < chars.length && chars[i] != '\n') {
+            char c = chars[i];
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            i++;
+            if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                return i;
+            }
+        }
+        return Math.min(i, chars.length);
+    }
+
+    /** Whether a slash at {@code index} starts a regular expression, judged by what precedes it. */
+    private static boolean startsRegex(char[] chars, int index) {
+        int i = index - 1;
+        while (i >= 0 && Character.isWhitespace(chars[i])) {
+            i--;
+        }
+        if (i < 0 || "(,=:[!&|?{};+-*%<>~^".indexOf(chars[i]) >= 0) {
+            return true;
+        }
+        int start = Math.max(0, i - 11);
+        return REGEX_KEYWORD.matcher(new String(chars, start, i + 1 - start)).find();
+    }
+
+    private static int indexOfLineEnd(char[] chars, int from) {
+        int i = from;
+        while (i < chars.length && chars[i] != '\n' && chars[i] != '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    /** Replace everything but line breaks in {@code [start, end)} by spaces. */
+    private static void blank(char[] chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars[i] != '\n' && chars[i] != '\r') {
+                chars[i] = ' ';
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.erp.scripting.engine;
+
+/**
+ * Library scripts the engine's module loader can import, see {@link LibraryFileSystem}.
+ */
+public interface ScriptLibraries {
+
+    /** No libraries at all; every import fails. */
+    ScriptLibraries NONE = (companyId, name) -> null;
+
+    /**
+     * @return the company's active library of that name, or null if there is none
+     */
+    Library find(String companyId, String name);
+
+    /**
+     * A library as the engine loads it.
+     *
+     * @param revision changes whenever the library or any library it imports (directly or
+     *                 not) changes; compiled modules are keyed by it
+     */
+    record Library(String name, String revision, String code) {}
+}
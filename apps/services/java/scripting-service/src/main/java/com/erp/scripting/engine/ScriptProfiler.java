@@ -0,0 +1,287 @@
+package com.erp.scripting.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * One profiled script run, see {@link GraalJSEngine#executeProfiled}.
+ *
+ * <p>The run gets its own polyglot engine with Truffle's CPU sampler and statement tracer
+ * attached, so profiling never slows down or pollutes the shared engine. The tools write
+ * their JSON reports when that engine is closed; {@link #finish} reads them back into:
+ * <ul>
+ *   <li>{@code functions} – sampled time per function (self and total), with its lines</li>
+ *   <li>{@code lines} – how often the statements of each script line were executed</li>
+ *   <li>{@code hostCalls} – calls and wait time per host function (ERP.query, ERP.mutate, ...)</li>
+ *   <li>{@code requests} – the slowest downstream requests, see {@link HostCallTracer}; with
+ *       byte counts only if {@code scripting.tracing.count-bytes} is set</li>
+ *   <li>{@code allocatedBytes} – heap allocated by the thread running the script</li>
+ * </ul>
+ * The code runs in the interpreter on a fresh engine and the tracer adds overhead, so
+ * absolute times are higher than in normal runs; the proportions are what matters.
+ */
+@Slf4j
+final class ScriptProfiler implements AutoCloseable {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static boolean samplerInitialized;
+
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final Path samplerReport;
+    private final Path tracerReport;
+    private final Engine engine;
+    private long allocatedAtStart = -1;
+    private long allocatedBytes = -1;
+    private boolean closed;
+
+    ScriptProfiler(ObjectMapper objectMapper, long samplePeriodMs, int maxEntries) throws IOException {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        initializeSampler();
+        this.samplerReport = Files.createTempFile("script-cpusampler-", ".json");
+        this.tracerReport = Files.createTempFile("script-cputracer-", ".json");
+        this.engine = Engine.newBuilder("js")
+                .option("engine.WarnInterpreterOnly", "false")
+                .option("cpusampler", "true")
+                .option("cpusampler.Output", "json")
+                .option("cpusampler.Period", String.valueOf(Math.max(1, samplePeriodMs)))
+                .option("cpusampler.OutputFile", samplerReport.toString())
+                .option("cputracer", "true")
+                .option("cputracer.Output", "json")
+                .option("cputracer.TraceRoots", "false")
+                .option("cputracer.TraceStatements", "true")
+                .option("cputracer.OutputFile", tracerReport.toString())
+                .build();
+    }
+
+    /**
+     * The first sampling engine of a JVM records no samples once its script has called into
+     * the host (GraalVM 23.1), which every ERP call does. A throwaway sampler run beforehand
+     * avoids that for all later engines.
+     */
+    private static synchronized void initializeSampler() throws IOException {
+        if (samplerInitialized) {
+            return;
+        }
+        Path report = Files.createTempFile("script-cpusampler-", ".json");
+        try (Engine warmup = Engine.newBuilder("js")
+                .option("engine.WarnInterpreterOnly", "false")
+                .option("cpusampler", "true")
+                .option("cpusampler.Output", "json")
+                .option("cpusampler.OutputFile", report.toString())
+                .build();
+             Context context = Context.newBuilder("js").engine(warmup).build()) {
+            context.eval("js", "0");
+        } finally {
+            Files.deleteIfExists(report);
+        }
+        samplerInitialized = true;
+    }
+
+    Engine engine() {
+        return engine;
+    }
+
+    /** Called on the thread that runs the script, right before it starts. */
+    void begin() {
+        allocatedAtStart = THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Called on the same thread once the script has finished. */
+    void end() {
+        if (allocatedAtStart >= 0) {
+            allocatedBytes = THREADS.getCurrentThreadAllocatedBytes() - allocatedAtStart;
+        }
+    }
+
+    /**
+     * Close the profiling engine and assemble the profile.
+     *
+     * @param scriptSourceName name of the script's source, to tell its lines from the prelude's
+     * @param hostCalls        host call statistics of the run, see {@link SandboxContext#hostCalls}
+     * @param spans            downstream requests of the run
+     */
+    Map<String, Object> finish(String scriptSourceName, Map<String, SandboxContext.HostCallStats> hostCalls,
+                               List<HostCallTracer.Span> spans) {
+        closeEngine();
+        Map<String, Object> profile = new LinkedHashMap<>();
+        try {
+            readSamples(profile);
+            readLines(profile, scriptSourceName);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read script profile: {}", e.getMessage());
+            profile.put("error", "Profile data unavailable");
+        }
+        Map<String, Object> calls = new LinkedHashMap<>();
+        double hostWaitMs = 0;
+        for (Map.Entry<String, SandboxContext.HostCallStats> entry : hostCalls.entrySet()) {
+            double waitMs = entry.getValue().nanos() / 1_000_000.0;
+            hostWaitMs += waitMs;
+            calls.put(entry.getKey(), Map.of("calls", entry.getValue().calls(), "waitMs", round(waitMs)));
+        }
+        profile.put("hostCalls", calls);
+        profile.put("hostWaitMs", round(hostWaitMs));
+        profile.put("requests", spans.stream()
+                .sorted(Comparator.comparingLong(HostCallTracer.Span::durationNanos).reversed())
+                .limit(maxEntries)
+                .map(span -> {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("service", span.service());
+                    entry.put("operation", span.operation());
+                    entry.put("queryHash", span.queryHash());
+                    entry.put("durationMs", round(span.durationNanos() / 1_000_000.0));
+                    if (span.bytesOut() >= 0) {
+                        entry.put("bytesOut", span.bytesOut());
+                        entry.put("bytesIn", span.bytesIn());
+                    }
+                    entry.put("error", span.error());
+                    return entry;
+                })
+                .toList());
+        profile.put("allocatedBytes", allocatedBytes);
+        return profile;
+    }
+
+    private void readSamples(Map<String, Object> profile) throws IOException {
+        JsonNode report = objectMapper.readTree(samplerReport.toFile());
+        long samples = 0;
+        long period = 0;
+        Map<String, FunctionStats> functions = new HashMap<>();
+        for (JsonNode context : report.path("contexts")) {
+            samples += context.path("sample_count").asLong();
+            period = context.path("period").asLong(period);
+            for (JsonNode thread : context.path("profile")) {
+                for (JsonNode node : thread.path("samples")) {
+                    collect(node, functions, new HashSet<>());
+                }
+            }
+        }
+        long total = Math.max(1, samples);
+        List<Map<String, Object>> hotSpots = functions.values().stream()
+                .filter(stats -> stats.totalHits > 0)
+                .sorted(Comparator.comparingLong((FunctionStats stats) -> stats.selfHits)
+                        .thenComparingLong(stats -> stats.totalHits).reversed())
+                .limit(maxEntries)
+                .map(stats -> {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("function", stats.name);
+                    entry.put("source", stats.source);
+                    entry.put("startLine", stats.startLine);
+                    entry.put("endLine", stats.endLine);
+                    entry.put("selfSamples", stats.selfHits);
+                    entry.put("totalSamples", stats.totalHits);
+                    entry.put("selfPercent", round(100.0 * stats.selfHits / total));
+                    entry.put("totalPercent", round(100.0 * stats.totalHits / total));
+                    return entry;
+                })
+                .toList();
+        profile.put("samplePeriodMs", period);
+        profile.put("samples", samples);
+        profile.put("sampledMs", samples * period);
+        profile.put("functions", hotSpots);
+    }
+
+    /**
+     * Fold a call tree node into per-function totals. A function already on the current
+     * path (recursion) does not add its total again.
+     */
+    private void collect(JsonNode node, Map<String, FunctionStats> functions, Set<String> path) {
+        JsonNode section = node.path("source_section");
+        String name = node.path("root_name").asText();
+        String source = section.path("source_name").asText(null);
+        int startLine = section.path("start_line").asInt();
+        String key = name + '|' + source + '|' + startLine;
+        FunctionStats stats = functions.computeIfAbsent(key,
+                k -> new FunctionStats(name, source, startLine, section.path("end_line").asInt()));
+        stats.selfHits += node.path("self_hit_count").asLong();
+        boolean outermost = path.add(key);
+        if (outermost) {
+            stats.totalHits += node.path("hit_count").asLong();
+        }
+        for (JsonNode child : node.path("children")) {
+            collect(child, functions, path);
+        }
+        if (outermost) {
+            path.remove(key);
+        }
+    }
+
+    private void readLines(Map<String, Object> profile, String scriptSourceName) throws IOException {
+        JsonNode report = objectMapper.readTree(tracerReport.toFile());
+        Map<Integer, Long> executions = new TreeMap<>();
+        for (JsonNode entry : report.path("profile")) {
+            JsonNode section = entry.path("source_section");
+            if (scriptSourceName.equals(section.path("source_name").asText())) {
+                executions.merge(section.path("start_line").asInt(), entry.path("count").asLong(), Long::sum);
+            }
+        }
+        List<Map<String, Object>> lines = new ArrayList<>();
+        executions.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed())
+                .limit(maxEntries)
+                .forEach(entry -> lines.add(Map.of("line", entry.getKey(), "executions", entry.getValue())));
+        profile.put("lines", lines);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private void closeEngine() {
+        if (!closed) {
+            closed = true;
+            try {
+                engine.close(true);
+            } catch (RuntimeException e) {
+                log.debug("Profiling engine did not close cleanly: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closeEngine();
+        try {
+            Files.deleteIfExists(samplerReport);
+            Files.deleteIfExists(tracerReport);
+        } catch (IOException e) {
+            log.debug("Could not delete profiler reports: {}", e.getMessage());
+        }
+    }
+
+    private static final class FunctionStats {
+        final String name;
+        final String source;
+        final int startLine;
+        final int endLine;
+        long selfHits;
+        long totalHits;
+
+        FunctionStats(String name, String source, int startLine, int endLine) {
+            this.name = name;
+            this.source = source;
+            this.startLine = startLine;
+            this.endLine = endLine;
+        }
+    }
+}
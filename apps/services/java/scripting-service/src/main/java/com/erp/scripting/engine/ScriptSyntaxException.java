@@ -0,0 +1,30 @@
+package com.erp.scripting.engine;
+
+/**
+ * Script code that does not parse. Line and column refer to the code as saved (1-based).
+ */
+public class ScriptSyntaxException extends IllegalArgumentException {
+
+    private final int line;
+    private final int column;
+    private final String detail;
+
+    public ScriptSyntaxException(int line, int column, String detail) {
+        super("Syntax error at line " + line + ", column " + column + ": " + detail);
+        this.line = line;
+        this.column = column;
+        this.detail = detail;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+}
@@ -0,0 +1,68 @@
+package com.erp.scripting.engine;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-company concurrency quota for script runs, so one noisy tenant cannot occupy
+ * all workers (or, in virtual-thread mode, all downstream connections).
+ */
+public class TenantConcurrencyLimiter {
+
+    private static final String NO_TENANT = "__none__";
+
+    private final int maxConcurrentPerTenant;
+    private final Cache<String, Semaphore> semaphores;
+    private final Counter rejected;
+
+    public TenantConcurrencyLimiter(int maxConcurrentPerTenant, MeterRegistry meterRegistry) {
+        this.maxConcurrentPerTenant = maxConcurrentPerTenant;
+        this.semaphores = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofHours(1))
+                .build();
+        this.rejected = Counter.builder("scripting.execution.quota.rejected")
+                .description("Script runs rejected because the company reached its concurrency quota")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Try to take a slot for the tenant.
+     *
+     * @return a permit to release exactly once when the run ends, or null if the quota is exhausted
+     */
+    public Permit tryAcquire(String tenant, long waitMs) throws InterruptedException {
+        Semaphore semaphore = semaphores.get(tenant != null ? tenant : NO_TENANT,
+                key -> new Semaphore(maxConcurrentPerTenant));
+        if (!semaphore.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            return null;
+        }
+        return new Permit(semaphore);
+    }
+
+    /**
+     * A held quota slot. Releasing is idempotent so both the caller (on cancel) and the
+     * worker (on completion) may try to release it.
+     */
+    public static final class Permit {
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+}
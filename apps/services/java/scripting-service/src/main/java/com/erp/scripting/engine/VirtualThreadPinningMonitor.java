@@ -0,0 +1,95 @@
+package com.erp.scripting.engine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+/**
+ * Streams {@code jdk.VirtualThreadPinned} JFR events while scripts run on virtual threads.
+ *
+ * <p>Used to confirm that Graal host calls (ERP.query/mutate waiting on HTTP) do not pin
+ * carrier threads. Each event is counted in {@code scripting.vthread.pinned}, tagged by
+ * whether polyglot frames were on the stack, and logged with its top frames.
+ */
+@Slf4j
+@Component
+public class VirtualThreadPinningMonitor {
+
+    private static final int LOGGED_FRAMES = 8;
+
+    private final MeterRegistry meterRegistry;
+    private RecordingStream stream;
+
+    @Value("${scripting.execution.mode:platform}")
+    private String executionMode;
+
+    @Value("${scripting.execution.pinning-diagnostics.enabled:false}")
+    private boolean enabled;
+
+    @Value("${scripting.execution.pinning-diagnostics.threshold-ms:20}")
+    private long thresholdMs;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled || !"virtual".equalsIgnoreCase(executionMode)) {
+            return;
+        }
+        try {
+            stream = new RecordingStream();
+            stream.enable("jdk.VirtualThreadPinned")
+                    .withThreshold(Duration.ofMillis(thresholdMs))
+                    .withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+            stream.startAsync();
+            log.info("Virtual thread pinning diagnostics enabled (threshold {}ms)", thresholdMs);
+        } catch (RuntimeException e) {
+            log.warn("Could not start JFR pinning diagnostics: {}", e.getMessage());
+            stream = null;
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        String frames = stackTrace == null ? "<no stack trace>" : stackTrace.getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(this::describe)
+                .collect(Collectors.joining("\n\tat "));
+        boolean polyglot = stackTrace != null && stackTrace.getFrames().stream()
+                .anyMatch(frame -> frame.isJavaFrame() && isPolyglotFrame(frame));
+
+        meterRegistry.counter("scripting.vthread.pinned", "polyglot", String.valueOf(polyglot)).increment();
+        log.warn("Virtual thread pinned for {}ms (polyglot frames: {})\n\tat {}",
+                event.getDuration().toMillis(), polyglot, frames);
+    }
+
+    private boolean isPolyglotFrame(RecordedFrame frame) {
+        String type = frame.getMethod().getType().getName();
+        return type.startsWith("org.graalvm.") || type.startsWith("com.oracle.truffle.");
+    }
+
+    private String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
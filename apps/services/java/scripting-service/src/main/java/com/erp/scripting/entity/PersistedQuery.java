@@ -0,0 +1,62 @@
+package com.erp.scripting.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "persisted_queries")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PersistedQuery {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+    
+    @Column(name = "company_id", nullable = false)
+    private UUID companyId;
+    
+    @Column(nullable = false)
+    private String name;
+    
+    @Column(nullable = false)
+    private String service;
+    
+    // CHAR(64) in the schema, which schema validation does not accept for a VARCHAR mapping
+    @Column(nullable = false, length = 64)
+    @JdbcTypeCode(SqlTypes.CHAR)
+    private String sha256;
+    
+    @Column(nullable = false, columnDefinition = "text")
+    private String document;
+    
+    @Column(name = "created_by")
+    private UUID createdBy;
+    
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private OffsetDateTime createdAt;
+    
+    @Column(name = "updated_at")
+    private OffsetDateTime updatedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = OffsetDateTime.now();
+        updatedAt = OffsetDateTime.now();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = OffsetDateTime.now();
+    }
+}
@@ -44,6 +44,21 @@ public class Script {
     @Column(name = "trigger_entity")
     private String triggerEntity;
     
+    /** Spring cron expression (second minute hour day month weekday) for SCHEDULED scripts. */
+    @Column(name = "schedule_cron")
+    private String scheduleCron;
+    
+    /** Time zone the cron expression is evaluated in; UTC if not set. */
+    @Column(name = "schedule_timezone")
+    private String scheduleTimezone;
+    
+    /**
+     * The result depends on the input only (no ERP.query, clock or randomness), so results
+     * may be cached per input and version.
+     */
+    @Column(name = "is_deterministic")
+    private boolean isDeterministic;
+    
     @Column(name = "is_active")
     private boolean isActive;
     
@@ -82,7 +97,8 @@ public class Script {
         TRANSFORMATION,  // Transform data
         CALCULATION,     // Calculate values (e.g., prices, totals)
         AUTOMATION,      // Automated workflows
-        CUSTOM_FIELD     // Custom field value calculation
+        CUSTOM_FIELD,    // Custom field value calculation
+        LIBRARY          // ES module other scripts import by name; not run on its own
     }
     
     public enum TriggerEvent {
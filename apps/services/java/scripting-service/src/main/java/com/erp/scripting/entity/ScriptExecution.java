@@ -52,6 +52,18 @@ public class ScriptExecution {
     @Column(name = "completed_at")
     private OffsetDateTime completedAt;
     
+    /** ERP requests the run sent downstream. */
+    @Column(name = "host_calls")
+    private Integer hostCalls;
+    
+    /** Time the script spent blocked in ERP host calls. */
+    @Column(name = "host_wait_ms")
+    private Long hostWaitMs;
+    
+    /** CPU sampler profile of a run started with profiling enabled. */
+    @Column(columnDefinition = "jsonb")
+    private String profile;
+    
     @PrePersist
     protected void onCreate() {
         startedAt = OffsetDateTime.now();
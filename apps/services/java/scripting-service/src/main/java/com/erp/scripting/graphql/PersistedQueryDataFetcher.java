@@ -0,0 +1,38 @@
+package com.erp.scripting.graphql;
+
+import com.erp.scripting.entity.PersistedQuery;
+import com.erp.scripting.service.PersistedQueryService;
+import com.netflix.graphql.dgs.*;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@DgsComponent
+@RequiredArgsConstructor
+public class PersistedQueryDataFetcher {
+    
+    private final PersistedQueryService persistedQueryService;
+    
+    @DgsQuery
+    public List<PersistedQuery> persistedQueries(@InputArgument String companyId) {
+        return persistedQueryService.findByCompany(UUID.fromString(companyId));
+    }
+    
+    @DgsMutation
+    public PersistedQuery registerPersistedQuery(@InputArgument Map<String, Object> input) {
+        return persistedQueryService.register(new PersistedQueryService.RegisterPersistedQueryRequest(
+                UUID.fromString((String) input.get("companyId")),
+                (String) input.get("name"),
+                (String) input.get("service"),
+                (String) input.get("document"),
+                input.get("createdBy") != null ? UUID.fromString((String) input.get("createdBy")) : null
+        ));
+    }
+    
+    @DgsMutation
+    public Boolean deletePersistedQuery(@InputArgument String id) {
+        return persistedQueryService.delete(UUID.fromString(id));
+    }
+}
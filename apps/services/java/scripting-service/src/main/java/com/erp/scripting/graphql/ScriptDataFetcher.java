@@ -13,6 +13,7 @@ import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -62,6 +63,9 @@ public class ScriptDataFetcher {
                 ScriptType.valueOf((String) input.get("type")),
                 input.get("triggerEvent") != null ? TriggerEvent.valueOf((String) input.get("triggerEvent")) : null,
                 (String) input.get("triggerEntity"),
+                (String) input.get("scheduleCron"),
+                (String) input.get("scheduleTimezone"),
+                input.get("isDeterministic") != null && (Boolean) input.get("isDeterministic"),
                 input.get("isActive") != null ? (Boolean) input.get("isActive") : true,
                 input.get("createdBy") != null ? UUID.fromString((String) input.get("createdBy")) : null
         ));
@@ -79,6 +83,9 @@ public class ScriptDataFetcher {
                 input.get("type") != null ? ScriptType.valueOf((String) input.get("type")) : null,
                 input.get("triggerEvent") != null ? TriggerEvent.valueOf((String) input.get("triggerEvent")) : null,
                 (String) input.get("triggerEntity"),
+                (String) input.get("scheduleCron"),
+                (String) input.get("scheduleTimezone"),
+                (Boolean) input.get("isDeterministic"),
                 (Boolean) input.get("isActive"),
                 input.get("updatedBy") != null ? UUID.fromString((String) input.get("updatedBy")) : null
         )).orElse(null);
@@ -93,7 +100,8 @@ public class ScriptDataFetcher {
     public ScriptExecutionResultDTO executeScript(
             @InputArgument String scriptId,
             @InputArgument Map<String, Object> input,
-            @InputArgument String executedBy
+            @InputArgument String executedBy,
+            @InputArgument Boolean profile
     ) {
         // Extract auth headers from the incoming request for ERP.query/mutate in scripts
         String authToken = null;
@@ -110,15 +118,46 @@ public class ScriptDataFetcher {
                 input,
                 executedBy != null ? UUID.fromString(executedBy) : null,
                 authToken,
-                companyId
-        );
-        return new ScriptExecutionResultDTO(
-                result.executionId().toString(),
-                result.success(),
-                result.result(),
-                result.error(),
-                result.executionTimeMs()
+                companyId,
+                Boolean.TRUE.equals(profile)
         );
+        return ScriptExecutionResultDTO.from(result);
+    }
+    
+    @DgsMutation
+    public List<ScriptExecutionResultDTO> executeScriptBatch(
+            @InputArgument String scriptId,
+            @InputArgument List<Object> inputs,
+            @InputArgument String executedBy
+    ) {
+        String authToken = null;
+        String companyId = null;
+        ServletRequestAttributes attrs = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if (attrs != null) {
+            HttpServletRequest request = attrs.getRequest();
+            authToken = request.getHeader("Authorization");
+            companyId = request.getHeader("X-Company-Id");
+        }
+        
+        List<Map<String, Object>> batchInputs = new ArrayList<>(inputs.size());
+        for (Object input : inputs) {
+            if (!(input instanceof Map<?, ?> map)) {
+                throw new IllegalArgumentException("Batch inputs must be JSON objects");
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> typed = (Map<String, Object>) map;
+            batchInputs.add(typed);
+        }
+        
+        return scriptService.executeBatch(
+                UUID.fromString(scriptId),
+                batchInputs,
+                executedBy != null ? UUID.fromString(executedBy) : null,
+                authToken,
+                companyId
+        ).stream()
+                .map(r -> ScriptExecutionResultDTO.from(r))
+                .toList();
     }
     
     @DgsMutation
@@ -127,24 +166,20 @@ public class ScriptDataFetcher {
             @InputArgument String triggerEvent,
             @InputArgument String triggerEntity,
             @InputArgument Map<String, Object> data,
-            @InputArgument String executedBy
+            @InputArgument String executedBy,
+            @InputArgument Integer deadlineMs
     ) {
         List<ScriptService.ScriptExecutionResult> results = scriptService.executeTrigger(
                 UUID.fromString(companyId),
                 TriggerEvent.valueOf(triggerEvent),
                 triggerEntity,
                 data,
-                executedBy != null ? UUID.fromString(executedBy) : null
+                executedBy != null ? UUID.fromString(executedBy) : null,
+                deadlineMs != null ? deadlineMs.longValue() : null
         );
         
         return results.stream()
-                .map(r -> new ScriptExecutionResultDTO(
-                        r.executionId().toString(),
-                        r.success(),
-                        r.result(),
-                        r.error(),
-                        r.executionTimeMs()
-                ))
+                .map(r -> ScriptExecutionResultDTO.from(r))
                 .toList();
     }
     
@@ -153,6 +188,22 @@ public class ScriptDataFetcher {
             boolean success,
             Object result,
             String error,
-            long executionTimeMs
-    ) {}
+            long executionTimeMs,
+            int hostCalls,
+            long hostWaitMs,
+            Map<String, Object> profile
+    ) {
+        static ScriptExecutionResultDTO from(ScriptService.ScriptExecutionResult result) {
+            return new ScriptExecutionResultDTO(
+                    result.executionId().toString(),
+                    result.success(),
+                    result.result(),
+                    result.error(),
+                    result.executionTimeMs(),
+                    result.hostCalls(),
+                    result.hostWaitMs(),
+                    result.profile()
+            );
+        }
+    }
 }
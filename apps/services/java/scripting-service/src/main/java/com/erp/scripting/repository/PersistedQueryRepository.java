@@ -0,0 +1,17 @@
+package com.erp.scripting.repository;
+
+import com.erp.scripting.entity.PersistedQuery;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface PersistedQueryRepository extends JpaRepository<PersistedQuery, UUID> {
+    
+    List<PersistedQuery> findByCompanyIdOrderByName(UUID companyId);
+    
+    Optional<PersistedQuery> findByCompanyIdAndName(UUID companyId, String name);
+}
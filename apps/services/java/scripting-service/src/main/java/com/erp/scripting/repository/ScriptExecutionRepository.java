@@ -2,8 +2,8 @@ package com.erp.scripting.repository;
 
 import com.erp.scripting.entity.ScriptExecution;
 import com.erp.scripting.entity.ScriptExecution.ExecutionStatus;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -16,17 +16,15 @@ import java.util.UUID;
 @Repository
 public interface ScriptExecutionRepository extends JpaRepository<ScriptExecution, UUID> {
     
-    Page<ScriptExecution> findByScriptId(UUID scriptId, Pageable pageable);
+    // script_executions is partitioned by month on started_at: every history query is bounded
+    // by a start time so Postgres only scans the partitions inside the window.
     
-    Page<ScriptExecution> findByCompanyId(UUID companyId, Pageable pageable);
+    Slice<ScriptExecution> findByScriptIdAndStartedAtGreaterThanEqual(UUID scriptId, OffsetDateTime since, Pageable pageable);
     
-    List<ScriptExecution> findByScriptIdAndStatus(UUID scriptId, ExecutionStatus status);
+    Slice<ScriptExecution> findByCompanyIdAndStartedAtGreaterThanEqual(UUID companyId, OffsetDateTime since, Pageable pageable);
     
-    @Query("SELECT AVG(e.executionTimeMs) FROM ScriptExecution e WHERE e.scriptId = :scriptId AND e.status = 'SUCCESS'")
-    Double getAverageExecutionTime(@Param("scriptId") UUID scriptId);
-    
-    @Query("SELECT COUNT(e) FROM ScriptExecution e WHERE e.scriptId = :scriptId AND e.status = :status")
-    long countByScriptIdAndStatus(@Param("scriptId") UUID scriptId, @Param("status") ExecutionStatus status);
+    List<ScriptExecution> findByScriptIdAndStatusAndStartedAtGreaterThanEqual(
+            UUID scriptId, ExecutionStatus status, OffsetDateTime since);
     
     @Query("SELECT e FROM ScriptExecution e WHERE e.companyId = :companyId AND e.startedAt > :since ORDER BY e.startedAt DESC")
     List<ScriptExecution> findRecentByCompany(@Param("companyId") UUID companyId, @Param("since") OffsetDateTime since);
@@ -32,4 +32,15 @@ public interface ScriptRepository extends JpaRepository<Script, UUID> {
     List<Script> searchByName(@Param("companyId") UUID companyId, @Param("search") String search);
     
     boolean existsByCompanyIdAndName(UUID companyId, String name);
+    
+    /**
+     * Active runnable scripts (no libraries), those that ran in the last week first, then by
+     * executions recorded.
+     */
+    @Query(value = "SELECT s.* FROM scripts s LEFT JOIN script_stats st ON st.script_id = s.id " +
+                   "WHERE s.is_active = TRUE AND s.type <> 'LIBRARY' " +
+                   "ORDER BY COALESCE(st.updated_at > NOW() - INTERVAL '7 days', FALSE) DESC, " +
+                   "COALESCE(st.success_count + st.failed_count + st.timeout_count, 0) DESC " +
+                   "LIMIT :limit", nativeQuery = true)
+    List<Script> findMostExecutedActive(@Param("limit") int limit);
 }
@@ -1,24 +1,119 @@
 package com.erp.scripting.service;
 
+import com.erp.scripting.entity.PersistedQuery;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.Parser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Service that proxies GraphQL requests to other ERP microservices.
  * Forwards the caller's auth headers so each target service enforces its own access control.
+ *
+ * <p>Each target service gets its own JDK {@link HttpClient} (HTTP/2 where the target supports
+ * it, persistent keep-alive connections otherwise), its own connect/read timeouts and a cap
+ * on concurrent requests. A circuit breaker per service fails calls fast while the service
+ * is failing or slow, so one unhealthy service cannot tie up the script workers waiting on
+ * it. Settings come from {@code erp.proxy.*} and can be overridden per service under
+ * {@code erp.proxy.services.<name>.*}.
  */
 @Slf4j
 @Service
 public class DataProxyService {
 
-    private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final PersistedQueryService persistedQueries;
+    /** Announces cache invalidations to the other replicas; null when running standalone. */
+    private final ScriptChangeNotifier changeNotifier;
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    // Client defaults, overridable per service
+    @Value("${erp.proxy.connect-timeout-ms:2000}")
+    private long connectTimeoutMs = 2000;
+
+    @Value("${erp.proxy.read-timeout-ms:10000}")
+    private long readTimeoutMs = 10000;
+
+    @Value("${erp.proxy.max-concurrency:64}")
+    private int maxConcurrency = 64;
+
+    @Value("${erp.proxy.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMs = 1000;
+
+    @Value("${erp.proxy.http-version:HTTP_2}")
+    private String httpVersion = "HTTP_2";
+
+    @Value("${erp.proxy.max-batch-size:50}")
+    private int maxBatchSize = 50;
+
+    // Opt-in read-through cache for queries; TTL can be overridden per service (0 disables)
+    @Value("${erp.proxy.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${erp.proxy.cache.max-size:10000}")
+    private long cacheMaxSize = 10000;
+
+    @Value("${erp.proxy.cache.ttl-seconds:60}")
+    private long cacheTtlSeconds = 60;
+
+    private volatile ProxyResponseCache responseCache;
+
+    // Circuit breaker per service: opens when too many of the recent calls fail or are slow
+    @Value("${erp.proxy.circuit.window-size:20}")
+    private int circuitWindowSize = 20;
+
+    @Value("${erp.proxy.circuit.minimum-calls:10}")
+    private int circuitMinimumCalls = 10;
+
+    @Value("${erp.proxy.circuit.failure-rate-threshold:50}")
+    private int circuitFailureRateThreshold = 50;
+
+    @Value("${erp.proxy.circuit.slow-call-ms:3000}")
+    private long circuitSlowCallMs = 3000;
+
+    @Value("${erp.proxy.circuit.open-ms:10000}")
+    private long circuitOpenMs = 10000;
+
+    @Value("${erp.proxy.circuit.half-open-calls:2}")
+    private int circuitHalfOpenCalls = 2;
+
+    // Send registered queries by hash only (automatic persisted queries); per-service override "apq"
+    @Value("${erp.proxy.apq.enabled:false}")
+    private boolean apqEnabled;
 
     // Service URLs (configurable via environment variables)
     @Value("${erp.services.gateway:http://gateway:4000}")
@@ -43,61 +138,601 @@ public class DataProxyService {
             "gateway", "masterdata", "shop", "accounting", "user", "company"
     );
 
+    private static final String REJECTED_CIRCUIT_OPEN = "circuit_open";
+    private static final String REJECTED_SATURATED = "saturated";
+
+    private static final String APQ_NOT_FOUND = "PERSISTED_QUERY_NOT_FOUND";
+    private static final String APQ_NOT_SUPPORTED = "PERSISTED_QUERY_NOT_SUPPORTED";
+
     public DataProxyService(ObjectMapper objectMapper) {
+        this(objectMapper, null, new SimpleMeterRegistry(), null);
+    }
+
+    public DataProxyService(ObjectMapper objectMapper, Environment environment, MeterRegistry meterRegistry,
+                            PersistedQueryService persistedQueries) {
+        this(objectMapper, environment, meterRegistry, persistedQueries, null);
+    }
+
+    @Autowired
+    public DataProxyService(ObjectMapper objectMapper, Environment environment, MeterRegistry meterRegistry,
+                            PersistedQueryService persistedQueries, ScriptChangeNotifier changeNotifier) {
         this.objectMapper = objectMapper;
-        this.restTemplate = new RestTemplate();
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.persistedQueries = persistedQueries;
+        this.changeNotifier = changeNotifier;
+    }
+
+    @PostConstruct
+    void initCache() {
+        if (cacheEnabled) {
+            responseCache = new ProxyResponseCache(objectMapper, cacheMaxSize,
+                    service -> setting(service, "cache-ttl-seconds", Long.class, cacheTtlSeconds), meterRegistry);
+            if (changeNotifier != null) {
+                changeNotifier.onProxyInvalidation(responseCache);
+            }
+        }
     }
 
     /**
      * Execute a GraphQL query/mutation against a target service.
      * Auth headers are forwarded to let the target service enforce access control.
      */
-    @SuppressWarnings("unchecked")
     public Map<String, Object> executeGraphQL(
             String service, String query, Map<String, Object> variables,
             String authHeader, String companyId) {
+        return executeGraphQL(service, query, variables, authHeader, companyId, true);
+    }
+
+    /**
+     * Execute a GraphQL query/mutation, optionally bypassing the response cache. Queries are
+     * answered from the cache when it is enabled; mutations invalidate the cached queries of
+     * the same service and company.
+     */
+    public Map<String, Object> executeGraphQL(
+            String service, String query, Map<String, Object> variables,
+            String authHeader, String companyId, boolean useCache) {
+
+        String serviceKey = validateService(service);
+        ProxyResponseCache cache = responseCache;
+        // Only parsed when the answer is cached or invalidates cached answers
+        boolean read = cache == null || isReadQuery(query);
+        ProxyResponseCache.Key cacheKey = cache != null && read
+                ? cache.key(serviceKey, companyId, query, variables, authHeader) : null;
+        // A bypassing request skips the lookup but still refreshes the entry
+        if (cacheKey != null && useCache) {
+            Map<String, Object> cached = cache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        try {
+            Map<String, Object> result = send(serviceKey, graphQLBody(query, variables), authHeader, companyId);
+            if (cacheKey != null) {
+                cache.put(cacheKey, result);
+            }
+            return result;
+        } finally {
+            if (cache != null && !read) {
+                // Even a failed mutation may have changed data downstream
+                invalidate(cache, serviceKey, companyId);
+            }
+        }
+    }
+
+    /**
+     * Execute a query registered for the company under {@code queryId}. Only the name and the
+     * variables travel from the caller; the document comes from the registry. When APQ is
+     * enabled for the target service, the document is sent by its SHA-256 hash and only
+     * included again when the target asks for it. Full documents are sent from then on only
+     * if the target answers that it does not support persisted queries.
+     */
+    public Map<String, Object> executePersistedQuery(
+            String queryId, Map<String, Object> variables,
+            String authHeader, String companyId, boolean useCache) {
+
+        if (persistedQueries == null) {
+            throw new IllegalStateException("Persisted queries are not available");
+        }
+        PersistedQuery registered = persistedQueries.resolve(parseCompanyId(companyId), queryId);
+        String serviceKey = validateService(registered.getService());
+        ProxyResponseCache cache = responseCache;
+        ProxyResponseCache.Key cacheKey = cache != null
+                ? cache.persistedKey(serviceKey, companyId, registered.getSha256(), variables, authHeader) : null;
+        if (cacheKey != null && useCache) {
+            Map<String, Object> cached = cache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Map<String, Object> result = sendPersisted(serviceKey, registered, variables, authHeader, companyId);
+        if (cacheKey != null) {
+            cache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    private Map<String, Object> sendPersisted(String serviceKey, PersistedQuery registered,
+                                              Map<String, Object> variables, String authHeader, String companyId) {
+        Target target = target(serviceKey);
+        if (!target.apq().get()) {
+            return send(serviceKey, graphQLBody(registered.getDocument(), variables), authHeader, companyId);
+        }
+
+        Map<String, Object> extensions = Map.of("persistedQuery",
+                Map.of("version", 1, "sha256Hash", registered.getSha256()));
+        Map<String, Object> hashOnly = new HashMap<>();
+        hashOnly.put("extensions", extensions);
+        if (variables != null && !variables.isEmpty()) {
+            hashOnly.put("variables", variables);
+        }
+        // Transport failures and breaker rejections propagate; only an explicit answer turns APQ off
+        Map<String, Object> response = send(serviceKey, hashOnly, authHeader, companyId, true);
+        String apqError = apqError(response);
+        if (apqError == null) {
+            return response;
+        }
+
+        Map<String, Object> full = graphQLBody(registered.getDocument(), variables);
+        if (APQ_NOT_SUPPORTED.equals(apqError)) {
+            log.info("Service {} does not support persisted queries; sending full documents", serviceKey);
+            target.apq().set(false);
+        } else {
+            // Registers the hash with the target for the next call
+            full.put("extensions", extensions);
+        }
+        return send(serviceKey, full, authHeader, companyId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String apqError(Map<String, Object> response) {
+        if (!(response.get("errors") instanceof List<?> errors)) {
+            return null;
+        }
+        for (Object item : errors) {
+            if (!(item instanceof Map<?, ?> error)) {
+                continue;
+            }
+            Object code = error.get("extensions") instanceof Map<?, ?> ext ? ((Map<String, Object>) ext).get("code") : null;
+            Object message = error.get("message");
+            if ("PERSISTED_QUERY_NOT_FOUND".equals(code) || "PersistedQueryNotFound".equals(message)) {
+                return APQ_NOT_FOUND;
+            }
+            if ("PERSISTED_QUERY_NOT_SUPPORTED".equals(code) || "PersistedQueryNotSupported".equals(message)) {
+                return APQ_NOT_SUPPORTED;
+            }
+        }
+        return null;
+    }
+
+    private static UUID parseCompanyId(String companyId) {
+        if (companyId == null || companyId.isBlank()) {
+            throw new IllegalArgumentException("A company id is required for persisted queries");
+        }
+        try {
+            return UUID.fromString(companyId.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid company id: '" + companyId + "'");
+        }
+    }
+
+    private Map<String, Object> send(String serviceKey, Map<String, Object> body, String authHeader, String companyId) {
+        return send(serviceKey, body, authHeader, companyId, false);
+    }
+
+    /**
+     * @param requestErrors return the GraphQL errors of an HTTP 400 answer instead of failing,
+     *                      e.g. to learn why a persisted query was refused
+     */
+    private Map<String, Object> send(String serviceKey, Map<String, Object> body, String authHeader, String companyId,
+                                     boolean requestErrors) {
+        Target target = target(serviceKey);
+        long start = System.nanoTime();
+        String outcome = "error";
+        boolean acquired = false;
+        try {
+            HttpRequest request = buildRequest(serviceKey, target, body, authHeader, companyId);
+            admit(serviceKey, target);
+            acquired = true;
+            HttpResponse<byte[]> response = target.client().send(request, HttpResponse.BodyHandlers.ofByteArray());
+            outcome = String.valueOf(response.statusCode());
+            if (requestErrors && response.statusCode() == 400) {
+                Map<String, Object> errors = parseRequestErrors(response);
+                if (errors != null) {
+                    return errors;
+                }
+            }
+            return parseResponse(response);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (e instanceof RejectedException rejected) {
+                outcome = rejected.reason;
+            }
+            throw proxyFailure(serviceKey, e);
+        } finally {
+            if (acquired) {
+                release(target, outcome, start);
+            }
+            recordRequest(serviceKey, outcome, start);
+        }
+    }
+
+    /**
+     * Send a GraphQL request and hand the downstream body back unparsed, for pass-through
+     * streaming to the caller. The response is only checked for a success status and a JSON
+     * content type; its bytes, including any Content-Encoding negotiated through
+     * {@code acceptEncoding}, are left untouched. The caller must close the returned response,
+     * which releases the connection slot. Responses are never cached in this mode.
+     */
+    public StreamedResponse streamGraphQL(
+            String service, String query, Map<String, Object> variables,
+            String authHeader, String companyId, String acceptEncoding) {
+
+        String serviceKey = validateService(service);
+        Target target = target(serviceKey);
+        long start = System.nanoTime();
+        String outcome = "error";
+        boolean acquired = false;
+        boolean handedOut = false;
+        InputStream body = null;
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(
+                    buildRequest(serviceKey, target, graphQLBody(query, variables), authHeader, companyId), (name, value) -> true);
+            if (acceptEncoding != null && !acceptEncoding.isBlank()) {
+                request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+            }
+            admit(serviceKey, target);
+            acquired = true;
+            HttpResponse<InputStream> response = target.client().send(
+                    request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            body = response.body();
+            outcome = String.valueOf(response.statusCode());
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException("HTTP " + response.statusCode());
+            }
+            String contentType = response.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElse("");
+            if (!contentType.toLowerCase().contains("json")) {
+                throw new IllegalStateException("Unexpected content type '" + contentType + "'");
+            }
+
+            String finalOutcome = outcome;
+            // The breaker judges the target by its time to respond, not by how fast the client reads
+            target.breaker().onResult(false, System.nanoTime() - start);
+            StreamedResponse streamed = new StreamedResponse(contentType,
+                    response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null),
+                    response.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1),
+                    body, () -> {
+                        target.permits().release();
+                        recordRequest(serviceKey, finalOutcome, start);
+                    });
+            handedOut = true;
+            return streamed;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (e instanceof RejectedException rejected) {
+                outcome = rejected.reason;
+            }
+            throw proxyFailure(serviceKey, e);
+        } finally {
+            if (!handedOut) {
+                closeQuietly(body);
+                if (acquired) {
+                    release(target, outcome, start);
+                }
+                recordRequest(serviceKey, outcome, start);
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream body) {
+        if (body == null) {
+            return;
+        }
+        try {
+            body.close();
+        } catch (IOException ignored) {
+            // The connection is discarded anyway
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #executeGraphQL}: the request is sent asynchronously and
+     * the returned future completes on the HTTP client's threads. Validation errors are thrown
+     * directly; request failures complete the future exceptionally with the same messages.
+     * Cancelling the returned future aborts the request and frees its connection slot.
+     */
+    public CompletableFuture<Map<String, Object>> executeGraphQLAsync(
+            String service, String query, Map<String, Object> variables,
+            String authHeader, String companyId) {
+
+        String serviceKey = validateService(service);
+        ProxyResponseCache cache = responseCache;
+        // Only parsed when the answer is cached or invalidates cached answers
+        boolean read = cache == null || isReadQuery(query);
+        ProxyResponseCache.Key cacheKey = cache != null && read
+                ? cache.key(serviceKey, companyId, query, variables, authHeader) : null;
+        if (cacheKey != null) {
+            Map<String, Object> cached = cache.get(cacheKey);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        Target target = target(serviceKey);
+        long start = System.nanoTime();
+        HttpRequest request;
+        try {
+            request = buildRequest(serviceKey, target, graphQLBody(query, variables), authHeader, companyId);
+            admit(serviceKey, target);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            recordRequest(serviceKey, e instanceof RejectedException rejected ? rejected.reason : "error", start);
+            return CompletableFuture.failedFuture(proxyFailure(serviceKey, e));
+        }
+
+        CompletableFuture<HttpResponse<byte[]>> exchange =
+                target.client().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        // Settle the slot and the breaker on the exchange itself: stages derived from it do not
+        // run when the caller cancels the future returned below. The HTTP client may abort the
+        // exchange on its own when that future is cancelled, failing it with a wrapped
+        // CancellationException
+        CompletableFuture<Map<String, Object>> result = exchange
+                .whenComplete((response, failure) -> {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                            ? failure.getCause() : failure;
+                    if (cause instanceof CancellationException) {
+                        // Abandoned by the caller, which says nothing about the service's health
+                        target.permits().release();
+                        target.breaker().release();
+                        recordRequest(serviceKey, "cancelled", start);
+                    } else {
+                        String outcome = response != null ? String.valueOf(response.statusCode()) : "error";
+                        release(target, outcome, start);
+                        recordRequest(serviceKey, outcome, start);
+                    }
+                    if (cache != null && !read) {
+                        // As in executeGraphQL: once the mutation is done, even if it failed
+                        invalidate(cache, serviceKey, companyId);
+                    }
+                })
+                .handle((response, failure) -> {
+                    if (failure != null) {
+                        throw proxyFailure(serviceKey, failure instanceof CompletionException && failure.getCause() != null
+                                ? failure.getCause() : failure);
+                    }
+                    try {
+                        Map<String, Object> parsed = parseResponse(response);
+                        if (cacheKey != null) {
+                            cache.put(cacheKey, parsed);
+                        }
+                        return parsed;
+                    } catch (Exception e) {
+                        throw proxyFailure(serviceKey, e);
+                    }
+                });
+        // Cancelling the answer aborts the request, which in turn hands the slot back
+        result.whenComplete((parsed, failure) -> {
+            if (failure instanceof CancellationException) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Drop the company's cached answers of a service here and on the other replicas.
+     */
+    private void invalidate(ProxyResponseCache cache, String serviceKey, String companyId) {
+        cache.invalidate(serviceKey, companyId);
+        if (changeNotifier != null) {
+            changeNotifier.publishProxyInvalidation(serviceKey, companyId);
+        }
+    }
+
+    /**
+     * Whether every operation in the document is a query. Requests carry no operation name, so
+     * a document mixing queries and mutations counts as a write, and so does one that does not
+     * parse (the target reports the error).
+     */
+    static boolean isReadQuery(String query) {
+        if (query == null || query.isBlank()) {
+            return false;
+        }
+        Document document;
+        try {
+            document = Parser.parse(query);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        List<OperationDefinition> operations = document.getDefinitionsOfType(OperationDefinition.class);
+        return !operations.isEmpty() && operations.stream()
+                .allMatch(operation -> operation.getOperation() == OperationDefinition.Operation.QUERY);
+    }
+
+    public static boolean isKnownService(String service) {
+        return service != null && ALLOWED_SERVICES.contains(service.toLowerCase().trim());
+    }
 
+    private String validateService(String service) {
         String serviceKey = service.toLowerCase().trim();
         if (!ALLOWED_SERVICES.contains(serviceKey)) {
             throw new IllegalArgumentException(
                     "Unknown service: '" + service + "'. Available: " + ALLOWED_SERVICES);
         }
+        return serviceKey;
+    }
 
-        String url = getServiceUrl(serviceKey) + "/graphql";
-
+    private static Map<String, Object> graphQLBody(String query, Map<String, Object> variables) {
         // Build GraphQL request body
         Map<String, Object> body = new HashMap<>();
         body.put("query", query);
         if (variables != null && !variables.isEmpty()) {
             body.put("variables", variables);
         }
+        return body;
+    }
 
-        // Build headers — forward auth
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    private HttpRequest buildRequest(String serviceKey, Target target, Map<String, Object> body,
+                                     String authHeader, String companyId) throws JsonProcessingException {
+        String url = getServiceUrl(serviceKey) + "/graphql";
+        String query = (String) body.get("query");
+
+        log.debug("Proxying GraphQL to {} ({}): {}", serviceKey, url, query == null ? "<persisted>"
+                : query.length() > 100 ? query.substring(0, 100) + "..." : query);
+
+        // Build request — forward auth
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(target.readTimeout())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
         if (authHeader != null && !authHeader.isBlank()) {
-            headers.set("Authorization", authHeader);
+            request.header(HttpHeaders.AUTHORIZATION, authHeader);
         }
         if (companyId != null && !companyId.isBlank()) {
-            headers.set("X-Company-Id", companyId);
+            request.header("X-Company-Id", companyId);
         }
+        return request.build();
+    }
 
-        log.debug("Proxying GraphQL to {} ({}): {}", serviceKey, url,
-                query.length() > 100 ? query.substring(0, 100) + "..." : query);
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseResponse(HttpResponse<byte[]> response) throws IOException {
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException("HTTP " + response.statusCode());
+        }
+        if (response.body() != null && response.body().length > 0) {
+            return objectMapper.readValue(response.body(), Map.class);
+        }
+        return Collections.singletonMap("data", null);
+    }
 
+    /**
+     * The body of an error answer if it is a GraphQL response with errors, otherwise null.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseRequestErrors(HttpResponse<byte[]> response) {
+        if (response.body() == null || response.body().length == 0) {
+            return null;
+        }
         try {
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.POST, entity, String.class);
+            Map<String, Object> body = objectMapper.readValue(response.body(), Map.class);
+            return body.get("errors") instanceof List<?> ? body : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-            if (response.getBody() != null) {
-                return objectMapper.readValue(response.getBody(), Map.class);
+    /**
+     * Pass the target's circuit breaker and take one of its connection slots (the bulkhead),
+     * or fail fast. Calls admitted here must be finished with {@link #release}.
+     */
+    private void admit(String serviceKey, Target target) throws InterruptedException {
+        if (!target.breaker().tryAcquire()) {
+            throw reject(serviceKey, REJECTED_CIRCUIT_OPEN, "circuit open, failing fast");
+        }
+        boolean acquired = false;
+        try {
+            acquired = target.permits().tryAcquire(target.acquireTimeoutMs(), TimeUnit.MILLISECONDS);
+        } finally {
+            if (!acquired) {
+                target.breaker().release();
             }
-            return Map.of("data", null);
-        } catch (Exception e) {
+        }
+        if (!acquired) {
+            throw reject(serviceKey, REJECTED_SATURATED, "too many concurrent requests");
+        }
+    }
+
+    private RejectedException reject(String serviceKey, String reason, String message) {
+        Counter.builder("erp.proxy.rejected")
+                .description("Requests to an ERP service rejected without being sent")
+                .tag("service", serviceKey)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        return new RejectedException(reason, message);
+    }
+
+    private static void release(Target target, String outcome, long startNanos) {
+        target.permits().release();
+        // 4xx answers are the caller's problem, not a sign of an unhealthy service
+        boolean failed = !(outcome.startsWith("2") || outcome.startsWith("4"));
+        target.breaker().onResult(failed, System.nanoTime() - startNanos);
+    }
+
+    private RuntimeException proxyFailure(String serviceKey, Throwable e) {
+        if (e instanceof RejectedException) {
+            log.debug("GraphQL proxy request to {} rejected: {}", serviceKey, e.getMessage());
+        } else {
             log.error("GraphQL proxy request to {} failed: {}", serviceKey, e.getMessage());
-            throw new RuntimeException("Failed to query " + serviceKey + ": " + e.getMessage(), e);
         }
+        return new RuntimeException("Failed to query " + serviceKey + ": " + e.getMessage(), e);
+    }
+
+    private void recordRequest(String serviceKey, String outcome, long startNanos) {
+        Timer.builder("erp.proxy.request")
+                .description("GraphQL requests proxied to ERP services")
+                .tag("service", serviceKey)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Target target(String service) {
+        return targets.computeIfAbsent(service, this::createTarget);
+    }
+
+    private Target createTarget(String service) {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(setting(service, "http-version", String.class, httpVersion)))
+                .connectTimeout(Duration.ofMillis(setting(service, "connect-timeout-ms", Long.class, connectTimeoutMs)))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        int concurrency = setting(service, "max-concurrency", Integer.class, maxConcurrency);
+        Semaphore permits = new Semaphore(concurrency, true);
+        Gauge.builder("erp.proxy.inflight", permits, p -> concurrency - p.availablePermits())
+                .description("Requests in flight to an ERP service")
+                .tag("service", service)
+                .register(meterRegistry);
+        Gauge.builder("erp.proxy.waiting", permits, Semaphore::getQueueLength)
+                .description("Requests waiting for a free slot to an ERP service")
+                .tag("service", service)
+                .register(meterRegistry);
+        ServiceCircuitBreaker breaker = new ServiceCircuitBreaker(service,
+                setting(service, "circuit.window-size", Integer.class, circuitWindowSize),
+                setting(service, "circuit.minimum-calls", Integer.class, circuitMinimumCalls),
+                setting(service, "circuit.failure-rate-threshold", Integer.class, circuitFailureRateThreshold),
+                setting(service, "circuit.slow-call-ms", Long.class, circuitSlowCallMs),
+                setting(service, "circuit.open-ms", Long.class, circuitOpenMs),
+                setting(service, "circuit.half-open-calls", Integer.class, circuitHalfOpenCalls));
+        Gauge.builder("erp.proxy.circuit.state", breaker, b -> b.state().ordinal())
+                .description("Circuit breaker state of an ERP service (0 closed, 1 half-open, 2 open)")
+                .tag("service", service)
+                .register(meterRegistry);
+        return new Target(client, permits,
+                Duration.ofMillis(setting(service, "read-timeout-ms", Long.class, readTimeoutMs)),
+                setting(service, "acquire-timeout-ms", Long.class, acquireTimeoutMs),
+                new AtomicBoolean(setting(service, "apq", Boolean.class, apqEnabled)),
+                breaker);
+    }
+
+    private <T> T setting(String service, String key, Class<T> type, T defaultValue) {
+        if (environment == null) {
+            return defaultValue;
+        }
+        return environment.getProperty("erp.proxy.services." + service + "." + key, type, defaultValue);
+    }
+
+    @PreDestroy
+    void closeClients() {
+        targets.values().forEach(target -> target.client().close());
+        targets.clear();
     }
 
     private String getServiceUrl(String service) {
@@ -116,24 +751,44 @@ public class DataProxyService {
      * Return metadata about available services for documentation/discovery.
      */
     public Map<String, Object> getAvailableServices() {
-        List<Map<String, String>> services = List.of(
-                Map.of("name", "gateway", "description", "Apollo Gateway — federated queries across all services"),
-                Map.of("name", "masterdata", "description", "Customers, suppliers, employees, currencies, payment terms, units of measure"),
-                Map.of("name", "shop", "description", "Products, categories, orders, inventory"),
-                Map.of("name", "accounting", "description", "Invoices, payments, journal entries, accounts, reports"),
-                Map.of("name", "user", "description", "Users, authentication, roles, permissions"),
-                Map.of("name", "company", "description", "Companies, organizational structure, settings")
+        List<Map<String, Object>> services = List.of(
+                describe("gateway", "Apollo Gateway — federated queries across all services"),
+                describe("masterdata", "Customers, suppliers, employees, currencies, payment terms, units of measure"),
+                describe("shop", "Products, categories, orders, inventory"),
+                describe("accounting", "Invoices, payments, journal entries, accounts, reports"),
+                describe("user", "Users, authentication, roles, permissions"),
+                describe("company", "Companies, organizational structure, settings")
         );
 
         return Map.of(
                 "services", services,
                 "usage", Map.of(
                         "query", "POST /api/data/query with { service, query, variables }",
+                        "persisted", "POST /api/data/query with { queryId, variables } and X-Company-Id",
                         "mutate", "POST /api/data/mutate with { service, query, variables }"
                 )
         );
     }
 
+    private Map<String, Object> describe(String name, String description) {
+        Target target = targets.get(name);
+        Map<String, Object> service = new LinkedHashMap<>();
+        service.put("name", name);
+        service.put("description", description);
+        service.put("circuit", target != null ? target.breaker().state().name() : ServiceCircuitBreaker.State.CLOSED.name());
+        service.put("inFlight", target != null
+                ? setting(name, "max-concurrency", Integer.class, maxConcurrency) - target.permits().availablePermits() : 0);
+        service.put("rejected", Map.of(
+                REJECTED_CIRCUIT_OPEN, rejectedCount(name, REJECTED_CIRCUIT_OPEN),
+                REJECTED_SATURATED, rejectedCount(name, REJECTED_SATURATED)));
+        return service;
+    }
+
+    private long rejectedCount(String service, String reason) {
+        Counter counter = meterRegistry.find("erp.proxy.rejected").tags("service", service, "reason", reason).counter();
+        return counter != null ? (long) counter.count() : 0;
+    }
+
     /**
      * Forward a GraphQL query — for internal use by GraalJSEngine.
      * Accepts raw token (without "Bearer " prefix) and companyId.
@@ -147,6 +802,106 @@ public class DataProxyService {
         return executeGraphQL(service, query, variables, authHeader, companyId);
     }
 
+    /**
+     * Forward a GraphQL query without blocking — for internal use by GraalJSEngine (ERP.queryAsync).
+     */
+    public CompletableFuture<Map<String, Object>> forwardGraphQLQueryAsync(
+            String service, String query, Map<String, Object> variables,
+            String authToken, String companyId) {
+        String authHeader = authToken != null && !authToken.isBlank()
+                ? (authToken.startsWith("Bearer ") ? authToken : "Bearer " + authToken)
+                : null;
+        return executeGraphQLAsync(service, query, variables, authHeader, companyId);
+    }
+
+    /**
+     * Execute a registered query — for internal use by GraalJSEngine.
+     */
+    public Map<String, Object> forwardPersistedQuery(
+            String queryId, Map<String, Object> variables, String authToken, String companyId) {
+        String authHeader = authToken != null && !authToken.isBlank()
+                ? (authToken.startsWith("Bearer ") ? authToken : "Bearer " + authToken)
+                : null;
+        return executePersistedQuery(queryId, variables, authHeader, companyId, true);
+    }
+
+    /**
+     * Forward several GraphQL queries to one service — for internal use by GraalJSEngine.
+     * Identical query+variables pairs are sent once, and mergeable queries are combined into
+     * aliased documents of up to {@code erp.proxy.max-batch-size} queries each, so N queries
+     * cost one round trip. Each query gets its own GraphQL response (data/errors), in order.
+     */
+    public List<Map<String, Object>> forwardGraphQLBatch(
+            String service, List<BatchQuery> queries, String authToken, String companyId) {
+        List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(queries.size(), null));
+        Map<BatchQuery, List<Integer>> unique = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            unique.computeIfAbsent(queries.get(i), key -> new ArrayList<>()).add(i);
+        }
+
+        List<BatchQuery> mergeable = new ArrayList<>();
+        List<OperationDefinition> operations = new ArrayList<>();
+        for (BatchQuery query : unique.keySet()) {
+            OperationDefinition operation = GraphQLQueryMerger.mergeableOperation(query.query());
+            if (operation != null) {
+                mergeable.add(query);
+                operations.add(operation);
+            } else {
+                assign(results, unique.get(query), forwardSingle(service, query, authToken, companyId));
+            }
+        }
+
+        int chunkSize = Math.max(1, maxBatchSize);
+        for (int from = 0; from < mergeable.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, mergeable.size());
+            List<BatchQuery> chunk = mergeable.subList(from, to);
+            List<Map<String, Object>> responses = chunk.size() > 1
+                    ? forwardMerged(service, chunk, operations.subList(from, to), authToken, companyId)
+                    : null;
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<String, Object> response = responses != null
+                        ? responses.get(i)
+                        : forwardSingle(service, chunk.get(i), authToken, companyId);
+                assign(results, unique.get(chunk.get(i)), response);
+            }
+        }
+        return results;
+    }
+
+    private List<Map<String, Object>> forwardMerged(String service, List<BatchQuery> queries,
+                                                    List<OperationDefinition> operations,
+                                                    String authToken, String companyId) {
+        GraphQLQueryMerger.Merged merged = GraphQLQueryMerger.merge(
+                operations, queries.stream().map(BatchQuery::variables).toList());
+        try {
+            Map<String, Object> response = forwardGraphQLQuery(
+                    service, merged.query(), merged.variables(), authToken, companyId);
+            // null means the merged document was rejected as a whole; fall back to single queries
+            return GraphQLQueryMerger.split(response, queries.size());
+        } catch (RuntimeException e) {
+            return Collections.nCopies(queries.size(), errorResponse(e));
+        }
+    }
+
+    private Map<String, Object> forwardSingle(String service, BatchQuery query, String authToken, String companyId) {
+        try {
+            return forwardGraphQLQuery(service, query.query(), query.variables(), authToken, companyId);
+        } catch (RuntimeException e) {
+            return errorResponse(e);
+        }
+    }
+
+    private static void assign(List<Map<String, Object>> results, List<Integer> indexes, Map<String, Object> response) {
+        for (int index : indexes) {
+            results.set(index, response);
+        }
+    }
+
+    private static Map<String, Object> errorResponse(RuntimeException e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return Map.of("errors", List.of(Map.of("message", message)));
+    }
+
     /**
      * Forward a GraphQL mutation — for internal use by GraalJSEngine.
      * Validates that the query is actually a mutation.
@@ -162,4 +917,37 @@ public class DataProxyService {
                 : null;
         return executeGraphQL(service, mutation, variables, authHeader, companyId);
     }
+
+    /**
+     * An unparsed downstream response; closing it closes the body and frees the connection slot.
+     */
+    public record StreamedResponse(String contentType, String contentEncoding, long contentLength,
+                                   InputStream body, Runnable onClose) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            try {
+                body.close();
+            } finally {
+                onClose.run();
+            }
+        }
+    }
+
+    /**
+     * One query of a {@link #forwardGraphQLBatch} call.
+     */
+    public record BatchQuery(String query, Map<String, Object> variables) {}
+
+    private record Target(HttpClient client, Semaphore permits, Duration readTimeout, long acquireTimeoutMs,
+                          AtomicBoolean apq, ServiceCircuitBreaker breaker) {}
+
+    /** A request turned away by the circuit breaker or the bulkhead before it was sent. */
+    private static final class RejectedException extends IllegalStateException {
+        private final String reason;
+
+        RejectedException(String reason, String message) {
+            super(message);
+            this.reason = reason;
+        }
+    }
 }
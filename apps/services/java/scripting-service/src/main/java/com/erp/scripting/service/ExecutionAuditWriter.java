@@ -0,0 +1,292 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.ScriptExecution;
+import com.erp.scripting.entity.ScriptExecution.ExecutionStatus;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind audit log for script executions.
+ *
+ * <p>Each run produces a single completed {@link ScriptExecution} row instead of a RUNNING
+ * insert followed by an update. Depending on {@code scripting.audit.mode} the row is written:
+ * <ul>
+ *   <li>{@code sync} – immediately, in the caller's transaction</li>
+ *   <li>{@code async} – through a bounded queue drained by a background writer using JDBC batches</li>
+ *   <li>{@code sampled} – like async, but only a fraction of successful runs is kept;
+ *       failures, timeouts and cancellations are always recorded</li>
+ * </ul>
+ * Records that cannot be queued or written are counted in {@code scripting.audit.dropped}.
+ *
+ * <p>Payloads larger than {@code scripting.audit.max-payload-bytes} are replaced by a small
+ * JSON stub holding their size, SHA-256 and a short preview; smaller payloads are stored as
+ * is and compressed by Postgres (lz4 TOAST compression where available).
+ */
+@Slf4j
+@Component
+public class ExecutionAuditWriter {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO script_executions (id, script_id, company_id, executed_by, input_data, output_data,
+                                           status, error_message, execution_time_ms, started_at, completed_at, profile,
+                                           host_calls, host_wait_ms)
+            VALUES (?, ?, ?, ?, ?::jsonb, ?::jsonb, ?, ?, ?, ?, ?, ?::jsonb, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private BlockingQueue<AuditRecord> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    @Value("${scripting.audit.mode:async}")
+    private String mode;
+
+    @Value("${scripting.audit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${scripting.audit.batch-size:200}")
+    private int batchSize;
+
+    @Value("${scripting.audit.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${scripting.audit.sample-rate:0.1}")
+    private double sampleRate;
+
+    @Value("${scripting.audit.max-payload-bytes:65536}")
+    private int maxPayloadBytes;
+
+    @Value("${scripting.audit.payload-preview-chars:256}")
+    private int payloadPreviewChars;
+
+    public ExecutionAuditWriter(DataSource dataSource, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("scripting.audit.queued", queue, BlockingQueue::size)
+                .description("Execution audit records waiting to be written")
+                .register(meterRegistry);
+        if ("sync".equalsIgnoreCase(mode)) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, "script-audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Record a completed execution. Input and output are serialized on the caller's thread,
+     * so later changes to them cannot reach the audit log; only the insert is left to the
+     * background writer.
+     */
+    public void record(ScriptExecution execution, Object input, Object output) {
+        record(execution, input, output, null);
+    }
+
+    /**
+     * Record a completed execution together with its profile. Profiled runs are never
+     * sampled away.
+     */
+    public void record(ScriptExecution execution, Object input, Object output, Object profile) {
+        if ("sync".equalsIgnoreCase(mode)) {
+            write(List.of(snapshot(execution, input, output, profile)));
+            return;
+        }
+        if ("sampled".equalsIgnoreCase(mode) && profile == null && execution.getStatus() == ExecutionStatus.SUCCESS
+                && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        if (!queue.offer(snapshot(execution, input, output, profile))) {
+            dropped("queue_full", 1);
+        }
+    }
+
+    /**
+     * Record the executions of a batch run. They are written directly in JDBC batches on
+     * the caller's thread, so a large import neither floods the queue nor loses records to
+     * it. Sampled mode applies as for single runs.
+     *
+     * @param inputs  input per execution, same order and size as {@code executions}
+     * @param outputs output per execution, same order and size as {@code executions}
+     */
+    public void recordBatch(List<ScriptExecution> executions, List<?> inputs, List<?> outputs) {
+        boolean sampled = "sampled".equalsIgnoreCase(mode);
+        List<AuditRecord> batch = new ArrayList<>(Math.min(batchSize, executions.size()));
+        for (int i = 0; i < executions.size(); i++) {
+            ScriptExecution execution = executions.get(i);
+            if (sampled && execution.getStatus() == ExecutionStatus.SUCCESS
+                    && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                continue;
+            }
+            batch.add(snapshot(execution, inputs.get(i), outputs.get(i), null));
+            if (batch.size() == batchSize) {
+                writeBatch(batch);
+            }
+        }
+        writeBatch(batch);
+    }
+
+    private void writeBatch(List<AuditRecord> batch) {
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} script execution audit records", batch.size(), e);
+            dropped("write_failed", batch.size());
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void writeLoop() {
+        List<AuditRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditRecord first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    // Shutting down: flush what is left, then stop
+                    queue.drainTo(batch);
+                    writeBatch(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void write(List<AuditRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, records, records.size(), (ps, record) -> {
+            ScriptExecution e = record.execution();
+            ps.setObject(1, e.getId());
+            ps.setObject(2, e.getScriptId());
+            ps.setObject(3, e.getCompanyId());
+            ps.setObject(4, e.getExecutedBy());
+            ps.setString(5, record.input());
+            ps.setString(6, record.output());
+            ps.setString(7, e.getStatus().name());
+            ps.setString(8, e.getErrorMessage());
+            if (e.getExecutionTimeMs() != null) {
+                ps.setLong(9, e.getExecutionTimeMs());
+            } else {
+                ps.setNull(9, Types.BIGINT);
+            }
+            ps.setObject(10, e.getStartedAt());
+            ps.setObject(11, e.getCompletedAt());
+            ps.setString(12, record.profile());
+            ps.setObject(13, e.getHostCalls(), Types.INTEGER);
+            ps.setObject(14, e.getHostWaitMs(), Types.BIGINT);
+        });
+    }
+
+    /**
+     * Serialize the payloads of a record as they are now.
+     */
+    private AuditRecord snapshot(ScriptExecution execution, Object input, Object output, Object profile) {
+        return new AuditRecord(execution,
+                limitPayload(execution.getInputData() != null ? execution.getInputData() : serializeJson(input)),
+                limitPayload(execution.getOutputData() != null ? execution.getOutputData() : serializeJson(output)),
+                execution.getProfile() != null ? execution.getProfile() : serializeJson(profile));
+    }
+
+    private void dropped(String reason, int count) {
+        Counter.builder("scripting.audit.dropped")
+                .description("Execution audit records that were not persisted")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    private String serializeJson(Object data) {
+        if (data == null) return null;
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize data", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replace an oversized JSON payload by a stub that still identifies it.
+     */
+    private String limitPayload(String json) {
+        if (json == null || maxPayloadBytes <= 0 || json.length() * 3L <= maxPayloadBytes) {
+            return json;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxPayloadBytes) {
+            return json;
+        }
+        Map<String, Object> stub = new LinkedHashMap<>();
+        stub.put("_truncated", true);
+        stub.put("sizeBytes", bytes.length);
+        stub.put("sha256", sha256(bytes));
+        stub.put("preview", json.substring(0, Math.min(json.length(), payloadPreviewChars)));
+        return serializeJson(stub);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** A record ready to insert; payloads are JSON. */
+    private record AuditRecord(ScriptExecution execution, String input, String output, String profile) {}
+}
@@ -0,0 +1,168 @@
+package com.erp.scripting.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the monthly partitions of {@code script_executions}: creates partitions for the
+ * upcoming months ahead of time and drops partitions older than the retention period.
+ * Dropping a partition is instant and leaves no bloat, unlike deleting rows.
+ *
+ * <p>Rows that arrived while their month had no partition sit in the default partition.
+ * They are moved into the month's partition when it is created (Postgres refuses to create
+ * a partition whose range the default partition already holds rows for) and deleted there
+ * once they expire.
+ *
+ * <p>Runs at startup and on a cron schedule. A transaction-scoped advisory lock makes sure
+ * only one replica does the work at a time.
+ */
+@Slf4j
+@Component
+public class ExecutionRetentionJob {
+
+    private static final String TABLE = "script_executions";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final Pattern PARTITION_NAME = Pattern.compile(TABLE + "_p(\\d{6})");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final long LOCK_KEY = 0x5343524950544eL;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${scripting.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scripting.retention.months:12}")
+    private int retentionMonths;
+
+    @Value("${scripting.retention.premake-months:2}")
+    private int premakeMonths;
+
+    public ExecutionRetentionJob(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        run();
+    }
+
+    @Scheduled(cron = "${scripting.retention.cron:0 15 3 * * *}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Boolean locked = jdbcTemplate.queryForObject(
+                        "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY);
+                if (!Boolean.TRUE.equals(locked)) {
+                    log.debug("Execution retention already running on another replica");
+                    return;
+                }
+                maintain(YearMonth.now());
+            });
+        } catch (RuntimeException e) {
+            log.error("Execution partition maintenance failed", e);
+        }
+    }
+
+    private void maintain(YearMonth current) {
+        for (int i = 0; i <= premakeMonths; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                createPartition(month);
+            } catch (RuntimeException e) {
+                // The transaction is aborted; the remaining months are retried on the next run
+                failure("create");
+                throw e;
+            }
+        }
+
+        YearMonth oldestKept = current.minusMonths(retentionMonths);
+        try {
+            for (String partition : listPartitions()) {
+                Matcher matcher = PARTITION_NAME.matcher(partition);
+                if (!matcher.matches()) {
+                    continue;
+                }
+                YearMonth month = YearMonth.parse(matcher.group(1), SUFFIX);
+                if (month.isBefore(oldestKept)) {
+                    log.info("Dropping expired execution partition {}", partition);
+                    jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+                    jdbcTemplate.execute("DROP TABLE " + partition);
+                }
+            }
+            int purged = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION
+                    + " WHERE started_at < '" + oldestKept.atDay(1) + "'");
+            if (purged > 0) {
+                log.info("Deleted {} expired executions from {}", purged, DEFAULT_PARTITION);
+            }
+        } catch (RuntimeException e) {
+            failure("drop");
+            throw e;
+        }
+    }
+
+    private void createPartition(YearMonth month) {
+        String partition = TABLE + "_p" + month.format(SUFFIX);
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition))) {
+            return;
+        }
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        String range = "started_at >= '" + from + "' AND started_at < '" + to + "'";
+        String bounds = "FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        Boolean stranded = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE " + range + ")", Boolean.class);
+        if (!Boolean.TRUE.equals(stranded)) {
+            jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + TABLE + " " + bounds);
+            return;
+        }
+        // Build the partition detached, move the month's rows out of the default partition, then attach
+        jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE " + TABLE + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE " + range
+                + " RETURNING *) INSERT INTO " + partition + " SELECT * FROM moved");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + partition + " " + bounds);
+        log.info("Created execution partition {} with {} rows from {}", partition, moved, DEFAULT_PARTITION);
+    }
+
+    private void failure(String step) {
+        Counter.builder("scripting.retention.failed")
+                .description("Execution partition maintenance steps that failed")
+                .tag("step", step)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private List<String> listPartitions() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = ?
+                """, String.class, TABLE);
+    }
+}
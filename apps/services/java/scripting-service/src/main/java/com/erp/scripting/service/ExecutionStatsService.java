@@ -0,0 +1,347 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.ScriptExecution.ExecutionStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling per-script execution statistics.
+ *
+ * <p>Executions are folded into small per-script aggregates as they complete: counts per
+ * status, the summed time of successful runs, and a fixed-bucket latency histogram. Pending
+ * deltas are merged into the {@code script_stats} table periodically, so every replica
+ * contributes to the same totals and reading stats never touches {@code script_executions}.
+ * Per-minute rates are kept in memory only and therefore reflect this replica.
+ */
+@Slf4j
+@Component
+public class ExecutionStatsService {
+
+    /**
+     * Upper bounds (inclusive, in ms) of the latency histogram buckets; the last bucket is
+     * unbounded. Changing them invalidates the persisted histograms.
+     */
+    static final long[] BUCKET_BOUNDS_MS = {
+            1, 2, 3, 5, 7, 10, 15, 20, 30, 50, 75, 100, 150, 200, 300, 500, 750,
+            1_000, 1_500, 2_000, 3_000, 5_000, 7_500, 10_000, 15_000, 30_000, 60_000
+    };
+
+    private static final int RATE_SLOTS = 60;
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO script_stats AS s (script_id, success_count, failed_count, timeout_count,
+                                           cancelled_count, success_time_ms, histogram, updated_at)
+            SELECT ?, ?, ?, ?, ?, ?, ?, NOW()
+            WHERE EXISTS (SELECT 1 FROM scripts WHERE id = ?)
+            ON CONFLICT (script_id) DO UPDATE SET
+                success_count = s.success_count + EXCLUDED.success_count,
+                failed_count = s.failed_count + EXCLUDED.failed_count,
+                timeout_count = s.timeout_count + EXCLUDED.timeout_count,
+                cancelled_count = s.cancelled_count + EXCLUDED.cancelled_count,
+                success_time_ms = s.success_time_ms + EXCLUDED.success_time_ms,
+                histogram = ARRAY(
+                    SELECT COALESCE(a, 0) + COALESCE(b, 0)
+                    FROM unnest(s.histogram, EXCLUDED.histogram) AS t(a, b)),
+                updated_at = NOW()
+            """;
+
+    private static final String SELECT_SQL = """
+            SELECT success_count, failed_count, timeout_count, cancelled_count, success_time_ms, histogram
+            FROM script_stats WHERE script_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Deltas not yet merged into script_stats; replaced atomically per script on flush. */
+    private final Map<UUID, Aggregate> pending = new ConcurrentHashMap<>();
+    private final Map<UUID, RateWindow> rates = new ConcurrentHashMap<>();
+    private Cache<UUID, Aggregate> persisted;
+    private ScheduledExecutorService flusher;
+
+    @Value("${scripting.stats.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    @Value("${scripting.stats.read-cache-seconds:30}")
+    private long readCacheSeconds;
+
+    @Value("${scripting.stats.rate-window-minutes:5}")
+    private int rateWindowMinutes;
+
+    public ExecutionStatsService(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @PostConstruct
+    void start() {
+        rateWindowMinutes = Math.max(1, Math.min(rateWindowMinutes, RATE_SLOTS));
+        persisted = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(readCacheSeconds))
+                .build();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "script-stats-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * Fold a completed execution into the script's aggregates.
+     */
+    public void record(UUID scriptId, ExecutionStatus status, long executionTimeMs) {
+        if (scriptId == null || status == null || status == ExecutionStatus.RUNNING) {
+            return;
+        }
+        pending.compute(scriptId, (id, aggregate) -> {
+            Aggregate result = aggregate != null ? aggregate : new Aggregate();
+            result.add(status, executionTimeMs);
+            return result;
+        });
+        rates.computeIfAbsent(scriptId, id -> new RateWindow()).increment(currentMinute());
+    }
+
+    /**
+     * Current stats for a script: the persisted totals (cached briefly) plus this replica's
+     * unflushed deltas. Cost is independent of the execution history size.
+     */
+    public ScriptService.ScriptStats getStats(UUID scriptId) {
+        Aggregate total = new Aggregate();
+        total.merge(persisted.get(scriptId, this::load));
+        pending.computeIfPresent(scriptId, (id, aggregate) -> {
+            total.merge(aggregate);
+            return aggregate;
+        });
+
+        RateWindow window = rates.get(scriptId);
+        long recent = window != null ? window.sum(currentMinute(), rateWindowMinutes) : 0;
+        return new ScriptService.ScriptStats(
+                total.success,
+                total.failed,
+                total.timeout,
+                total.success > 0 ? (double) total.successTimeMs / total.success : 0.0,
+                total.percentile(0.50),
+                total.percentile(0.95),
+                total.percentile(0.99),
+                total.cancelled,
+                recent,
+                (double) recent / rateWindowMinutes,
+                rateWindowMinutes
+        );
+    }
+
+    /**
+     * Forget a deleted script's in-memory state; its table row goes with the script.
+     */
+    public void evict(UUID scriptId) {
+        pending.remove(scriptId);
+        rates.remove(scriptId);
+        persisted.invalidate(scriptId);
+    }
+
+    void flush() {
+        List<UUID> ids = new ArrayList<>(pending.keySet());
+        for (UUID id : ids) {
+            Aggregate delta = pending.remove(id);
+            if (delta == null) {
+                continue;
+            }
+            try {
+                jdbcTemplate.update(connection -> {
+                    var ps = connection.prepareStatement(UPSERT_SQL);
+                    ps.setObject(1, id);
+                    ps.setLong(2, delta.success);
+                    ps.setLong(3, delta.failed);
+                    ps.setLong(4, delta.timeout);
+                    ps.setLong(5, delta.cancelled);
+                    ps.setLong(6, delta.successTimeMs);
+                    ps.setArray(7, connection.createArrayOf("bigint", delta.histogramAsObjects()));
+                    ps.setObject(8, id);
+                    return ps;
+                });
+                persisted.invalidate(id);
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush stats for script {}, retrying later: {}", id, e.getMessage());
+                pending.merge(id, delta, (current, failed) -> {
+                    current.merge(failed);
+                    return current;
+                });
+            }
+        }
+        long oldest = currentMinute() - RATE_SLOTS;
+        rates.values().removeIf(window -> window.lastMinute() < oldest);
+    }
+
+    private Aggregate load(UUID scriptId) {
+        List<Aggregate> rows = jdbcTemplate.query(SELECT_SQL, this::mapRow, scriptId);
+        return rows.isEmpty() ? new Aggregate() : rows.get(0);
+    }
+
+    private Aggregate mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Aggregate aggregate = new Aggregate();
+        aggregate.success = rs.getLong("success_count");
+        aggregate.failed = rs.getLong("failed_count");
+        aggregate.timeout = rs.getLong("timeout_count");
+        aggregate.cancelled = rs.getLong("cancelled_count");
+        aggregate.successTimeMs = rs.getLong("success_time_ms");
+        Array histogram = rs.getArray("histogram");
+        if (histogram != null) {
+            Object[] buckets = (Object[]) histogram.getArray();
+            for (int i = 0; i < buckets.length && i < aggregate.histogram.length; i++) {
+                aggregate.histogram[i] = buckets[i] != null ? ((Number) buckets[i]).longValue() : 0;
+            }
+        }
+        return aggregate;
+    }
+
+    private static long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+
+    static int bucketOf(long executionTimeMs) {
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            if (executionTimeMs <= BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MS.length;
+    }
+
+    /**
+     * Mergeable counts for one script. Not thread-safe on its own: mutated only inside
+     * {@link ConcurrentHashMap#compute} or on private copies.
+     */
+    static final class Aggregate {
+        long success;
+        long failed;
+        long timeout;
+        long cancelled;
+        long successTimeMs;
+        final long[] histogram = new long[BUCKET_BOUNDS_MS.length + 1];
+
+        void add(ExecutionStatus status, long executionTimeMs) {
+            switch (status) {
+                case SUCCESS -> {
+                    success++;
+                    successTimeMs += executionTimeMs;
+                    histogram[bucketOf(executionTimeMs)]++;
+                }
+                case FAILED -> failed++;
+                case TIMEOUT -> timeout++;
+                case CANCELLED -> cancelled++;
+                default -> { }
+            }
+        }
+
+        void merge(Aggregate other) {
+            success += other.success;
+            failed += other.failed;
+            timeout += other.timeout;
+            cancelled += other.cancelled;
+            successTimeMs += other.successTimeMs;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        /**
+         * Estimate a percentile of successful execution time by linear interpolation within
+         * the matching bucket. The open-ended last bucket reports its lower bound.
+         */
+        double percentile(double quantile) {
+            long count = 0;
+            for (long bucket : histogram) {
+                count += bucket;
+            }
+            if (count == 0) {
+                return 0.0;
+            }
+            double rank = quantile * count;
+            long cumulative = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] == 0) {
+                    continue;
+                }
+                if (cumulative + histogram[i] >= rank) {
+                    double lower = i == 0 ? 0 : BUCKET_BOUNDS_MS[i - 1];
+                    if (i == BUCKET_BOUNDS_MS.length) {
+                        return lower;
+                    }
+                    double fraction = (rank - cumulative) / histogram[i];
+                    return lower + fraction * (BUCKET_BOUNDS_MS[i] - lower);
+                }
+                cumulative += histogram[i];
+            }
+            return BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1];
+        }
+
+        Long[] histogramAsObjects() {
+            Long[] result = new Long[histogram.length];
+            for (int i = 0; i < histogram.length; i++) {
+                result[i] = histogram[i];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Executions per minute over the last {@value #RATE_SLOTS} minutes, as a ring buffer.
+     */
+    static final class RateWindow {
+        private final long[] minutes = new long[RATE_SLOTS];
+        private final long[] counts = new long[RATE_SLOTS];
+
+        synchronized void increment(long minute) {
+            int slot = (int) (minute % RATE_SLOTS);
+            if (minutes[slot] != minute) {
+                minutes[slot] = minute;
+                counts[slot] = 0;
+            }
+            counts[slot]++;
+        }
+
+        synchronized long sum(long currentMinute, int windowMinutes) {
+            long total = 0;
+            for (int i = 0; i < RATE_SLOTS; i++) {
+                if (minutes[i] > currentMinute - windowMinutes && minutes[i] <= currentMinute) {
+                    total += counts[i];
+                }
+            }
+            return total;
+        }
+
+        synchronized long lastMinute() {
+            long last = 0;
+            for (long minute : minutes) {
+                last = Math.max(last, minute);
+            }
+            return last;
+        }
+    }
+}
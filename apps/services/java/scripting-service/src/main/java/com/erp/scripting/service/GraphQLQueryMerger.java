@@ -0,0 +1,192 @@
+package com.erp.scripting.service;
+
+import graphql.language.AstPrinter;
+import graphql.language.AstTransformer;
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.Node;
+import graphql.language.NodeVisitorStub;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.VariableDefinition;
+import graphql.language.VariableReference;
+import graphql.parser.Parser;
+import graphql.util.TraversalControl;
+import graphql.util.TraverserContext;
+import graphql.util.TreeTransformerUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges several GraphQL queries for the same service into one aliased document and splits
+ * the combined response back per query.
+ *
+ * <p>Query {@code i} gets the prefix {@code b<i>_} on its root field aliases and variable
+ * names, e.g. {@code customer(id: $id)} becomes {@code b0_customer: customer(id: $b0_id)}.
+ * Only single anonymous or named query operations whose root selections are plain fields
+ * can be merged; anything else (fragments, directives, mutations) is sent on its own.
+ */
+final class GraphQLQueryMerger {
+
+    private GraphQLQueryMerger() {
+    }
+
+    /**
+     * Parse a query and return its operation if it can take part in a merged document.
+     *
+     * @return the operation, or null if the query must be sent unchanged
+     */
+    static OperationDefinition mergeableOperation(String query) {
+        Document document;
+        try {
+            document = Parser.parse(query);
+        } catch (RuntimeException e) {
+            // Let the target service report the syntax error for this query alone
+            return null;
+        }
+        List<Definition> definitions = document.getDefinitions();
+        if (definitions.size() != 1 || !(definitions.get(0) instanceof OperationDefinition operation)) {
+            return null;
+        }
+        if (operation.getOperation() != OperationDefinition.Operation.QUERY || !operation.getDirectives().isEmpty()) {
+            return null;
+        }
+        for (Selection<?> selection : operation.getSelectionSet().getSelections()) {
+            if (!(selection instanceof Field field) || !field.getDirectives().isEmpty()) {
+                return null;
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * Build the merged document and variables for the given operations, in order.
+     */
+    static Merged merge(List<OperationDefinition> operations, List<Map<String, Object>> variables) {
+        List<VariableDefinition> variableDefinitions = new ArrayList<>();
+        List<Selection> selections = new ArrayList<>();
+        Map<String, Object> mergedVariables = new LinkedHashMap<>();
+
+        for (int i = 0; i < operations.size(); i++) {
+            String prefix = prefix(i);
+            OperationDefinition renamed = renameVariables(operations.get(i), prefix);
+            variableDefinitions.addAll(renamed.getVariableDefinitions());
+            for (Selection<?> selection : renamed.getSelectionSet().getSelections()) {
+                Field field = (Field) selection;
+                String alias = field.getAlias() != null ? field.getAlias() : field.getName();
+                selections.add(field.transform(builder -> builder.alias(prefix + alias)));
+            }
+            Map<String, Object> vars = variables.get(i);
+            if (vars != null) {
+                vars.forEach((name, value) -> mergedVariables.put(prefix + name, value));
+            }
+        }
+
+        OperationDefinition merged = OperationDefinition.newOperationDefinition()
+                .name("ScriptBatch")
+                .operation(OperationDefinition.Operation.QUERY)
+                .variableDefinitions(variableDefinitions)
+                .selectionSet(SelectionSet.newSelectionSet(selections).build())
+                .build();
+        return new Merged(AstPrinter.printAstCompact(merged), mergedVariables);
+    }
+
+    /**
+     * Split a merged response into one GraphQL response per original query.
+     *
+     * @return the per-query responses, or null if the response carries document-level errors
+     *         (e.g. validation failed) and the queries should be retried one by one
+     */
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> split(Map<String, Object> response, int count) {
+        Map<String, Object> data = response.get("data") instanceof Map<?, ?> map ? (Map<String, Object>) map : null;
+        List<Map<String, Object>> errors = response.get("errors") instanceof List<?> list
+                ? (List<Map<String, Object>>) list : List.of();
+
+        List<Map<String, Object>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new LinkedHashMap<>());
+        }
+        if (data != null) {
+            data.forEach((key, value) -> {
+                int index = indexOf(key);
+                if (index >= 0 && index < count) {
+                    dataOf(results.get(index)).put(key.substring(prefix(index).length()), value);
+                }
+            });
+        }
+        for (Map<String, Object> error : errors) {
+            List<Object> path = error.get("path") instanceof List<?> p ? (List<Object>) p : null;
+            int index = path != null && !path.isEmpty() ? indexOf(String.valueOf(path.get(0))) : -1;
+            if (index < 0 || index >= count) {
+                if (data == null) {
+                    return null;
+                }
+                // An error we cannot attribute applies to every query
+                for (Map<String, Object> result : results) {
+                    errorsOf(result).add(error);
+                }
+                continue;
+            }
+            Map<String, Object> rewritten = new LinkedHashMap<>(error);
+            List<Object> newPath = new ArrayList<>(path);
+            newPath.set(0, String.valueOf(path.get(0)).substring(prefix(index).length()));
+            rewritten.put("path", newPath);
+            errorsOf(results.get(index)).add(rewritten);
+        }
+        for (Map<String, Object> result : results) {
+            result.putIfAbsent("data", data != null ? new LinkedHashMap<>() : null);
+        }
+        return results;
+    }
+
+    private static OperationDefinition renameVariables(OperationDefinition operation, String prefix) {
+        Node<?> renamed = new AstTransformer().transform(operation, new NodeVisitorStub() {
+            @Override
+            public TraversalControl visitVariableDefinition(VariableDefinition node, TraverserContext<Node> context) {
+                return TreeTransformerUtil.changeNode(context,
+                        node.transform(builder -> builder.name(prefix + node.getName())));
+            }
+
+            @Override
+            public TraversalControl visitVariableReference(VariableReference node, TraverserContext<Node> context) {
+                return TreeTransformerUtil.changeNode(context,
+                        node.transform(builder -> builder.name(prefix + node.getName())));
+            }
+        });
+        return (OperationDefinition) renamed;
+    }
+
+    private static String prefix(int index) {
+        return "b" + index + "_";
+    }
+
+    private static int indexOf(String alias) {
+        int underscore = alias.indexOf('_');
+        if (!alias.startsWith("b") || underscore < 2) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(alias.substring(1, underscore));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> dataOf(Map<String, Object> result) {
+        return (Map<String, Object>) result.computeIfAbsent("data", key -> new LinkedHashMap<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> errorsOf(Map<String, Object> result) {
+        return (List<Map<String, Object>>) result.computeIfAbsent("errors", key -> new ArrayList<>());
+    }
+
+    record Merged(String query, Map<String, Object> variables) {}
+}
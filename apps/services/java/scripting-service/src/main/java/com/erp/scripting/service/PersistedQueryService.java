@@ -0,0 +1,135 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.PersistedQuery;
+import com.erp.scripting.repository.PersistedQueryRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.InvalidSyntaxException;
+import graphql.parser.Parser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Registry of named GraphQL queries per company. Scripts and proxy clients refer to a
+ * registered query by name and only send variables; the document is validated once at
+ * registration and its SHA-256 is used for automatic persisted queries downstream.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PersistedQueryService {
+    
+    private final PersistedQueryRepository repository;
+    
+    /** Resolved queries by (company, name); entries of other replicas expire after a few minutes. */
+    private final Cache<QueryKey, PersistedQuery> resolved = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build();
+    
+    public List<PersistedQuery> findByCompany(UUID companyId) {
+        return repository.findByCompanyIdOrderByName(companyId);
+    }
+    
+    /**
+     * Register a query under a name, replacing any previous document with that name.
+     */
+    @Transactional
+    public PersistedQuery register(RegisterPersistedQueryRequest request) {
+        String service = request.service() != null ? request.service().toLowerCase().trim() : "";
+        if (!DataProxyService.isKnownService(service)) {
+            throw new IllegalArgumentException("Unknown service: '" + request.service() + "'");
+        }
+        if (request.name() == null || request.name().isBlank()) {
+            throw new IllegalArgumentException("Persisted query name must not be empty");
+        }
+        validateDocument(request.document());
+        
+        log.info("Registering persisted query: {} for company: {}", request.name(), request.companyId());
+        PersistedQuery query = repository.findByCompanyIdAndName(request.companyId(), request.name())
+                .orElseGet(() -> PersistedQuery.builder()
+                        .companyId(request.companyId())
+                        .name(request.name())
+                        .createdBy(request.createdBy())
+                        .build());
+        query.setService(service);
+        query.setDocument(request.document());
+        query.setSha256(sha256(request.document()));
+        PersistedQuery saved = repository.save(query);
+        resolved.invalidate(new QueryKey(saved.getCompanyId(), saved.getName()));
+        return saved;
+    }
+    
+    @Transactional
+    public boolean delete(UUID id) {
+        return repository.findById(id).map(query -> {
+            repository.delete(query);
+            resolved.invalidate(new QueryKey(query.getCompanyId(), query.getName()));
+            return true;
+        }).orElse(false);
+    }
+    
+    /**
+     * Look up a registered query of the company.
+     *
+     * @throws IllegalArgumentException if no query with that name is registered
+     */
+    public PersistedQuery resolve(UUID companyId, String name) {
+        QueryKey key = new QueryKey(companyId, name);
+        PersistedQuery query = resolved.getIfPresent(key);
+        if (query == null) {
+            Optional<PersistedQuery> found = repository.findByCompanyIdAndName(companyId, name);
+            query = found.orElseThrow(() -> new IllegalArgumentException("Unknown persisted query: '" + name + "'"));
+            resolved.put(key, query);
+        }
+        return query;
+    }
+    
+    private void validateDocument(String document) {
+        if (document == null || document.isBlank()) {
+            throw new IllegalArgumentException("Persisted query document must not be empty");
+        }
+        Document parsed;
+        try {
+            parsed = Parser.parse(document);
+        } catch (InvalidSyntaxException e) {
+            throw new IllegalArgumentException("Invalid GraphQL document: " + e.getMessage());
+        }
+        List<OperationDefinition> operations = parsed.getDefinitionsOfType(OperationDefinition.class);
+        if (operations.size() != 1 || operations.get(0).getOperation() != OperationDefinition.Operation.QUERY) {
+            throw new IllegalArgumentException("A persisted query must contain exactly one query operation");
+        }
+    }
+    
+    static String sha256(String document) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(document.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private record QueryKey(UUID companyId, String name) {}
+    
+    public record RegisterPersistedQueryRequest(
+            UUID companyId,
+            String name,
+            String service,
+            String document,
+            UUID createdBy
+    ) {}
+}
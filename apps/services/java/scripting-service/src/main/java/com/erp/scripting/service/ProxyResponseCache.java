@@ -0,0 +1,154 @@
+package com.erp.scripting.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import graphql.language.AstPrinter;
+import graphql.parser.Parser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Read-through cache for proxied GraphQL queries, used by {@link DataProxyService}.
+ *
+ * <p>Entries are keyed by service, company, normalized query document, variables and a hash
+ * of the caller's Authorization header, so one user never sees another user's view of the
+ * data. Each (service, company) namespace carries a generation number that is part of the
+ * key; a mutation bumps it, which makes all earlier entries of that namespace unreachable
+ * until they expire. Only responses without GraphQL errors are cached.
+ *
+ * <p>Generations live in each replica's memory. A mutation is announced to the other
+ * replicas through {@link ScriptChangeNotifier}; until the notification arrives (normally
+ * milliseconds), or if it is lost, they may answer from their older entries for at most the
+ * service's TTL, so keep the TTL as short as that staleness allows.
+ */
+final class ProxyResponseCache implements ScriptChangeNotifier.ProxyCacheListener {
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final ObjectMapper keyMapper;
+    private final Cache<Key, Map<String, Object>> cache;
+    private final ToLongFunction<String> ttlSeconds;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    ProxyResponseCache(ObjectMapper objectMapper, long maxSize, ToLongFunction<String> ttlSeconds,
+                       MeterRegistry meterRegistry) {
+        // Sorted keys so equal variables always produce the same cache key
+        this.keyMapper = objectMapper.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.ttlSeconds = ttlSeconds;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Key, Map<String, Object>>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Map<String, Object> value, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(ttlSeconds.applyAsLong(key.service()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Map<String, Object> value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Map<String, Object> value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "erp.proxy.cache");
+    }
+
+    /**
+     * Build the cache key for a read query.
+     *
+     * @return the key, or null if the query is not cacheable (service TTL of 0, unparsable
+     *         document, or variables that cannot be serialized)
+     */
+    Key key(String service, String companyId, String query, Map<String, Object> variables, String authHeader) {
+        try {
+            return buildKey(service, companyId, AstPrinter.printAstCompact(Parser.parse(query)), variables, authHeader);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build the cache key for a registered query, identified by its document hash so the
+     * stored document does not have to be parsed on every call.
+     */
+    Key persistedKey(String service, String companyId, String sha256, Map<String, Object> variables, String authHeader) {
+        return buildKey(service, companyId, "sha256:" + sha256, variables, authHeader);
+    }
+
+    private Key buildKey(String service, String companyId, String normalizedQuery, Map<String, Object> variables,
+                         String authHeader) {
+        if (ttlSeconds.applyAsLong(service) <= 0) {
+            return null;
+        }
+        try {
+            String variablesJson = variables != null && !variables.isEmpty() ? keyMapper.writeValueAsString(variables) : "";
+            String tenant = companyId != null ? companyId : "";
+            return new Key(service, tenant, normalizedQuery, variablesJson, principal(authHeader),
+                    generation(service, tenant).get());
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    Map<String, Object> get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    void put(Key key, Map<String, Object> response) {
+        if (response != null && response.get("errors") == null) {
+            cache.put(key, response);
+        }
+    }
+
+    /**
+     * Drop everything cached for the company's view of a service.
+     */
+    @Override
+    public void invalidate(String service, String companyId) {
+        generation(service, companyId != null ? companyId : "").incrementAndGet();
+    }
+
+    @Override
+    public void invalidateAll() {
+        generations.values().forEach(AtomicLong::incrementAndGet);
+    }
+
+    private AtomicLong generation(String service, String tenant) {
+        return generations.computeIfAbsent(service + '|' + tenant, key -> new AtomicLong());
+    }
+
+    private static String principal(String authHeader) {
+        if (authHeader == null || authHeader.isBlank()) {
+            return ANONYMOUS;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(authHeader.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    record Key(String service, String companyId, String query, String variables, String principal, long generation) {}
+}
@@ -0,0 +1,264 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.entity.Script.TriggerEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Propagates script changes between scripting-service replicas through a Postgres
+ * LISTEN/NOTIFY channel.
+ *
+ * <p>Notifications are sent inside the writing transaction, so Postgres delivers them only
+ * after commit. Every replica (including the sender) invalidates the matching
+ * {@link ScriptTriggerIndex} entry, or for a library change the company's libraries in
+ * {@link ScriptLibraryService}, when the notification arrives.
+ *
+ * <p>The same channel carries invalidations of the data proxy's response cache after a
+ * mutation ({@code erp.proxy.cache.listen-notify}). Those are not tied to a transaction, as
+ * the downstream write cannot be rolled back: a background sender publishes them on its own
+ * connection, merging repeated invalidations of the same service and company, so a mutation
+ * never waits for the database.
+ */
+@Slf4j
+@Component
+public class ScriptChangeNotifier {
+
+    static final String CHANNEL = "script_changes";
+    private static final String NONE = "-";
+    private static final String LIBRARY = "LIBRARY";
+    private static final String PROXY = "PROXY";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ScriptTriggerIndex triggerIndex;
+    private final ScriptLibraryService libraryService;
+    private final List<ProxyCacheListener> proxyCacheListeners = new CopyOnWriteArrayList<>();
+    /** Proxy invalidation payloads waiting for the sender, at most one per service and company. */
+    private final Set<String> pendingProxyInvalidations = new LinkedHashSet<>();
+
+    private volatile boolean running;
+    private Thread listenerThread;
+    private Thread senderThread;
+
+    @Value("${scripting.trigger-index.listen-notify:true}")
+    private boolean enabled;
+
+    @Value("${erp.proxy.cache.enabled:false}")
+    private boolean proxyCacheEnabled;
+
+    @Value("${erp.proxy.cache.listen-notify:true}")
+    private boolean proxyListenNotify;
+
+    @Value("${scripting.trigger-index.listen-poll-ms:1000}")
+    private int pollMs;
+
+    public ScriptChangeNotifier(DataSource dataSource, ScriptTriggerIndex triggerIndex,
+                                ScriptLibraryService libraryService) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.triggerIndex = triggerIndex;
+        this.libraryService = libraryService;
+    }
+
+    /**
+     * Publish a change of the given script's trigger to all replicas. Must be called inside
+     * the transaction that modifies the script.
+     */
+    public void publish(Script script) {
+        publish(script.getCompanyId(), script.getTriggerEvent(), script.getTriggerEntity());
+    }
+
+    public void publish(UUID companyId, TriggerEvent event, String entity) {
+        if (!enabled || companyId == null || event == null) {
+            return;
+        }
+        String payload = companyId + "|" + event.name() + "|" + (entity != null ? entity : NONE);
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, payload);
+    }
+
+    /**
+     * Publish a change of one of the company's library scripts to all replicas. Must be
+     * called inside the transaction that modifies the library.
+     */
+    public void publishLibrary(UUID companyId, String name) {
+        if (!enabled || companyId == null) {
+            return;
+        }
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, companyId + "|" + LIBRARY + "|" + name);
+    }
+
+    /**
+     * Tell all replicas (including this one) that the company's cached answers of a service
+     * are stale. Returns at once; the notification is sent by a background thread. Failures
+     * are logged; other replicas then serve stale answers until they expire.
+     */
+    public void publishProxyInvalidation(String service, String companyId) {
+        if (!proxyInvalidations()) {
+            return;
+        }
+        String payload = PROXY + "|" + service + "|" + (companyId != null ? companyId : "");
+        synchronized (pendingProxyInvalidations) {
+            if (pendingProxyInvalidations.add(payload)) {
+                pendingProxyInvalidations.notifyAll();
+            }
+        }
+    }
+
+    public void onProxyInvalidation(ProxyCacheListener listener) {
+        proxyCacheListeners.add(listener);
+    }
+
+    private boolean proxyInvalidations() {
+        return proxyCacheEnabled && proxyListenNotify;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled && !proxyInvalidations()) {
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listenLoop, "script-change-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+        if (proxyInvalidations()) {
+            senderThread = new Thread(this::sendLoop, "proxy-invalidation-sender");
+            senderThread.setDaemon(true);
+            senderThread.start();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+        if (senderThread != null) {
+            senderThread.interrupt();
+        }
+    }
+
+    private void sendLoop() {
+        while (running) {
+            List<String> payloads;
+            synchronized (pendingProxyInvalidations) {
+                while (pendingProxyInvalidations.isEmpty()) {
+                    try {
+                        pendingProxyInvalidations.wait();
+                    } catch (InterruptedException e) {
+                        // Unsent invalidations expire with their entries' TTL
+                        return;
+                    }
+                }
+                payloads = new ArrayList<>(pendingProxyInvalidations);
+                pendingProxyInvalidations.clear();
+            }
+            // Invalidations arriving meanwhile wait for the next round, merged again
+            send(payloads);
+        }
+    }
+
+    private void send(List<String> payloads) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            connection.setAutoCommit(true);
+            for (String payload : payloads) {
+                statement.setString(1, CHANNEL);
+                statement.setString(2, payload);
+                statement.execute();
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Could not publish {} proxy cache invalidation(s): {}", payloads.size(), e.getMessage());
+        }
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // Anything changed while we were not listening is unknown: start from scratch
+                triggerIndex.invalidateAll();
+                libraryService.invalidateAll();
+                proxyCacheListeners.forEach(ProxyCacheListener::invalidateAll);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for script changes on channel '{}'", CHANNEL);
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        handle(notification.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Script change listener failed, reconnecting: {}", e.getMessage());
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        String[] parts = payload.split("\\|", 3);
+        if (PROXY.equals(parts[0]) && parts.length == 3) {
+            String companyId = parts[2].isEmpty() ? null : parts[2];
+            proxyCacheListeners.forEach(listener -> listener.invalidate(parts[1], companyId));
+            return;
+        }
+        try {
+            UUID companyId = UUID.fromString(parts[0]);
+            if (LIBRARY.equals(parts[1])) {
+                libraryService.invalidate(companyId);
+                return;
+            }
+            TriggerEvent event = TriggerEvent.valueOf(parts[1]);
+            String entity = NONE.equals(parts[2]) ? null : parts[2];
+            triggerIndex.invalidate(companyId, event, entity);
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed script change notification '{}'", payload);
+        }
+    }
+
+    /**
+     * Receives the proxy cache invalidations of all replicas.
+     */
+    interface ProxyCacheListener {
+
+        void invalidate(String service, String companyId);
+
+        /** Invalidations may have been missed, e.g. while the listener reconnected. */
+        void invalidateAll();
+    }
+}
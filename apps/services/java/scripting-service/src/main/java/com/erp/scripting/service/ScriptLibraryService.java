@@ -0,0 +1,235 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.engine.ScriptImports;
+import com.erp.scripting.engine.ScriptLibraries;
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.entity.Script.ScriptType;
+import com.erp.scripting.repository.ScriptRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Library scripts per company, for the engine's module loader and for tracking who imports
+ * whom.
+ *
+ * <p>A library is an ES module other scripts import by its name
+ * ({@code import { gross } from 'vat';}). All active libraries of a company are loaded in one
+ * query and cached until one of them changes, on every replica via {@link ScriptChangeNotifier}.
+ * A library's revision combines its version with the versions of all libraries it imports,
+ * directly or not. Compiled modules and cached results of importing scripts are keyed by
+ * revision, so a change reaches exactly the library and its dependents.
+ */
+@Component
+public class ScriptLibraryService implements ScriptLibraries {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9_.-]{0,99}");
+
+    private final ScriptRepository scriptRepository;
+    private Cache<UUID, Map<String, Library>> libraries;
+
+    /** Imported library names per script version */
+    private Cache<VersionKey, Set<String>> imports;
+
+    @Value("${scripting.libraries.max-companies:1000}")
+    private long maxCompanies;
+
+    @Value("${scripting.libraries.expire-after-write-minutes:10}")
+    private long expireAfterWriteMinutes;
+
+    public ScriptLibraryService(ScriptRepository scriptRepository) {
+        this.scriptRepository = scriptRepository;
+    }
+
+    @PostConstruct
+    void init() {
+        this.libraries = Caffeine.newBuilder()
+                .maximumSize(maxCompanies)
+                .expireAfterWrite(Duration.ofMinutes(expireAfterWriteMinutes))
+                .build();
+        this.imports = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .build();
+    }
+
+    @Override
+    public Library find(String companyId, String name) {
+        UUID company;
+        try {
+            company = UUID.fromString(companyId);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+        return libraries(company).get(name);
+    }
+
+    /**
+     * Revisions of the libraries a script imports, e.g. {@code vat@3,round@1}; empty if it
+     * imports none. Part of the script's result cache key.
+     */
+    public String revision(Script script) {
+        Set<String> names = imports.get(new VersionKey(script.getId(), script.getVersion()),
+                key -> ScriptImports.specifiers(script.getCode()));
+        if (names.isEmpty()) {
+            return "";
+        }
+        Map<String, Library> available = libraries(script.getCompanyId());
+        return names.stream()
+                .map(name -> name + "@" + (available.containsKey(name) ? available.get(name).revision() : "-"))
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Checked against the database rather than the cache, which must not pick up the
+     * uncommitted changes of the caller's transaction.
+     *
+     * @throws IllegalArgumentException if the code imports a library the company does not have
+     */
+    public void validateImports(UUID companyId, String code) {
+        Set<String> names = ScriptImports.specifiers(code);
+        if (names.isEmpty()) {
+            return;
+        }
+        Set<String> available = scriptRepository.findByCompanyIdAndType(companyId, ScriptType.LIBRARY).stream()
+                .filter(Script::isActive)
+                .map(Script::getName)
+                .collect(Collectors.toSet());
+        for (String name : names) {
+            if (!available.contains(name)) {
+                throw new IllegalArgumentException("Unknown library: " + name);
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name cannot be used as a module specifier
+     */
+    public static void validateName(String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Library names may contain only letters, digits, '_', '.' and '-': " + name);
+        }
+    }
+
+    /**
+     * Scripts of the company that import the library, directly or through other libraries.
+     */
+    public Set<Script> dependents(UUID companyId, String libraryName) {
+        Map<String, Set<Script>> importers = new HashMap<>();
+        for (Script script : scriptRepository.findByCompanyId(companyId)) {
+            for (String name : ScriptImports.specifiers(script.getCode())) {
+                importers.computeIfAbsent(name, key -> new HashSet<>()).add(script);
+            }
+        }
+        Set<Script> dependents = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(libraryName));
+        Set<String> visited = new HashSet<>();
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (!visited.add(name)) {
+                continue;
+            }
+            for (Script importer : importers.getOrDefault(name, Set.of())) {
+                dependents.add(importer);
+                if (importer.getType() == ScriptType.LIBRARY) {
+                    pending.push(importer.getName());
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Forget the company's libraries now and again once the current transaction completes,
+     * so a concurrent lookup cannot keep pre-commit data.
+     */
+    public void invalidate(UUID companyId) {
+        if (companyId == null) {
+            return;
+        }
+        libraries.invalidate(companyId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    libraries.invalidate(companyId);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        libraries.invalidateAll();
+    }
+
+    private Map<String, Library> libraries(UUID companyId) {
+        return libraries.get(companyId, this::load);
+    }
+
+    private Map<String, Library> load(UUID companyId) {
+        Map<String, Script> scripts = new HashMap<>();
+        for (Script script : scriptRepository.findByCompanyIdAndType(companyId, ScriptType.LIBRARY)) {
+            if (script.isActive()) {
+                scripts.put(script.getName(), script);
+            }
+        }
+        Map<String, Library> loaded = new HashMap<>();
+        for (Script script : scripts.values()) {
+            loaded.put(script.getName(), new Library(script.getName(), libraryRevision(script, scripts), script.getCode()));
+        }
+        return Map.copyOf(loaded);
+    }
+
+    /**
+     * The library's version, plus a hash of the versions of every library reachable through
+     * its imports. Missing imports count too: once one is created, modules that failed to
+     * link against it must be loaded again.
+     */
+    private static String libraryRevision(Script library, Map<String, Script> scripts) {
+        SortedSet<String> closure = new TreeSet<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(library.getName()));
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            Script script = scripts.get(name);
+            if (closure.add(name + "@" + (script != null ? script.getVersion() : "-")) && script != null) {
+                ScriptImports.specifiers(script.getCode()).forEach(pending::push);
+            }
+        }
+        if (closure.size() == 1) {
+            return String.valueOf(library.getVersion());
+        }
+        return library.getVersion() + "-" + sha256(String.join(",", closure)).substring(0, 12);
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record VersionKey(UUID scriptId, int version) {}
+}
@@ -0,0 +1,83 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.engine.GraalJSEngine;
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.repository.ScriptRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+
+/**
+ * Parses the most executed active scripts into the engine's source cache after startup,
+ * so the first trigger after a deploy does not pay for parsing.
+ *
+ * <p>Runs once on a background thread; requests arriving meanwhile are served as usual and
+ * simply find more scripts warm the longer the service is up.
+ */
+@Slf4j
+@Component
+public class ScriptPrewarmer {
+
+    private final ScriptRepository scriptRepository;
+    private final GraalJSEngine jsEngine;
+
+    @Value("${scripting.prewarm.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scripting.prewarm.max-scripts:100}")
+    private int maxScripts;
+
+    private volatile Thread worker;
+
+    public ScriptPrewarmer(ScriptRepository scriptRepository, GraalJSEngine jsEngine) {
+        this.scriptRepository = scriptRepository;
+        this.jsEngine = jsEngine;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (!enabled || maxScripts <= 0) {
+            return;
+        }
+        worker = new Thread(this::prewarm, "script-prewarm");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void prewarm() {
+        long start = System.nanoTime();
+        List<Script> scripts;
+        try {
+            scripts = scriptRepository.findMostExecutedActive(maxScripts);
+        } catch (RuntimeException e) {
+            log.warn("Could not load scripts to prewarm: {}", e.getMessage());
+            return;
+        }
+        int warmed = 0;
+        for (Script script : scripts) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            try {
+                jsEngine.compile(script.getId(), script.getVersion(), script.getCode());
+                warmed++;
+            } catch (RuntimeException e) {
+                log.warn("Could not prewarm script {} ({}): {}", script.getName(), script.getId(), e.getMessage());
+            }
+        }
+        log.info("Prewarmed {} of {} scripts in {} ms", warmed, scripts.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,128 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.Script;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Results of deterministic scripts, keyed by script id, version and a hash of the input.
+ *
+ * <p>A script marked deterministic promises that its result depends on nothing but its
+ * input, which is typical for CALCULATION and CUSTOM_FIELD scripts the UI re-runs with the
+ * same values over and over. Inputs are serialized with sorted keys before hashing, so
+ * equal inputs hit the same entry regardless of map order. The version is part of the key:
+ * once a script is updated, its earlier results can no longer be found, on every replica.
+ * So are the revisions of the libraries the script imports (see {@link ScriptLibraryService}),
+ * which does the same when one of them changes. Only successful results are cached.
+ */
+@Component
+public class ScriptResultCache {
+
+    private final ObjectMapper keyMapper;
+    private final MeterRegistry meterRegistry;
+    private final ScriptLibraryService libraryService;
+    private Cache<Key, Object> cache;
+
+    @Value("${scripting.result-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scripting.result-cache.max-size:50000}")
+    private long maxSize;
+
+    @Value("${scripting.result-cache.expire-after-write-minutes:60}")
+    private long expireAfterWriteMinutes;
+
+    public ScriptResultCache(ObjectMapper objectMapper, MeterRegistry meterRegistry, ScriptLibraryService libraryService) {
+        this.keyMapper = objectMapper.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.meterRegistry = meterRegistry;
+        this.libraryService = libraryService;
+    }
+
+    @PostConstruct
+    void init() {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(enabled ? maxSize : 0)
+                .expireAfterWrite(Duration.ofMinutes(expireAfterWriteMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "scripting.result-cache");
+    }
+
+    /**
+     * Build the cache key for a run of the script.
+     *
+     * @return the key, or null if the script is not deterministic, caching is disabled or
+     *         the input cannot be serialized
+     */
+    public Key key(Script script, Map<String, Object> input) {
+        if (!enabled || !script.isDeterministic()) {
+            return null;
+        }
+        try {
+            String canonical = input != null && !input.isEmpty() ? keyMapper.writeValueAsString(input) : "";
+            return new Key(script.getId(), script.getVersion(), libraryService.revision(script), sha256(canonical));
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the cached result wrapped in a {@link Hit} (the result itself may be null), or
+     *         null on a miss
+     */
+    public Hit get(Key key) {
+        if (key == null) {
+            return null;
+        }
+        Object value = cache.getIfPresent(key);
+        if (value == null) {
+            return null;
+        }
+        return new Hit(value == NullResult.INSTANCE ? null : value);
+    }
+
+    public void put(Key key, Object result) {
+        if (key != null) {
+            cache.put(key, result != null ? result : NullResult.INSTANCE);
+        }
+    }
+
+    /**
+     * Drop all cached results of a script, e.g. after it was updated or deleted.
+     */
+    public void evict(UUID scriptId) {
+        cache.asMap().keySet().removeIf(key -> key.scriptId().equals(scriptId));
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** Caffeine does not store nulls; scripts that return nothing are cached as this marker. */
+    private enum NullResult { INSTANCE }
+
+    public record Key(UUID scriptId, int version, String libraries, String inputHash) {}
+
+    public record Hit(Object result) {}
+}
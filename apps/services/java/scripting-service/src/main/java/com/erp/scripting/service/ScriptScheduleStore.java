@@ -0,0 +1,156 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.entity.Script.TriggerEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Due-run bookkeeping for SCHEDULED scripts in {@code script_schedules}.
+ *
+ * <p>Each scheduled script has one row holding its next run time. Replicas claim due rows
+ * with {@code FOR UPDATE SKIP LOCKED} and mark them with a lease, so a run is picked up by
+ * exactly one replica; if that replica dies, the lease expires and another one takes over.
+ *
+ * <p>Every script fires at a fixed offset of up to {@code scripting.scheduler.max-jitter-seconds}
+ * after its cron time, derived from its id, so many "every hour" scripts spread out over the
+ * first seconds of the hour instead of all starting at once.
+ */
+@Component
+public class ScriptScheduleStore {
+
+    private static final String CLAIM_SQL = """
+            WITH due AS (
+                SELECT script_id FROM script_schedules
+                WHERE next_run_at <= now() AND (lease_until IS NULL OR lease_until < now())
+                ORDER BY next_run_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            UPDATE script_schedules s
+            SET lease_owner = ?, lease_until = now() + make_interval(secs => ?)
+            FROM due
+            WHERE s.script_id = due.script_id
+            RETURNING s.script_id, s.next_run_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${scripting.scheduler.max-jitter-seconds:30}")
+    private long maxJitterSeconds;
+
+    public ScriptScheduleStore(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Check the schedule settings of a script.
+     *
+     * @throws IllegalArgumentException if the script is SCHEDULED without a valid cron expression
+     *                                  or has an unknown time zone
+     */
+    public static void validate(TriggerEvent triggerEvent, String cron, String timezone) {
+        if (triggerEvent == TriggerEvent.SCHEDULED && (cron == null || cron.isBlank())) {
+            throw new IllegalArgumentException("Scheduled scripts need a cron expression");
+        }
+        if (cron != null && !cron.isBlank() && !CronExpression.isValidExpression(cron)) {
+            throw new IllegalArgumentException("Invalid cron expression: '" + cron + "'");
+        }
+        if (timezone != null && !timezone.isBlank()) {
+            try {
+                ZoneId.of(timezone);
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Unknown time zone: '" + timezone + "'");
+            }
+        }
+    }
+
+    /**
+     * Create, move or remove the due-run row after a script was saved.
+     */
+    public void schedule(Script script) {
+        Instant next = isScheduled(script) ? nextRun(script, Instant.now()) : null;
+        if (next == null) {
+            remove(script.getId());
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO script_schedules (script_id, next_run_at) VALUES (?, ?)
+                ON CONFLICT (script_id) DO UPDATE SET next_run_at = EXCLUDED.next_run_at
+                """, script.getId(), Timestamp.from(next));
+    }
+
+    public void remove(UUID scriptId) {
+        jdbcTemplate.update("DELETE FROM script_schedules WHERE script_id = ?", scriptId);
+    }
+
+    /**
+     * Lease up to {@code limit} due runs for this replica.
+     */
+    public List<Claim> claimDue(String owner, int limit, Duration lease) {
+        List<Claim> claims = transactionTemplate.execute(status -> jdbcTemplate.query(CLAIM_SQL,
+                (rs, rowNum) -> new Claim(rs.getObject("script_id", UUID.class),
+                        rs.getTimestamp("next_run_at").toInstant()),
+                limit, owner, lease.toSeconds()));
+        return claims != null ? claims : List.of();
+    }
+
+    /**
+     * Record a finished (or skipped) run and release the lease. Does nothing if the lease
+     * has meanwhile passed to another replica.
+     */
+    public void complete(UUID scriptId, String owner, Instant ranFor, Instant nextRun) {
+        jdbcTemplate.update("""
+                UPDATE script_schedules
+                SET next_run_at = ?, last_run_at = ?, lease_owner = NULL, lease_until = NULL
+                WHERE script_id = ? AND lease_owner = ?
+                """, Timestamp.from(nextRun), Timestamp.from(ranFor), scriptId, owner);
+    }
+
+    /**
+     * First run time of the script strictly after {@code after}, including its jitter.
+     *
+     * @return the run time, or null if the cron expression never fires again
+     */
+    public Instant nextRun(Script script, Instant after) {
+        Duration jitter = jitter(script.getId());
+        ZoneId zone = script.getScheduleTimezone() != null && !script.getScheduleTimezone().isBlank()
+                ? ZoneId.of(script.getScheduleTimezone()) : ZoneOffset.UTC;
+        ZonedDateTime next = CronExpression.parse(script.getScheduleCron())
+                .next(after.minus(jitter).atZone(zone));
+        return next != null ? next.toInstant().plus(jitter) : null;
+    }
+
+    public static boolean isScheduled(Script script) {
+        return script.isActive() && script.getTriggerEvent() == TriggerEvent.SCHEDULED
+                && script.getScheduleCron() != null && !script.getScheduleCron().isBlank();
+    }
+
+    private Duration jitter(UUID scriptId) {
+        if (maxJitterSeconds <= 0) {
+            return Duration.ZERO;
+        }
+        long spreadMs = TimeUnit.SECONDS.toMillis(maxJitterSeconds);
+        return Duration.ofMillis(Math.floorMod(scriptId.getLeastSignificantBits(), spreadMs));
+    }
+
+    public record Claim(UUID scriptId, Instant scheduledAt) {}
+}
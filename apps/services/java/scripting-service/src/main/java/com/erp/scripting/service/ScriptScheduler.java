@@ -0,0 +1,196 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.repository.ScriptRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs SCHEDULED scripts on their cron schedule.
+ *
+ * <p>Every replica polls {@code script_schedules} for due runs and leases a few of them
+ * through {@link ScriptScheduleStore}; rows locked by another replica are skipped, so the
+ * replicas share the load and no run is started twice. A run whose replica dies before
+ * completing it is retried once the lease expires.
+ *
+ * <p>When runs were missed (e.g. no replica was up), {@code scripting.scheduler.catch-up}
+ * decides what happens:
+ * <ul>
+ *   <li>{@code once} – run once now, then continue with the next future occurrence</li>
+ *   <li>{@code all} – run every missed occurrence, but none older than
+ *       {@code catch-up-window-minutes}</li>
+ *   <li>{@code skip} – drop runs that are late by more than {@code misfire-threshold-seconds}</li>
+ * </ul>
+ * How late runs start is recorded in {@code scripting.scheduler.lag}.
+ */
+@Slf4j
+@Component
+public class ScriptScheduler {
+
+    private final ScriptScheduleStore scheduleStore;
+    private final ScriptRepository scriptRepository;
+    private final ScriptService scriptService;
+    private final MeterRegistry meterRegistry;
+    private final Timer lagTimer;
+    private final String owner;
+
+    /** Runs only wait on the engine's workers, so cheap virtual threads suffice. */
+    private final ExecutorService runExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("scheduled-script-", 0).factory());
+
+    @Value("${scripting.scheduler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scripting.scheduler.max-in-flight:16}")
+    private int maxInFlight;
+
+    @Value("${scripting.scheduler.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${scripting.scheduler.catch-up:once}")
+    private String catchUp;
+
+    @Value("${scripting.scheduler.catch-up-window-minutes:60}")
+    private long catchUpWindowMinutes;
+
+    @Value("${scripting.scheduler.misfire-threshold-seconds:60}")
+    private long misfireThresholdSeconds;
+
+    private Semaphore inFlight;
+
+    public ScriptScheduler(ScriptScheduleStore scheduleStore, ScriptRepository scriptRepository,
+                           ScriptService scriptService, MeterRegistry meterRegistry) {
+        this.scheduleStore = scheduleStore;
+        this.scriptRepository = scriptRepository;
+        this.scriptService = scriptService;
+        this.meterRegistry = meterRegistry;
+        this.lagTimer = Timer.builder("scripting.scheduler.lag")
+                .description("Delay between a scheduled script's due time and its start")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        String host = hostName();
+        this.owner = host.substring(0, Math.min(host.length(), 80)) + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PostConstruct
+    void init() {
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Scheduled(fixedDelayString = "${scripting.scheduler.poll-interval-ms:1000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        int available = inFlight.availablePermits();
+        if (available == 0) {
+            return;
+        }
+        List<ScriptScheduleStore.Claim> claims;
+        try {
+            claims = scheduleStore.claimDue(owner, available, Duration.ofSeconds(leaseSeconds));
+        } catch (RuntimeException e) {
+            log.error("Could not claim due scheduled scripts", e);
+            return;
+        }
+        for (ScriptScheduleStore.Claim claim : claims) {
+            inFlight.acquireUninterruptibly();
+            runExecutor.execute(() -> {
+                try {
+                    run(claim);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private void run(ScriptScheduleStore.Claim claim) {
+        Script script = scriptRepository.findById(claim.scriptId()).orElse(null);
+        if (script == null || !ScriptScheduleStore.isScheduled(script)) {
+            scheduleStore.remove(claim.scriptId());
+            return;
+        }
+        Instant now = Instant.now();
+        Duration lag = Duration.between(claim.scheduledAt(), now);
+        try {
+            if ("skip".equalsIgnoreCase(catchUp) && lag.toSeconds() > misfireThresholdSeconds) {
+                log.info("Skipping run of scheduled script {} due at {} ({}s late)",
+                        script.getId(), claim.scheduledAt(), lag.toSeconds());
+                count("skipped");
+            } else {
+                lagTimer.record(lag.isNegative() ? Duration.ZERO : lag);
+                ScriptService.ScriptExecutionResult result = scriptService.executeScript(script,
+                        Map.of("schedule", Map.of("scheduledAt", claim.scheduledAt().toString(),
+                                "startedAt", now.toString())),
+                        null);
+                count(result.success() ? "success" : "failed");
+            }
+        } catch (RuntimeException e) {
+            log.error("Scheduled script {} failed", script.getId(), e);
+            count("failed");
+        }
+
+        try {
+            Instant next = nextRun(script, claim.scheduledAt());
+            if (next == null) {
+                scheduleStore.remove(script.getId());
+            } else {
+                scheduleStore.complete(script.getId(), owner, claim.scheduledAt(), next);
+            }
+        } catch (RuntimeException e) {
+            // The lease expires and the run is picked up again
+            log.error("Could not reschedule script {}", script.getId(), e);
+        }
+    }
+
+    private Instant nextRun(Script script, Instant scheduledAt) {
+        Instant now = Instant.now();
+        if (!"all".equalsIgnoreCase(catchUp)) {
+            return scheduleStore.nextRun(script, now);
+        }
+        // Work through missed occurrences, but never further back than the catch-up window
+        Instant windowStart = now.minus(Duration.ofMinutes(catchUpWindowMinutes));
+        return scheduleStore.nextRun(script, scheduledAt.isBefore(windowStart) ? windowStart : scheduledAt);
+    }
+
+    private void count(String outcome) {
+        Counter.builder("scripting.scheduler.runs")
+                .description("Scheduled script runs by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "scripting-service";
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        enabled = false;
+        runExecutor.shutdown();
+    }
+}
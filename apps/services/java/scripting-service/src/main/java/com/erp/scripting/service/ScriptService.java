@@ -8,20 +8,31 @@ import com.erp.scripting.entity.ScriptExecution;
 import com.erp.scripting.entity.ScriptExecution.ExecutionStatus;
 import com.erp.scripting.repository.ScriptExecutionRepository;
 import com.erp.scripting.repository.ScriptRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import jakarta.annotation.PreDestroy;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @RequiredArgsConstructor
@@ -31,7 +42,26 @@ public class ScriptService {
     private final ScriptRepository scriptRepository;
     private final ScriptExecutionRepository executionRepository;
     private final GraalJSEngine jsEngine;
-    private final ObjectMapper objectMapper;
+    private final ScriptTriggerIndex triggerIndex;
+    private final ScriptChangeNotifier changeNotifier;
+    private final ExecutionAuditWriter auditWriter;
+    private final ExecutionStatsService statsService;
+    private final ScriptScheduleStore scheduleStore;
+    private final ScriptResultCache resultCache;
+    private final ScriptLibraryService libraryService;
+    
+    /** Fan-out tasks only wait on the engine's workers, so cheap virtual threads suffice. */
+    private final ExecutorService triggerExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("trigger-fanout-", 0).factory());
+    
+    @Value("${scripting.trigger.deadline-ms:10000}")
+    private long triggerDeadlineMs;
+    
+    @Value("${scripting.batch.max-items:10000}")
+    private int batchMaxItems;
+    
+    @Value("${scripting.history.window-days:90}")
+    private long historyWindowDays;
     
     public List<Script> findByCompany(UUID companyId) {
         return scriptRepository.findByCompanyId(companyId);
@@ -46,12 +76,15 @@ public class ScriptService {
     }
     
     public List<Script> findByTrigger(UUID companyId, TriggerEvent event, String entity) {
-        return scriptRepository.findActiveByTrigger(companyId, event, entity);
+        return triggerIndex.find(companyId, event, entity,
+                () -> scriptRepository.findActiveByTrigger(companyId, event, entity));
     }
     
     @Transactional
     public Script create(CreateScriptRequest request) {
         log.info("Creating script: {} for company: {}", request.name(), request.companyId());
+        ScriptScheduleStore.validate(request.triggerEvent(), request.scheduleCron(), request.scheduleTimezone());
+        validateCode(request.companyId(), request.name(), request.type(), request.triggerEvent(), request.code());
         
         Script script = Script.builder()
                 .companyId(request.companyId())
@@ -61,16 +94,30 @@ public class ScriptService {
                 .type(request.type())
                 .triggerEvent(request.triggerEvent())
                 .triggerEntity(request.triggerEntity())
+                .scheduleCron(request.scheduleCron())
+                .scheduleTimezone(request.scheduleTimezone())
+                .isDeterministic(request.isDeterministic())
                 .isActive(request.isActive())
                 .createdBy(request.createdBy())
                 .build();
         
-        return scriptRepository.save(script);
+        Script saved = scriptRepository.save(script);
+        scriptTriggerChanged(saved.getCompanyId(), saved.getTriggerEvent(), saved.getTriggerEntity());
+        updateSchedule(saved);
+        if (saved.getType() == ScriptType.LIBRARY) {
+            libraryChanged(saved.getCompanyId(), saved.getName());
+        }
+        precompile(saved);
+        return saved;
     }
     
     @Transactional
     public Optional<Script> update(UUID id, UpdateScriptRequest request) {
         return scriptRepository.findById(id).map(script -> {
+            // The script may move to another trigger; both old and new entries are stale
+            scriptTriggerChanged(script.getCompanyId(), script.getTriggerEvent(), script.getTriggerEntity());
+            boolean wasLibrary = script.getType() == ScriptType.LIBRARY;
+            String previousName = script.getName();
             if (request.name() != null) {
                 script.setName(request.name());
             }
@@ -89,21 +136,58 @@ public class ScriptService {
             if (request.triggerEntity() != null) {
                 script.setTriggerEntity(request.triggerEntity());
             }
+            if (request.scheduleCron() != null) {
+                script.setScheduleCron(request.scheduleCron().isBlank() ? null : request.scheduleCron());
+            }
+            if (request.scheduleTimezone() != null) {
+                script.setScheduleTimezone(request.scheduleTimezone().isBlank() ? null : request.scheduleTimezone());
+            }
+            if (request.isDeterministic() != null) {
+                script.setDeterministic(request.isDeterministic());
+            }
             if (request.isActive() != null) {
                 script.setActive(request.isActive());
             }
+            ScriptScheduleStore.validate(script.getTriggerEvent(), script.getScheduleCron(), script.getScheduleTimezone());
             script.setUpdatedBy(request.updatedBy());
-            return scriptRepository.save(script);
+            boolean isLibrary = script.getType() == ScriptType.LIBRARY;
+            if (request.code() != null || request.type() != null
+                    || isLibrary && (request.name() != null || request.triggerEvent() != null)) {
+                validateCode(script.getCompanyId(), script.getName(), script.getType(), script.getTriggerEvent(), script.getCode());
+            }
+            if (wasLibrary && (!isLibrary || !script.isActive() || !script.getName().equals(previousName))) {
+                requireNotImported(script.getCompanyId(), previousName, script.getId());
+            }
+            Script saved = scriptRepository.save(script);
+            scriptTriggerChanged(saved.getCompanyId(), saved.getTriggerEvent(), saved.getTriggerEntity());
+            updateSchedule(saved);
+            jsEngine.evict(saved.getId());
+            resultCache.evict(saved.getId());
+            if (wasLibrary || isLibrary) {
+                libraryChanged(saved.getCompanyId(), previousName);
+            }
+            precompile(saved);
+            return saved;
         });
     }
     
     @Transactional
     public boolean delete(UUID id) {
-        if (scriptRepository.existsById(id)) {
-            scriptRepository.deleteById(id);
+        return scriptRepository.findById(id).map(script -> {
+            boolean library = script.getType() == ScriptType.LIBRARY;
+            if (library) {
+                requireNotImported(script.getCompanyId(), script.getName(), id);
+            }
+            scriptRepository.delete(script);
+            scriptTriggerChanged(script.getCompanyId(), script.getTriggerEvent(), script.getTriggerEntity());
+            jsEngine.evict(id);
+            resultCache.evict(id);
+            statsService.evict(id);
+            if (library) {
+                libraryChanged(script.getCompanyId(), script.getName());
+            }
             return true;
-        }
-        return false;
+        }).orElse(false);
     }
     
     @Transactional
@@ -114,10 +198,16 @@ public class ScriptService {
     @Transactional
     public ScriptExecutionResult execute(UUID scriptId, Map<String, Object> input, UUID executedBy,
                                          String authToken, String companyId) {
+        return execute(scriptId, input, executedBy, authToken, companyId, false);
+    }
+
+    @Transactional
+    public ScriptExecutionResult execute(UUID scriptId, Map<String, Object> input, UUID executedBy,
+                                         String authToken, String companyId, boolean profile) {
         Script script = scriptRepository.findById(scriptId)
                 .orElseThrow(() -> new IllegalArgumentException("Script not found: " + scriptId));
         
-        return executeScript(script, input, executedBy, authToken, companyId);
+        return executeScript(script, input, executedBy, authToken, companyId, profile);
     }
     
     @Transactional
@@ -128,28 +218,73 @@ public class ScriptService {
     @Transactional
     public ScriptExecutionResult executeScript(Script script, Map<String, Object> input, UUID executedBy,
                                                 String authToken, String companyId) {
-        log.info("Executing script: {} ({})", script.getName(), script.getId());
+        return executeScript(script, input, executedBy, authToken, companyId, false);
+    }
+
+    /**
+     * @param profile run with the CPU sampler attached; the profile is returned and stored
+     *                with the execution record. Profiled runs bypass the result cache.
+     */
+    @Transactional
+    public ScriptExecutionResult executeScript(Script script, Map<String, Object> input, UUID executedBy,
+                                                String authToken, String companyId, boolean profile) {
+        return executeScript(script, input, executedBy, authToken, companyId, profile, null, null);
+    }
+    
+    /**
+     * @param deadlineNanos stops the run at this {@link System#nanoTime()} value if not null
+     * @param recorded set by whoever records the run first; if the caller gave up waiting and
+     *                 recorded it as cancelled, the run writes no audit record or stats of its own
+     */
+    private ScriptExecutionResult executeScript(Script script, Map<String, Object> input, UUID executedBy,
+                                                String authToken, String companyId, boolean profile,
+                                                Long deadlineNanos, AtomicBoolean recorded) {
+        requireRunnable(script);
+        log.info("Executing script: {} ({}){}", script.getName(), script.getId(), profile ? " with profiling" : "");
+        
+        OffsetDateTime startedAt = OffsetDateTime.now();
         
-        // Create execution record
+        // Deterministic scripts answer repeated inputs from the result cache without a sandbox
+        long lookupStart = System.nanoTime();
+        ScriptResultCache.Key cacheKey = profile ? null : resultCache.key(script, input);
+        ScriptResultCache.Hit hit = resultCache.get(cacheKey);
+        String tenant = companyId != null ? companyId : String.valueOf(script.getCompanyId());
+        GraalJSEngine.ExecutionResult result;
+        Map<String, Object> executionProfile = null;
+        if (profile) {
+            GraalJSEngine.ProfiledResult profiled = jsEngine.executeProfiled(
+                    script.getId(), script.getVersion(), script.getCode(), input, authToken, tenant);
+            result = profiled.result();
+            executionProfile = profiled.profile();
+        } else if (hit != null) {
+            result = GraalJSEngine.ExecutionResult.success(hit.result(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lookupStart));
+        } else {
+            // Execute in sandbox with auth context for ERP.query/mutate; runs without an explicit
+            // company (triggers) are attributed to the script's company for pooling and quotas
+            result = deadlineNanos != null
+                    ? jsEngine.execute(script.getId(), script.getVersion(), script.getCode(), input, authToken, tenant, deadlineNanos)
+                    : jsEngine.execute(script.getId(), script.getVersion(), script.getCode(), input, authToken, tenant);
+            if (result.success()) {
+                resultCache.put(cacheKey, result.result());
+            }
+        }
+        
+        // One completed execution record per run, written by the audit pipeline
         ScriptExecution execution = ScriptExecution.builder()
+                .id(UUID.randomUUID())
                 .scriptId(script.getId())
                 .companyId(script.getCompanyId())
                 .executedBy(executedBy)
-                .inputData(serializeJson(input))
-                .status(ExecutionStatus.RUNNING)
+                .startedAt(startedAt)
+                .completedAt(OffsetDateTime.now())
+                .executionTimeMs(result.executionTimeMs())
+                .hostCalls(result.hostCalls().calls())
+                .hostWaitMs(result.hostCalls().waitMs())
                 .build();
-        execution = executionRepository.save(execution);
-        
-        // Execute in sandbox with auth context for ERP.query/mutate
-        GraalJSEngine.ExecutionResult result = jsEngine.execute(script.getCode(), input, authToken, companyId);
-        
-        // Update execution record
-        execution.setCompletedAt(OffsetDateTime.now());
-        execution.setExecutionTimeMs(result.executionTimeMs());
         
         if (result.success()) {
             execution.setStatus(ExecutionStatus.SUCCESS);
-            execution.setOutputData(serializeJson(result.result()));
         } else if (result.timeout()) {
             execution.setStatus(ExecutionStatus.TIMEOUT);
             execution.setErrorMessage(result.error());
@@ -158,17 +293,83 @@ public class ScriptService {
             execution.setErrorMessage(result.error());
         }
         
-        executionRepository.save(execution);
+        if (recorded == null || recorded.compareAndSet(false, true)) {
+            auditWriter.record(execution, input, result.success() ? result.result() : null, executionProfile);
+            statsService.record(script.getId(), execution.getStatus(), result.executionTimeMs());
+        }
         
         return new ScriptExecutionResult(
                 execution.getId(),
                 result.success(),
                 result.result(),
                 result.error(),
-                result.executionTimeMs()
+                result.executionTimeMs(),
+                result.hostCalls().calls(),
+                result.hostCalls().waitMs(),
+                executionProfile
         );
     }
     
+    /**
+     * Run a script once per input, e.g. for bulk imports. The script is loaded once, the
+     * inputs run in parallel on warmed sandboxes, and the audit records are written in bulk.
+     * Not transactional: a large batch must not hold a database transaction open.
+     */
+    public List<ScriptExecutionResult> executeBatch(UUID scriptId, List<Map<String, Object>> inputs, UUID executedBy,
+                                                    String authToken, String companyId) {
+        Script script = scriptRepository.findById(scriptId)
+                .orElseThrow(() -> new IllegalArgumentException("Script not found: " + scriptId));
+        return executeBatch(script, inputs, executedBy, authToken, companyId);
+    }
+    
+    public List<ScriptExecutionResult> executeBatch(Script script, List<Map<String, Object>> inputs, UUID executedBy,
+                                                    String authToken, String companyId) {
+        requireRunnable(script);
+        if (inputs.size() > batchMaxItems) {
+            throw new IllegalArgumentException("A batch may contain at most " + batchMaxItems + " inputs");
+        }
+        log.info("Executing script batch: {} ({}) with {} inputs", script.getName(), script.getId(), inputs.size());
+        
+        OffsetDateTime startedAt = OffsetDateTime.now();
+        String tenant = companyId != null ? companyId : String.valueOf(script.getCompanyId());
+        List<GraalJSEngine.ExecutionResult> results = jsEngine.executeBatch(
+                script.getId(), script.getVersion(), script.getCode(), inputs, authToken, tenant);
+        OffsetDateTime completedAt = OffsetDateTime.now();
+        
+        List<ScriptExecution> executions = new ArrayList<>(results.size());
+        List<Object> outputs = new ArrayList<>(results.size());
+        List<ScriptExecutionResult> batchResults = new ArrayList<>(results.size());
+        for (GraalJSEngine.ExecutionResult result : results) {
+            ScriptExecution execution = ScriptExecution.builder()
+                    .id(UUID.randomUUID())
+                    .scriptId(script.getId())
+                    .companyId(script.getCompanyId())
+                    .executedBy(executedBy)
+                    .status(statusOf(result))
+                    .errorMessage(result.success() ? null : result.error())
+                    .startedAt(startedAt)
+                    .completedAt(completedAt)
+                    .executionTimeMs(result.executionTimeMs())
+                    .hostCalls(result.hostCalls().calls())
+                    .hostWaitMs(result.hostCalls().waitMs())
+                    .build();
+            executions.add(execution);
+            outputs.add(result.success() ? result.result() : null);
+            statsService.record(script.getId(), execution.getStatus(), result.executionTimeMs());
+            batchResults.add(new ScriptExecutionResult(execution.getId(), result.success(), result.result(),
+                    result.error(), result.executionTimeMs(), result.hostCalls().calls(), result.hostCalls().waitMs(), null));
+        }
+        auditWriter.recordBatch(executions, inputs, outputs);
+        return batchResults;
+    }
+    
+    private static ExecutionStatus statusOf(GraalJSEngine.ExecutionResult result) {
+        if (result.success()) {
+            return ExecutionStatus.SUCCESS;
+        }
+        return result.timeout() ? ExecutionStatus.TIMEOUT : ExecutionStatus.FAILED;
+    }
+    
     @Transactional
     public List<ScriptExecutionResult> executeTrigger(
             UUID companyId,
@@ -177,36 +378,245 @@ public class ScriptService {
             Map<String, Object> data,
             UUID executedBy
     ) {
-        List<Script> scripts = scriptRepository.findActiveByTrigger(companyId, event, entity);
-        
-        return scripts.stream()
-                .map(script -> executeScript(script, data, executedBy))
+        return executeTrigger(companyId, event, entity, data, executedBy, null);
+    }
+    
+    /**
+     * Run all active scripts for a trigger.
+     *
+     * <p>BEFORE_* validation/transformation scripts form a deterministic sequential pipeline
+     * (ordered by creation): each transformation's output becomes the next script's input.
+     * All other scripts (AFTER_* events, automations) fan out in parallel on the same input.
+     * Every script is stopped at the overall deadline; fan-out scripts still running then are
+     * recorded as CANCELLED instead of with their own outcome. Scripts beyond the company's
+     * concurrency quota wait for a free slot until the deadline rather than failing.
+     * Results are returned in pipeline order followed by the fan-out scripts.
+     */
+    @Transactional
+    public List<ScriptExecutionResult> executeTrigger(
+            UUID companyId,
+            TriggerEvent event,
+            String entity,
+            Map<String, Object> data,
+            UUID executedBy,
+            Long deadlineMs
+    ) {
+        List<Script> scripts = findByTrigger(companyId, event, entity).stream()
+                .sorted(Comparator.comparing(Script::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Script::getId))
                 .toList();
+        if (scripts.isEmpty()) {
+            return List.of();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                deadlineMs != null ? deadlineMs : triggerDeadlineMs);
+        
+        List<Script> pipeline = scripts.stream().filter(script -> isPipelined(event, script)).toList();
+        List<Script> fanOut = scripts.stream().filter(script -> !isPipelined(event, script)).toList();
+        
+        // Start the independent scripts first so they overlap with the pipeline
+        List<AtomicBoolean> recorded = fanOut.stream().map(script -> new AtomicBoolean()).toList();
+        List<CompletableFuture<ScriptExecutionResult>> futures = new ArrayList<>(fanOut.size());
+        for (int i = 0; i < fanOut.size(); i++) {
+            Script script = fanOut.get(i);
+            AtomicBoolean scriptRecorded = recorded.get(i);
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> executeScript(script, data, executedBy, null, null, false, deadline, scriptRecorded),
+                    triggerExecutor));
+        }
+        
+        List<ScriptExecutionResult> results = new ArrayList<>(scripts.size());
+        Map<String, Object> current = data;
+        for (Script script : pipeline) {
+            if (System.nanoTime() >= deadline) {
+                results.add(recordCancelled(script, current, executedBy, "Trigger deadline exceeded"));
+                continue;
+            }
+            ScriptExecutionResult result = executeScript(script, current, executedBy, null, null, false, deadline, null);
+            results.add(result);
+            if (result.success() && script.getType() == ScriptType.TRANSFORMATION
+                    && result.result() instanceof Map<?, ?> transformed) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> next = (Map<String, Object>) transformed;
+                current = next;
+            }
+        }
+        
+        for (int i = 0; i < fanOut.size(); i++) {
+            CompletableFuture<ScriptExecutionResult> future = futures.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.add(future.get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                results.add(abandon(future, recorded.get(i), fanOut.get(i), data, executedBy, "Trigger deadline exceeded"));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Trigger script {} failed", fanOut.get(i).getId(), cause);
+                results.add(recordCancelled(fanOut.get(i), data, executedBy, cause.getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(abandon(future, recorded.get(i), fanOut.get(i), data, executedBy, "Trigger interrupted"));
+            }
+        }
+        return results;
+    }
+    
+    private boolean isPipelined(TriggerEvent event, Script script) {
+        boolean beforeEvent = event != null && event.name().startsWith("BEFORE_");
+        return beforeEvent && (script.getType() == ScriptType.VALIDATION || script.getType() == ScriptType.TRANSFORMATION);
+    }
+    
+    /**
+     * Stop waiting for a fan-out run and record it as cancelled, unless it already recorded its
+     * own outcome. The run itself is stopped by the engine at the trigger's deadline.
+     */
+    private ScriptExecutionResult abandon(CompletableFuture<ScriptExecutionResult> future, AtomicBoolean recorded,
+                                          Script script, Map<String, Object> input, UUID executedBy, String reason) {
+        if (recorded.compareAndSet(false, true)) {
+            future.cancel(true);
+            return recordCancelled(script, input, executedBy, reason);
+        }
+        // Finished just now and about to hand over its result
+        return future.join();
+    }
+    
+    private ScriptExecutionResult recordCancelled(Script script, Map<String, Object> input, UUID executedBy, String reason) {
+        OffsetDateTime now = OffsetDateTime.now();
+        ScriptExecution execution = ScriptExecution.builder()
+                .id(UUID.randomUUID())
+                .scriptId(script.getId())
+                .companyId(script.getCompanyId())
+                .executedBy(executedBy)
+                .status(ExecutionStatus.CANCELLED)
+                .errorMessage(reason)
+                .startedAt(now)
+                .completedAt(now)
+                .executionTimeMs(0L)
+                .hostCalls(0)
+                .hostWaitMs(0L)
+                .build();
+        auditWriter.record(execution, input, null);
+        statsService.record(script.getId(), ExecutionStatus.CANCELLED, 0);
+        return new ScriptExecutionResult(execution.getId(), false, null, reason, 0, 0, 0, null);
     }
     
-    public Page<ScriptExecution> getExecutionHistory(UUID scriptId, Pageable pageable) {
-        return executionRepository.findByScriptId(scriptId, pageable);
+    @PreDestroy
+    void shutdownTriggerExecutor() {
+        triggerExecutor.shutdown();
+    }
+    
+    /**
+     * Recent executions of a script, newest first per the pageable's sort. Only the last
+     * {@code scripting.history.window-days} are searched so partition pruning applies; no
+     * total count is computed.
+     */
+    public Slice<ScriptExecution> getExecutionHistory(UUID scriptId, Pageable pageable) {
+        OffsetDateTime since = OffsetDateTime.now().minusDays(historyWindowDays);
+        return executionRepository.findByScriptIdAndStartedAtGreaterThanEqual(scriptId, since, pageable);
     }
     
     public ScriptStats getStats(UUID scriptId) {
-        long successCount = executionRepository.countByScriptIdAndStatus(scriptId, ExecutionStatus.SUCCESS);
-        long failedCount = executionRepository.countByScriptIdAndStatus(scriptId, ExecutionStatus.FAILED);
-        long timeoutCount = executionRepository.countByScriptIdAndStatus(scriptId, ExecutionStatus.TIMEOUT);
-        Double avgTime = executionRepository.getAverageExecutionTime(scriptId);
-        
-        return new ScriptStats(successCount, failedCount, timeoutCount, avgTime != null ? avgTime : 0.0);
+        return statsService.getStats(scriptId);
+    }
+    
+    /**
+     * Parse the saved version into the engine's source cache, so its first run does not pay
+     * for parsing. The version is assigned on flush, hence the flush first. The source is only
+     * cached once the transaction commits: after a rollback that version does not exist.
+     * Libraries are compiled by the engine when first imported.
+     */
+    private void precompile(Script script) {
+        if (script.getType() == ScriptType.LIBRARY) {
+            return;
+        }
+        scriptRepository.flush();
+        UUID id = script.getId();
+        int version = script.getVersion();
+        String code = script.getCode();
+        Runnable compile = () -> {
+            try {
+                jsEngine.compile(id, version, code);
+            } catch (RuntimeException e) {
+                // The code was validated already; a failure here only costs the first run the parse
+                log.warn("Could not precompile script {}: {}", id, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    compile.run();
+                }
+            });
+        } else {
+            compile.run();
+        }
+    }
+    
+    private void updateSchedule(Script script) {
+        if (ScriptScheduleStore.isScheduled(script)) {
+            // The schedule row references the script, which must be written first
+            scriptRepository.flush();
+        }
+        scheduleStore.schedule(script);
+    }
+    
+    /**
+     * Check the code parses (as an ES module for libraries) and imports only existing libraries.
+     */
+    private void validateCode(UUID companyId, String name, ScriptType type, TriggerEvent triggerEvent, String code) {
+        if (type == ScriptType.LIBRARY) {
+            ScriptLibraryService.validateName(name);
+            if (triggerEvent != null) {
+                throw new IllegalArgumentException("Library scripts cannot have a trigger");
+            }
+            jsEngine.validateLibrary(code);
+        } else {
+            jsEngine.validate(code);
+        }
+        libraryService.validateImports(companyId, code);
     }
     
-    private String serializeJson(Object data) {
-        if (data == null) return null;
-        try {
-            return objectMapper.writeValueAsString(data);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to serialize data", e);
-            return null;
+    private static void requireRunnable(Script script) {
+        if (script.getType() == ScriptType.LIBRARY) {
+            throw new IllegalArgumentException("Library scripts are imported by other scripts and cannot be executed: "
+                    + script.getName());
         }
     }
     
+    /**
+     * A library that is renamed, deactivated, deleted or no longer a library must not leave
+     * scripts with an import that cannot be resolved.
+     */
+    private void requireNotImported(UUID companyId, String libraryName, UUID libraryId) {
+        List<String> importers = libraryService.dependents(companyId, libraryName).stream()
+                .filter(script -> !script.getId().equals(libraryId))
+                .map(Script::getName)
+                .sorted()
+                .toList();
+        if (!importers.isEmpty()) {
+            throw new IllegalArgumentException("Library " + libraryName + " is imported by: " + String.join(", ", importers));
+        }
+    }
+    
+    /**
+     * A library was saved or deleted: reload the company's libraries on every replica and drop
+     * the cached results of the scripts that import it. Those are keyed by library revision
+     * anyway; evicting them just frees the space right away.
+     */
+    private void libraryChanged(UUID companyId, String libraryName) {
+        libraryService.invalidate(companyId);
+        changeNotifier.publishLibrary(companyId, libraryName);
+        for (Script dependent : libraryService.dependents(companyId, libraryName)) {
+            resultCache.evict(dependent.getId());
+        }
+    }
+    
+    private void scriptTriggerChanged(UUID companyId, TriggerEvent event, String entity) {
+        triggerIndex.invalidate(companyId, event, entity);
+        changeNotifier.publish(companyId, event, entity);
+    }
+    
     public record CreateScriptRequest(
             UUID companyId,
             String name,
@@ -215,6 +625,9 @@ public class ScriptService {
             ScriptType type,
             TriggerEvent triggerEvent,
             String triggerEntity,
+            String scheduleCron,
+            String scheduleTimezone,
+            boolean isDeterministic,
             boolean isActive,
             UUID createdBy
     ) {}
@@ -226,6 +639,9 @@ public class ScriptService {
             ScriptType type,
             TriggerEvent triggerEvent,
             String triggerEntity,
+            String scheduleCron,
+            String scheduleTimezone,
+            Boolean isDeterministic,
             Boolean isActive,
             UUID updatedBy
     ) {}
@@ -235,13 +651,23 @@ public class ScriptService {
             boolean success,
             Object result,
             String error,
-            long executionTimeMs
+            long executionTimeMs,
+            int hostCalls,
+            long hostWaitMs,
+            Map<String, Object> profile
     ) {}
     
     public record ScriptStats(
             long successCount,
             long failedCount,
             long timeoutCount,
-            double averageExecutionTimeMs
+            double averageExecutionTimeMs,
+            double p50ExecutionTimeMs,
+            double p95ExecutionTimeMs,
+            double p99ExecutionTimeMs,
+            long cancelledCount,
+            long recentExecutions,
+            double executionsPerMinute,
+            int recentWindowMinutes
     ) {}
 }
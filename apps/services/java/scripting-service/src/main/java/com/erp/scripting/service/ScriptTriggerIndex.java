@@ -0,0 +1,84 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.entity.Script.TriggerEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of active scripts per (company, trigger event, trigger entity).
+ *
+ * <p>Most trigger events match no script at all, so empty results are cached too: such a
+ * trigger costs a hash lookup instead of a database round trip. Entries are invalidated
+ * precisely on script create/update/delete, across replicas via {@link ScriptChangeNotifier},
+ * and expire after a while as a safety net against missed notifications.
+ */
+@Component
+public class ScriptTriggerIndex {
+
+    private Cache<TriggerKey, List<Script>> index;
+
+    @Value("${scripting.trigger-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scripting.trigger-index.max-size:10000}")
+    private long maxSize;
+
+    @Value("${scripting.trigger-index.expire-after-write-minutes:10}")
+    private long expireAfterWriteMinutes;
+
+    @PostConstruct
+    void init() {
+        this.index = Caffeine.newBuilder()
+                .maximumSize(enabled ? maxSize : 0)
+                .expireAfterWrite(Duration.ofMinutes(expireAfterWriteMinutes))
+                .build();
+    }
+
+    public List<Script> find(UUID companyId, TriggerEvent event, String entity, Supplier<List<Script>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return index.get(new TriggerKey(companyId, event, entity), key -> List.copyOf(loader.get()));
+    }
+
+    /**
+     * Invalidate the entry for a trigger now and again once the current transaction commits,
+     * so a concurrent lookup cannot re-populate it with pre-commit data.
+     */
+    public void invalidate(UUID companyId, TriggerEvent event, String entity) {
+        if (companyId == null || event == null) {
+            return;
+        }
+        TriggerKey key = new TriggerKey(companyId, event, entity);
+        index.invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    index.invalidate(key);
+                }
+            });
+        }
+    }
+
+    public void invalidate(Script script) {
+        invalidate(script.getCompanyId(), script.getTriggerEvent(), script.getTriggerEntity());
+    }
+
+    public void invalidateAll() {
+        index.invalidateAll();
+    }
+
+    public record TriggerKey(UUID companyId, TriggerEvent event, String entity) {}
+}
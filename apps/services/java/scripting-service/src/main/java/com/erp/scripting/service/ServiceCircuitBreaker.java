@@ -0,0 +1,131 @@
+package com.erp.scripting.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for one target service of {@link DataProxyService}.
+ *
+ * <p>Outcomes of the last {@code windowSize} calls are kept in a ring; a call fails if the
+ * request failed, the service answered with a 5xx, or it took longer than the slow-call
+ * threshold. Once at least {@code minimumCalls} are recorded and the failure rate reaches
+ * the threshold, the breaker opens and calls fail immediately instead of waiting for the
+ * read timeout. After {@code openDuration} a few probe calls are let through (half-open);
+ * if they all succeed the breaker closes again, otherwise it stays open for another period.
+ */
+@Slf4j
+final class ServiceCircuitBreaker {
+
+    enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final String service;
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private State state = State.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openUntil;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    ServiceCircuitBreaker(String service, int windowSize, int minimumCalls, int failureRateThreshold,
+                          long slowCallMs, long openMs, int halfOpenCalls) {
+        this.service = service;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * @return true if a call may be sent now; every permitted call must be followed by
+     *         {@link #onResult} or {@link #release}
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openUntil < 0) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+            probesStarted = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= halfOpenCalls) {
+                return false;
+            }
+            probesStarted++;
+        }
+        return true;
+    }
+
+    /**
+     * Give back a permit whose call was never sent (e.g. no free connection slot).
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN && probesStarted > 0) {
+            probesStarted--;
+        }
+    }
+
+    synchronized void onResult(boolean failed, long durationNanos) {
+        boolean failure = failed || durationNanos > slowCallNanos;
+        switch (state) {
+            case HALF_OPEN -> {
+                if (failure) {
+                    open();
+                } else if (++probesSucceeded >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                    next = 0;
+                    recorded = 0;
+                    failures = 0;
+                }
+            }
+            case CLOSED -> {
+                if (recorded == window.length && window[next]) {
+                    failures--;
+                }
+                window[next] = failure;
+                next = (next + 1) % window.length;
+                recorded = Math.min(recorded + 1, window.length);
+                if (failure) {
+                    failures++;
+                }
+                if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+                    open();
+                }
+            }
+            case OPEN -> {
+                // Late result of a call sent before the breaker opened
+            }
+        }
+    }
+
+    synchronized State state() {
+        if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private void open() {
+        transition(State.OPEN);
+        openUntil = System.nanoTime() + openNanos;
+    }
+
+    private void transition(State newState) {
+        if (state != newState) {
+            log.warn("Circuit breaker for {} changed from {} to {}", service, state, newState);
+            state = newState;
+        }
+    }
+}
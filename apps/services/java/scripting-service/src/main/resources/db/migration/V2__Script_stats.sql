@@ -0,0 +1,26 @@
+-- V2__Script_stats.sql
+-- Rolling per-script execution aggregates, so stats no longer scan script_executions
+
+CREATE TABLE script_stats (
+    script_id UUID PRIMARY KEY REFERENCES scripts(id) ON DELETE CASCADE,
+    success_count BIGINT NOT NULL DEFAULT 0,
+    failed_count BIGINT NOT NULL DEFAULT 0,
+    timeout_count BIGINT NOT NULL DEFAULT 0,
+    cancelled_count BIGINT NOT NULL DEFAULT 0,
+    -- Sum of execution times of successful runs (for the mean)
+    success_time_ms BIGINT NOT NULL DEFAULT 0,
+    -- Latency histogram of successful runs; bucket bounds are defined by the service
+    histogram BIGINT[] NOT NULL DEFAULT '{}',
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+-- Seed counts and means from existing history; percentiles start from new executions
+INSERT INTO script_stats (script_id, success_count, failed_count, timeout_count, cancelled_count, success_time_ms)
+SELECT script_id,
+       COUNT(*) FILTER (WHERE status = 'SUCCESS'),
+       COUNT(*) FILTER (WHERE status = 'FAILED'),
+       COUNT(*) FILTER (WHERE status = 'TIMEOUT'),
+       COUNT(*) FILTER (WHERE status = 'CANCELLED'),
+       COALESCE(SUM(execution_time_ms) FILTER (WHERE status = 'SUCCESS'), 0)
+FROM script_executions
+GROUP BY script_id;
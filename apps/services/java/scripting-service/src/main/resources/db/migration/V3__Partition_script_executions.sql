@@ -0,0 +1,65 @@
+-- V3__Partition_script_executions.sql
+-- Monthly range partitioning of the execution audit log on started_at.
+-- Partitions are named script_executions_pYYYYMM; ExecutionRetentionJob creates upcoming
+-- months and drops expired ones. Rows outside all partitions land in the default partition.
+
+ALTER TABLE script_executions RENAME TO script_executions_legacy;
+ALTER TABLE script_executions_legacy RENAME CONSTRAINT script_executions_pkey TO script_executions_legacy_pkey;
+ALTER INDEX idx_executions_script RENAME TO idx_executions_legacy_script;
+ALTER INDEX idx_executions_company RENAME TO idx_executions_legacy_company;
+ALTER INDEX idx_executions_status RENAME TO idx_executions_legacy_status;
+ALTER INDEX idx_executions_started RENAME TO idx_executions_legacy_started;
+
+CREATE TABLE script_executions (
+    id UUID NOT NULL DEFAULT gen_random_uuid(),
+    script_id UUID NOT NULL REFERENCES scripts(id) ON DELETE CASCADE,
+    company_id UUID NOT NULL,
+    executed_by UUID,
+    input_data JSONB,
+    output_data JSONB,
+    status VARCHAR(20) NOT NULL DEFAULT 'RUNNING',
+    error_message TEXT,
+    execution_time_ms BIGINT,
+    started_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    completed_at TIMESTAMPTZ,
+    -- The partition key must be part of every unique constraint
+    PRIMARY KEY (id, started_at)
+) PARTITION BY RANGE (started_at);
+
+CREATE TABLE script_executions_default PARTITION OF script_executions DEFAULT;
+
+-- One partition per month from the oldest existing execution up to two months ahead
+DO $$
+DECLARE
+    month_start DATE := date_trunc('month', COALESCE(
+            (SELECT MIN(started_at) FROM script_executions_legacy), NOW()))::date;
+    last_month DATE := (date_trunc('month', NOW()) + INTERVAL '2 months')::date;
+BEGIN
+    WHILE month_start <= last_month LOOP
+        EXECUTE format(
+            'CREATE TABLE script_executions_p%s PARTITION OF script_executions FOR VALUES FROM (%L) TO (%L)',
+            to_char(month_start, 'YYYYMM'), month_start, (month_start + INTERVAL '1 month')::date);
+        month_start := (month_start + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO script_executions
+SELECT id, script_id, company_id, executed_by, input_data, output_data, status,
+       error_message, execution_time_ms, started_at, completed_at
+FROM script_executions_legacy;
+
+DROP TABLE script_executions_legacy;
+
+-- History pages filter by script or company and sort by time
+CREATE INDEX idx_executions_script_started ON script_executions(script_id, started_at DESC);
+CREATE INDEX idx_executions_company_started ON script_executions(company_id, started_at DESC);
+CREATE INDEX idx_executions_status ON script_executions(status);
+
+-- Large payloads compress noticeably better and faster with lz4 (Postgres 14+ built with lz4)
+DO $$
+BEGIN
+    ALTER TABLE script_executions ALTER COLUMN input_data SET COMPRESSION lz4;
+    ALTER TABLE script_executions ALTER COLUMN output_data SET COMPRESSION lz4;
+EXCEPTION WHEN OTHERS THEN
+    RAISE NOTICE 'lz4 column compression not available, keeping default: %', SQLERRM;
+END $$;
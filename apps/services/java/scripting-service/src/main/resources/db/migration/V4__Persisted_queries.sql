@@ -0,0 +1,18 @@
+-- V4__Persisted_queries.sql
+-- Named GraphQL queries registered per company, executed by id through the data proxy
+
+CREATE TABLE persisted_queries (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    company_id UUID NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    service VARCHAR(50) NOT NULL,
+    -- Hex SHA-256 of the document, as used by automatic persisted queries downstream
+    sha256 CHAR(64) NOT NULL,
+    document TEXT NOT NULL,
+    created_by UUID,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    UNIQUE(company_id, name)
+);
+
+CREATE INDEX idx_persisted_queries_hash ON persisted_queries(company_id, sha256);
@@ -0,0 +1,17 @@
+-- V5__Scheduled_scripts.sql
+-- Cron schedules for SCHEDULED scripts and the due-run table the replicas claim work from
+
+ALTER TABLE scripts ADD COLUMN schedule_cron VARCHAR(120);
+ALTER TABLE scripts ADD COLUMN schedule_timezone VARCHAR(64);
+
+CREATE TABLE script_schedules (
+    script_id UUID PRIMARY KEY REFERENCES scripts(id) ON DELETE CASCADE,
+    -- Next occurrence of the cron expression, including the script's jitter offset
+    next_run_at TIMESTAMPTZ NOT NULL,
+    last_run_at TIMESTAMPTZ,
+    -- Replica currently running the script; the lease expires if that replica dies
+    lease_owner VARCHAR(100),
+    lease_until TIMESTAMPTZ
+);
+
+CREATE INDEX idx_script_schedules_next_run ON script_schedules(next_run_at);
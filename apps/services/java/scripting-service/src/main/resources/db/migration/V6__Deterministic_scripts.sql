@@ -0,0 +1,4 @@
+-- V6__Deterministic_scripts.sql
+-- Scripts whose result depends on the input only; their results are cached per input
+
+ALTER TABLE scripts ADD COLUMN is_deterministic BOOLEAN NOT NULL DEFAULT FALSE;
@@ -0,0 +1,4 @@
+-- V7__Execution_profiles.sql
+-- CPU sampler profile of runs started with profiling enabled
+
+ALTER TABLE script_executions ADD COLUMN profile JSONB;
@@ -0,0 +1,5 @@
+-- V8__Execution_host_calls.sql
+-- ERP requests of a run and the time the script spent waiting on them
+
+ALTER TABLE script_executions ADD COLUMN host_calls INTEGER;
+ALTER TABLE script_executions ADD COLUMN host_wait_ms BIGINT;
@@ -0,0 +1,61 @@
+package com.erp.scripting;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * Sets the {@code @Value} fields of a component built with {@code new} to the defaults in
+ * their {@code ${key:default}} expressions, as Spring would without configuration, so unit
+ * tests only have to name the settings they care about.
+ */
+public final class TestValues {
+
+    private TestValues() {
+    }
+
+    public static <T> T withDefaults(T target) {
+        return withDefaults(target, Map.of());
+    }
+
+    /**
+     * @param overrides field name to value, applied after the defaults
+     */
+    public static <T> T withDefaults(T target, Map<String, Object> overrides) {
+        for (Class<?> type = target.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                Value value = field.getAnnotation(Value.class);
+                if (value == null) {
+                    continue;
+                }
+                String expression = value.value();
+                int colon = expression.indexOf(':');
+                if (!expression.startsWith("${") || colon < 0) {
+                    continue;
+                }
+                String fallback = expression.substring(colon + 1, expression.length() - 1);
+                ReflectionTestUtils.setField(target, field.getName(), convert(fallback, field.getType()));
+            }
+        }
+        overrides.forEach((name, value) -> ReflectionTestUtils.setField(target, name, value));
+        return target;
+    }
+
+    private static Object convert(String value, Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return Integer.parseInt(value);
+        }
+        if (type == long.class || type == Long.class) {
+            return Long.parseLong(value);
+        }
+        if (type == double.class || type == Double.class) {
+            return Double.parseDouble(value);
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return Boolean.parseBoolean(value);
+        }
+        return value;
+    }
+}
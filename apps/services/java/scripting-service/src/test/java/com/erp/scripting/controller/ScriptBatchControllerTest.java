@@ -0,0 +1,119 @@
+package com.erp.scripting.controller;
+
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.service.ScriptService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ScriptBatchController — NDJSON lines are run in chunks and answered one
+ * result line per input line, in order, with invalid lines reported in place.
+ */
+class ScriptBatchControllerTest {
+
+    private static final UUID SCRIPT_ID = UUID.randomUUID();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ScriptService scriptService;
+    private ScriptBatchController controller;
+    private final List<Integer> chunkSizes = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        scriptService = mock(ScriptService.class);
+        Script script = Script.builder().id(SCRIPT_ID).name("import").code("return input.n * 2;").build();
+        when(scriptService.findById(SCRIPT_ID)).thenReturn(Optional.of(script));
+        // Doubles each input's n, so every result can be matched to its line
+        when(scriptService.executeBatch(eq(script), anyList(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Map<String, Object>> inputs = invocation.getArgument(1);
+            chunkSizes.add(inputs.size());
+            return inputs.stream()
+                    .map(input -> new ScriptService.ScriptExecutionResult(
+                            UUID.randomUUID(), true, ((Number) input.get("n")).intValue() * 2, null, 1, 0, 0, null))
+                    .toList();
+        });
+        controller = new ScriptBatchController(scriptService, objectMapper);
+        ReflectionTestUtils.setField(controller, "chunkSize", 2);
+    }
+
+    private List<Map<String, Object>> run(String ndjson) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(ndjson.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(controller.executeBatch(SCRIPT_ID, null, null, "company-1", request, response));
+
+        assertEquals("application/x-ndjson", response.getContentType().split(";")[0]);
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (String line : response.getContentAsString(StandardCharsets.UTF_8).split("\n")) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> parsed = objectMapper.readValue(line, Map.class);
+            lines.add(parsed);
+        }
+        return lines;
+    }
+
+    @Test
+    void resultsKeepTheOrderOfTheInputLines() throws Exception {
+        List<Map<String, Object>> lines = run("""
+                {"n": 1}
+                {"n": 2}
+                {"n": 3}
+                {"n": 4}
+                {"n": 5}
+                """);
+
+        assertEquals(List.of(1, 2, 3, 4, 5), lines.stream().map(line -> line.get("line")).toList());
+        assertEquals(List.of(2, 4, 6, 8, 10), lines.stream().map(line -> line.get("result")).toList());
+        assertEquals(List.of(2, 2, 1), chunkSizes);
+    }
+
+    @Test
+    void invalidLinesAreReportedInPlace() throws Exception {
+        List<Map<String, Object>> lines = run("""
+                {"n": 1}
+                {"n":
+                [1, 2]
+
+                {"n": 3}
+                """);
+
+        assertEquals(List.of(1, 2, 3, 5), lines.stream().map(line -> line.get("line")).toList());
+        assertEquals(2, lines.get(0).get("result"));
+        assertEquals(false, lines.get(1).get("success"));
+        assertTrue(String.valueOf(lines.get(1).get("error")).startsWith("Invalid JSON"), lines.get(1).toString());
+        assertEquals("Each line must be a JSON object", lines.get(2).get("error"));
+        assertEquals(6, lines.get(3).get("result"));
+        // Only the valid lines reach the engine
+        assertEquals(2, chunkSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void unknownScriptIsABadRequest() throws Exception {
+        UUID unknown = UUID.randomUUID();
+        when(scriptService.findById(unknown)).thenReturn(Optional.empty());
+
+        ResponseEntity<Map<String, Object>> result = controller.executeBatch(unknown, null, null, null,
+                new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        assertEquals(400, result.getStatusCode().value());
+        verify(scriptService, never()).executeBatch(any(Script.class), anyList(), any(), any(), any());
+    }
+}
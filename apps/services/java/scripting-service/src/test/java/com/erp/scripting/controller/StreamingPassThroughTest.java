@@ -0,0 +1,186 @@
+package com.erp.scripting.controller;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for pass-through streaming of /api/data/query — downstream bytes and their
+ * Content-Encoding reach the client untouched, and the connection slot is held until the
+ * body is closed.
+ */
+class StreamingPassThroughTest {
+
+    private static final String BODY = "{\"data\":{\"products\":[{\"id\":\"1\"}]}}";
+
+    private HttpServer server;
+    private volatile int status = 200;
+    private volatile String contentType = "application/json";
+    private SimpleMeterRegistry meterRegistry;
+    private DataProxyService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                body = gzip(body);
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        meterRegistry = new SimpleMeterRegistry();
+        service = TestValues.withDefaults(new DataProxyService(new ObjectMapper(), null, meterRegistry, null),
+                Map.of("shopUrl", "http://127.0.0.1:" + server.getAddress().getPort(), "httpVersion", "HTTP_1_1"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("erp.proxy.inflight").tag("service", "shop").gauge().value();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    // ── Service ──────────────────────────────────────────────────────────────
+
+    @Nested
+    class Service {
+
+        @Test
+        void bodyIsHandedBackUnparsed() throws Exception {
+            try (DataProxyService.StreamedResponse streamed =
+                         service.streamGraphQL("shop", "{ products { id } }", null, null, null, null)) {
+                assertEquals("application/json", streamed.contentType());
+                assertNull(streamed.contentEncoding());
+                assertEquals(BODY.length(), streamed.contentLength());
+                assertEquals(BODY, new String(streamed.body().readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Test
+        void slotIsHeldUntilTheResponseIsClosed() throws Exception {
+            DataProxyService.StreamedResponse streamed =
+                    service.streamGraphQL("shop", "{ products { id } }", null, null, null, null);
+            assertEquals(1.0, inFlight());
+
+            streamed.close();
+
+            assertEquals(0.0, inFlight());
+        }
+
+        @Test
+        void failedResponsesReleaseTheSlotRightAway() {
+            status = 502;
+
+            RuntimeException failure = assertThrows(RuntimeException.class,
+                    () -> service.streamGraphQL("shop", "{ products { id } }", null, null, null, null));
+
+            assertTrue(failure.getMessage().contains("HTTP 502"), failure.getMessage());
+            assertEquals(0.0, inFlight());
+        }
+
+        @Test
+        void nonJsonResponsesAreRejected() {
+            contentType = "text/html";
+
+            RuntimeException failure = assertThrows(RuntimeException.class,
+                    () -> service.streamGraphQL("shop", "{ products { id } }", null, null, null, null));
+
+            assertTrue(failure.getMessage().contains("text/html"), failure.getMessage());
+            assertEquals(0.0, inFlight());
+        }
+    }
+
+    // ── Controller ───────────────────────────────────────────────────────────
+
+    @Nested
+    class Controller {
+
+        private DataProxyController controller;
+
+        @BeforeEach
+        void setUp() {
+            controller = new DataProxyController(service);
+            ReflectionTestUtils.setField(controller, "streamingEnabled", true);
+        }
+
+        private ResponseEntity<Map<String, Object>> query(String service, String acceptEncoding,
+                                                          MockHttpServletResponse response) {
+            return controller.proxyQuery(Map.of("service", service, "query", "{ products { id } }"),
+                    null, null, null, null, acceptEncoding, response);
+        }
+
+        @Test
+        void plainBodyIsCopiedAsIs() throws Exception {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            assertNull(query("shop", null, response));
+
+            assertEquals(200, response.getStatus());
+            assertEquals("application/json", response.getContentType());
+            assertNull(response.getHeader("Content-Encoding"));
+            assertEquals(BODY, response.getContentAsString());
+            assertEquals(0.0, inFlight());
+        }
+
+        @Test
+        void compressedBodyKeepsItsContentEncoding() throws Exception {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            assertNull(query("shop", "gzip, deflate", response));
+
+            assertEquals("gzip", response.getHeader("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getHeader("Vary"));
+            byte[] compressed = response.getContentAsByteArray();
+            assertEquals(compressed.length, response.getContentLengthLong());
+            try (GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                assertEquals(BODY, new String(gunzip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            assertEquals(0.0, inFlight());
+        }
+
+        @Test
+        void unknownServiceIsABadRequest() {
+            ResponseEntity<Map<String, Object>> result = query("billing", null, new MockHttpServletResponse());
+
+            assertEquals(400, result.getStatusCode().value());
+        }
+    }
+}
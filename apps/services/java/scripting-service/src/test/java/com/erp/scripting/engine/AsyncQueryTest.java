@@ -0,0 +1,128 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ERP.queryAsync and ERP.all — requests start together, results come back in
+ * the order they were asked for, and failures reject only their own promise.
+ */
+class AsyncQueryTest {
+
+    private DataProxyService proxy;
+    private GraalJSEngine engine;
+    private final Map<String, CompletableFuture<Map<String, Object>>> futures = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        proxy = mock(DataProxyService.class);
+        when(proxy.forwardGraphQLQueryAsync(anyString(), anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> futures.computeIfAbsent(invocation.getArgument(0),
+                        service -> new CompletableFuture<>()));
+        engine = new GraalJSEngine(new ObjectMapper(), proxy, new SimpleMeterRegistry(), ScriptLibraries.NONE);
+        TestValues.withDefaults(engine, Map.of("timeoutMs", 30_000L));
+        ReflectionTestUtils.invokeMethod(engine, "init");
+        // Create the pooled context up front, so the tests only time the queries
+        assertTrue(engine.execute("return 1;", Map.of(), null, "company-1").success());
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    private CompletableFuture<GraalJSEngine.ExecutionResult> run(String code) {
+        return CompletableFuture.supplyAsync(() -> engine.execute(code, Map.of(), null, "company-1"));
+    }
+
+    /** Completes each service's request once all of them have been started. */
+    private void answerWhenStarted(List<String> services, CountDownLatch started) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                verify(proxy, timeout(5_000).times(services.size()))
+                        .forwardGraphQLQueryAsync(anyString(), anyString(), any(), any(), any());
+                started.countDown();
+                // Answer in reverse to show that ERP.all keeps the order of its input
+                for (int i = services.size() - 1; i >= 0; i--) {
+                    String service = services.get(i);
+                    futures.get(service).complete(Map.of("data", Map.of("service", service)));
+                }
+            } catch (Throwable e) {
+                futures.values().forEach(future -> future.completeExceptionally(e));
+            }
+        });
+    }
+
+    @Test
+    void allRequestsStartBeforeAnyIsAwaited() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        answerWhenStarted(List.of("masterdata", "shop", "gateway"), started);
+
+        GraalJSEngine.ExecutionResult result = run("""
+                var r = await ERP.all([ERP.queryAsync('masterdata', '{ a }'),
+                                       ERP.queryAsync('shop', '{ b }'),
+                                       ERP.queryAsync('gateway', '{ c }')]);
+                return r.map(function(x) { return x.service; });
+                """).get(30, TimeUnit.SECONDS);
+
+        assertTrue(started.await(0, TimeUnit.SECONDS));
+        assertTrue(result.success(), result.error());
+        assertEquals(List.of("masterdata", "shop", "gateway"), result.result());
+    }
+
+    @Test
+    void allOverAnObjectResolvesToAnObject() throws Exception {
+        answerWhenStarted(List.of("masterdata", "shop"), new CountDownLatch(1));
+
+        GraalJSEngine.ExecutionResult result = run("""
+                var r = await ERP.all({ customers: ERP.queryAsync('masterdata', '{ a }'),
+                                        stock: ERP.queryAsync('shop', '{ b }') });
+                return r.customers.service + '/' + r.stock.service;
+                """).get(30, TimeUnit.SECONDS);
+
+        assertTrue(result.success(), result.error());
+        assertEquals("masterdata/shop", result.result());
+    }
+
+    @Test
+    void graphQLErrorsRejectTheirPromise() throws Exception {
+        futures.put("accounting", CompletableFuture.completedFuture(
+                Map.of("errors", List.of(Map.of("message", "no invoices")))));
+
+        GraalJSEngine.ExecutionResult result = run("""
+                try { await ERP.queryAsync('accounting', '{ invoices }'); } catch (e) { return 'caught ' + e.message; }
+                """).get(30, TimeUnit.SECONDS);
+
+        assertTrue(result.success(), result.error());
+        assertEquals("caught no invoices", result.result());
+    }
+
+    @Test
+    void failedRequestsRejectTheirPromise() throws Exception {
+        futures.put("shop", CompletableFuture.failedFuture(new RuntimeException("Failed to query shop: HTTP 503")));
+
+        GraalJSEngine.ExecutionResult result = run("""
+                try { await ERP.queryAsync('shop', '{ b }'); } catch (e) { return e.message; }
+                """).get(30, TimeUnit.SECONDS);
+
+        assertTrue(result.success(), result.error());
+        assertTrue(String.valueOf(result.result()).contains("HTTP 503"), String.valueOf(result.result()));
+    }
+}
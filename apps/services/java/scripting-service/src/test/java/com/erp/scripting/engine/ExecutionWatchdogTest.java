@@ -0,0 +1,135 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ExecutionWatchdog} — a run past its deadline is cancelled inside
+ * Graal, freeing its worker, while runs that finish in time are left alone.
+ */
+class ExecutionWatchdogTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private double cancelledCount() {
+        return meterRegistry.get("scripting.execution.cancelled").counter().count();
+    }
+
+    // ── Arming ───────────────────────────────────────────────────────────────
+
+    @Nested
+    class Arming {
+
+        private ExecutionWatchdog watchdog;
+        private SandboxContext sandbox;
+
+        @BeforeEach
+        void setUp() {
+            watchdog = new ExecutionWatchdog(meterRegistry);
+            sandbox = new SandboxContext("company-1", Context.newBuilder("js")
+                    .option("engine.WarnInterpreterOnly", "false")
+                    .build());
+        }
+
+        @AfterEach
+        void tearDown() {
+            sandbox.close();
+            watchdog.close();
+        }
+
+        @Test
+        void disarmingInTimeKeepsTheContext() {
+            ScheduledFuture<?> handle = watchdog.arm(sandbox, System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+
+            assertTrue(watchdog.disarm(handle));
+            assertEquals(2, sandbox.context().eval("js", "1 + 1").asInt());
+            assertEquals(0.0, cancelledCount());
+        }
+
+        @Test
+        void firingClosesTheContext() throws Exception {
+            ScheduledFuture<?> handle = watchdog.arm(sandbox, System.nanoTime());
+            handle.get(5, TimeUnit.SECONDS);
+
+            assertFalse(watchdog.disarm(handle));
+            assertThrows(PolyglotException.class, () -> sandbox.context().eval("js", "1"));
+            assertEquals(1.0, cancelledCount());
+        }
+
+        @Test
+        void firingStopsAScriptBusyInsideGraal() {
+            watchdog.arm(sandbox, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+
+            PolyglotException stopped = assertThrows(PolyglotException.class,
+                    () -> sandbox.context().eval("js", "while (true) {}"));
+
+            assertTrue(stopped.isCancelled());
+        }
+    }
+
+    // ── Engine ───────────────────────────────────────────────────────────────
+
+    @Nested
+    class Engine {
+
+        private GraalJSEngine engine;
+
+        @BeforeEach
+        void setUp() {
+            engine = new GraalJSEngine(new ObjectMapper(), new DataProxyService(new ObjectMapper()), meterRegistry, ScriptLibraries.NONE);
+            // One worker: a run the watchdog failed to stop would block the next one
+            TestValues.withDefaults(engine, Map.of("workerThreads", 1, "maxStatements", Integer.MAX_VALUE,
+                    "poolMaxPerTenant", 1));
+            ReflectionTestUtils.invokeMethod(engine, "init");
+            // Create the pooled context under the default timeout, so the short one only covers running code
+            assertTrue(engine.execute("return 1;", Map.of(), null, "company-1").success());
+            ReflectionTestUtils.setField(engine, "timeoutMs", 500L);
+        }
+
+        @AfterEach
+        void tearDown() {
+            engine.shutdown();
+        }
+
+        @Test
+        void runawayRunTimesOutAndFreesItsWorker() {
+            GraalJSEngine.ExecutionResult runaway = engine.execute("while (true) {}", Map.of(), null, "company-1");
+
+            assertTrue(runaway.timeout());
+            // The replacement context is created under the default timeout again
+            ReflectionTestUtils.setField(engine, "timeoutMs", 5_000L);
+            GraalJSEngine.ExecutionResult next = engine.execute("return 1;", Map.of(), null, "company-1");
+            assertTrue(next.success(), next.error());
+            assertEquals(1, next.result());
+            assertEquals(1.0, cancelledCount());
+        }
+
+        @Test
+        void runsWithinTheirDeadlineAreNotCancelled() {
+            GraalJSEngine.ExecutionResult result = engine.execute("return 1;", Map.of(), null, "company-1");
+
+            assertTrue(result.success(), result.error());
+            assertEquals(0.0, cancelledCount());
+        }
+    }
+}
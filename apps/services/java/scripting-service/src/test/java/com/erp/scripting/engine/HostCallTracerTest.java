@@ -0,0 +1,71 @@
+package com.erp.scripting.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for HostCallTracer — every request becomes a span and a timer sample; payload
+ * sizes are only taken when byte counting is switched on.
+ */
+class HostCallTracerTest {
+
+    private static final Map<String, Object> VARIABLES = Map.of("id", "42");
+    private static final Map<String, Object> RESPONSE = Map.of("data", Map.of("product", Map.of("id", "42")));
+
+    private SimpleMeterRegistry meterRegistry;
+    private SandboxContext sandbox;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sandbox = mock(SandboxContext.class);
+    }
+
+    private HostCallTracer.Span trace(boolean countBytes, Object response, Throwable failure) {
+        HostCallTracer tracer = new HostCallTracer(new ObjectMapper(), meterRegistry, countBytes);
+        HostCallTracer.Pending pending = tracer.start("shop", "query", "{ product(id: $id) { id } }", VARIABLES);
+        tracer.finish(sandbox, pending, response, failure);
+        ArgumentCaptor<HostCallTracer.Span> span = ArgumentCaptor.forClass(HostCallTracer.Span.class);
+        verify(sandbox).recordSpan(span.capture());
+        return span.getValue();
+    }
+
+    @Test
+    void bytesAreNotCountedByDefault() {
+        HostCallTracer.Span span = trace(false, RESPONSE, null);
+
+        assertEquals(-1, span.bytesOut());
+        assertEquals(-1, span.bytesIn());
+        assertNull(meterRegistry.find("scripting.host.call.bytes").summary());
+        assertEquals(1, meterRegistry.get("scripting.host.call").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void bytesAreTheJsonSizesWhenCounted() {
+        HostCallTracer.Span span = trace(true, RESPONSE, null);
+
+        assertEquals("{ product(id: $id) { id } }".length() + "{\"id\":\"42\"}".length(), span.bytesOut());
+        assertEquals("{\"data\":{\"product\":{\"id\":\"42\"}}}".length(), span.bytesIn());
+        assertEquals(span.bytesIn(), meterRegistry.get("scripting.host.call.bytes").tag("direction", "in")
+                .summary().totalAmount());
+    }
+
+    @Test
+    void failuresAndGraphQLErrorsAreRecordedAsErrors() {
+        assertEquals("HTTP 503", trace(false, null, new RuntimeException("HTTP 503")).error());
+        clearInvocations(sandbox);
+        assertEquals("not found", trace(false, Map.of("errors", List.of(Map.of("message", "not found"))), null)
+                .error());
+
+        assertEquals(2, meterRegistry.get("scripting.host.call").tag("outcome", "error").timer().count());
+    }
+}
@@ -0,0 +1,127 @@
+package com.erp.scripting.engine;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link HostValues} — scripts read host data through copy-on-write views,
+ * never modify the caller's data, and unmodified subtrees come back as the original objects.
+ */
+class HostValuesTest {
+
+    private Context context;
+
+    @BeforeEach
+    void setUp() {
+        context = Context.newBuilder("js").option("engine.WarnInterpreterOnly", "false").build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    /** Run {@code fn} with the host value as its argument and convert its result back. */
+    private Object apply(String fn, Object input) {
+        Value function = context.eval("js", "(" + fn + ")");
+        return HostValues.toHost(function.execute(HostValues.toGuest(input)));
+    }
+
+    private static Map<String, Object> order() {
+        Map<String, Object> customer = new LinkedHashMap<>(Map.of("name", "ACME"));
+        List<Object> lines = new ArrayList<>(List.of(
+                new LinkedHashMap<>(Map.of("sku", "A", "qty", 1)),
+                new LinkedHashMap<>(Map.of("sku", "B", "qty", 2))));
+        Map<String, Object> order = new LinkedHashMap<>();
+        order.put("customer", customer);
+        order.put("lines", lines);
+        return order;
+    }
+
+    @Test
+    void readsAreServedFromTheHostData() {
+        Object result = apply("o => [o.customer.name, o.lines.length, o.lines[1].qty, Object.keys(o)]", order());
+
+        assertEquals(List.of("ACME", 2, 2, List.of("customer", "lines")), result);
+    }
+
+    @Test
+    void unmodifiedDataComesBackAsTheSameObject() {
+        Map<String, Object> order = order();
+
+        assertSame(order, apply("o => { o.lines[0].sku; return o; }", order));
+    }
+
+    @Test
+    void writesCopyOnlyTheModifiedPathAndLeaveTheCallerDataAlone() {
+        Map<String, Object> order = order();
+        Map<String, Object> snapshot = order();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = (Map<String, Object>) apply(
+                "o => { o.lines[1].qty = 5; o.lines.push({ sku: 'C' }); o.note = 'rush'; return o; }", order);
+
+        assertEquals(snapshot, order);
+        assertNotSame(order, result);
+        assertSame(order.get("customer"), result.get("customer"));
+        List<?> lines = (List<?>) result.get("lines");
+        List<?> original = (List<?>) order.get("lines");
+        assertSame(original.get(0), lines.get(0));
+        assertEquals(Map.of("sku", "B", "qty", 5), lines.get(1));
+        assertEquals(Map.of("sku", "C"), lines.get(2));
+        assertEquals("rush", result.get("note"));
+    }
+
+    @Test
+    void deletesAreCopiedToo() {
+        Map<String, Object> order = order();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = (Map<String, Object>) apply("o => { delete o.customer; return o; }", order);
+
+        assertEquals(List.of("lines"), List.copyOf(result.keySet()));
+        assertTrue(order.containsKey("customer"));
+    }
+
+    @Test
+    void repeatedReadsSeeTheSameNestedView() {
+        Object result = apply("o => { const c = o.customer; c.name = 'Globex'; return [o.customer === c, o.customer.name]; }",
+                order());
+
+        assertEquals(List.of(true, "Globex"), result);
+    }
+
+    @Test
+    void nonJsonScalarsAreExposedAsNumbersOrStrings() {
+        UUID id = UUID.randomUUID();
+
+        Object result = apply("o => [typeof o.amount, o.amount * 2, o.id]",
+                Map.of("amount", new BigDecimal("1.25"), "id", id));
+
+        assertEquals(List.of("number", 2.5, id.toString()), result);
+    }
+
+    @Test
+    void guestObjectsAreCopiedIntoHostData() {
+        Object result = apply("o => ({ total: 1.5, tags: ['a', 'b'], big: 2 ** 40, none: null })", Map.of());
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("total", 1.5);
+        expected.put("tags", List.of("a", "b"));
+        expected.put("big", 1L << 40);
+        expected.put("none", null);
+        assertEquals(expected, result);
+    }
+}
@@ -0,0 +1,81 @@
+package com.erp.scripting.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LibraryFileSystem} — library names resolve to revisioned real paths
+ * of the company's libraries, and nothing else can be read or written.
+ */
+class LibraryFileSystemTest {
+
+    private static final String CODE = "export const rate = 0.2;";
+
+    private final LibraryFileSystem fileSystem = new LibraryFileSystem(
+            (companyId, name) -> "company-1".equals(companyId) && "vat".equals(name)
+                    ? new ScriptLibraries.Library("vat", "3-abc", CODE)
+                    : null,
+            "company-1");
+
+    @Test
+    void resolvesNamesToRevisionedRealPaths() throws IOException {
+        Path expected = Path.of("/libraries/vat@3-abc.mjs");
+
+        assertEquals(expected, fileSystem.toRealPath(Path.of("vat")));
+        assertEquals(expected, fileSystem.toRealPath(Path.of("/libraries/vat")));
+        assertEquals(expected, fileSystem.toRealPath(Path.of("/libraries/./vat")));
+        assertEquals(expected, fileSystem.toRealPath(expected));
+    }
+
+    @Test
+    void readsTheLibraryCode() throws IOException {
+        try (SeekableByteChannel channel = fileSystem.newByteChannel(Path.of("/libraries/vat@3-abc.mjs"),
+                Set.of(StandardOpenOption.READ))) {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            channel.read(buffer);
+
+            assertEquals(CODE, new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+            assertEquals(-1, channel.read(buffer));
+        }
+    }
+
+    @Test
+    void unknownLibrariesAndOtherPathsDoNotExist() {
+        assertThrows(NoSuchFileException.class, () -> fileSystem.toRealPath(Path.of("round")));
+        assertThrows(NoSuchFileException.class, () -> fileSystem.toRealPath(Path.of("/etc/passwd")));
+        assertThrows(NoSuchFileException.class, () -> fileSystem.toRealPath(Path.of("/libraries/../etc/vat")));
+        assertThrows(NoSuchFileException.class, () -> fileSystem.checkAccess(Path.of("/libraries/sub/vat"),
+                Set.of(AccessMode.READ)));
+    }
+
+    @Test
+    void librariesCannotBeWritten() {
+        Path vat = Path.of("/libraries/vat");
+
+        assertThrows(AccessDeniedException.class, () -> fileSystem.checkAccess(vat, Set.of(AccessMode.WRITE)));
+        assertThrows(AccessDeniedException.class,
+                () -> fileSystem.newByteChannel(vat, Set.of(StandardOpenOption.WRITE)));
+        assertThrows(AccessDeniedException.class, () -> fileSystem.delete(vat));
+        assertThrows(AccessDeniedException.class, () -> fileSystem.createDirectory(Path.of("/libraries/new")));
+    }
+
+    @Test
+    void onlyFileUrisAreSupported() {
+        assertEquals(Path.of("/libraries/vat"), fileSystem.parsePath(URI.create("file:///libraries/vat")));
+        assertThrows(UnsupportedOperationException.class,
+                () -> fileSystem.parsePath(URI.create("https://example.com/vat.mjs")));
+    }
+}
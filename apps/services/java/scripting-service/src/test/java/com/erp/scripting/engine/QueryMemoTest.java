@@ -0,0 +1,105 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the per-run query memo — identical queries are answered once, and a
+ * mutation makes later reads go downstream again.
+ */
+class QueryMemoTest {
+
+    private final AtomicInteger stock = new AtomicInteger(10);
+    private final AtomicInteger queries = new AtomicInteger();
+    private CompletableFuture<Map<String, Object>> pendingAsync;
+    private GraalJSEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        DataProxyService proxy = new DataProxyService(new ObjectMapper()) {
+            @Override
+            public Map<String, Object> forwardGraphQLQuery(String service, String query, Map<String, Object> variables,
+                                                           String authToken, String companyId) {
+                queries.incrementAndGet();
+                return Map.of("data", Map.of("stock", stock.get()));
+            }
+
+            @Override
+            public CompletableFuture<Map<String, Object>> forwardGraphQLQueryAsync(
+                    String service, String query, Map<String, Object> variables, String authToken, String companyId) {
+                queries.incrementAndGet();
+                pendingAsync = new CompletableFuture<>();
+                return pendingAsync;
+            }
+
+            @Override
+            public Map<String, Object> forwardGraphQLMutation(String service, String mutation, Map<String, Object> variables,
+                                                              String authToken, String companyId) {
+                if (pendingAsync != null) {
+                    // Answered with what was read before the write
+                    pendingAsync.complete(Map.of("data", Map.of("stock", stock.get())));
+                }
+                stock.decrementAndGet();
+                return Map.of("data", Map.of("ok", true));
+            }
+        };
+        engine = TestEngines.create(proxy, ScriptLibraries.NONE, new SimpleMeterRegistry(), Map.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    private Object run(String code) {
+        GraalJSEngine.ExecutionResult result = engine.execute(code, Map.of(), null, "company-1");
+        assertTrue(result.success(), result.error());
+        return result.result();
+    }
+
+    @Test
+    void identicalQueriesAreSentOnce() {
+        Object result = run("var q = '{ stock }'; return [ERP.query('shop', q).stock, ERP.query('shop', q).stock];");
+
+        assertEquals(List.of(10, 10), result);
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    void readsAfterAMutationAreNotAnsweredFromTheMemo() {
+        Object result = run("""
+                var q = '{ stock }';
+                var before = ERP.query('shop', q).stock;
+                ERP.mutate('shop', 'mutation { take }');
+                return [before, ERP.query('shop', q).stock];
+                """);
+
+        assertEquals(List.of(10, 9), result);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void asyncAnswersFromBeforeAMutationAreNotMemoized() {
+        Object result = run("""
+                var q = '{ stock }';
+                var pending = ERP.queryAsync('shop', q);
+                ERP.mutate('shop', 'mutation { take }');
+                var stale = (await pending).stock;
+                return [stale, ERP.query('shop', q).stock];
+                """);
+
+        assertEquals(List.of(10, 9), result);
+        assertEquals(2, queries.get());
+    }
+}
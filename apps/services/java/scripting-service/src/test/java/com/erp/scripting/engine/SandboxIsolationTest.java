@@ -0,0 +1,166 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for pooled sandbox contexts — a run must not see anything an earlier run of the
+ * same tenant left behind, and clean runs must reuse the pooled context.
+ */
+class SandboxIsolationTest {
+
+    private static final ScriptLibraries LIBRARIES = (companyId, name) -> "vat".equals(name)
+            ? new ScriptLibraries.Library("vat", "1", """
+                    export const rates = { DE: 19 };
+                    let calls = 0;
+                    export function gross(net) { return net * (100 + rates.DE) / 100; }
+                    export function count() { return ++calls; }
+                    """)
+            : null;
+
+    private SimpleMeterRegistry meterRegistry;
+    private GraalJSEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // One context per tenant, so consecutive runs lease the same one whenever it is kept
+        engine = TestEngines.create(new DataProxyService(new ObjectMapper()), LIBRARIES, meterRegistry,
+                Map.of("poolMaxPerTenant", 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    private GraalJSEngine.ExecutionResult run(String code) {
+        return engine.execute(code, Map.of(), null, "company-1");
+    }
+
+    private double poolCount(String name, String... tags) {
+        return meterRegistry.get(name).tags(tags).counter().count();
+    }
+
+    @Test
+    void cleanRunsReuseThePooledContext() {
+        assertTrue(run("return 1;").success());
+        assertTrue(run("var local = [1, 2].map(x => x * 2); return local;").success());
+        assertTrue(run("return /a(b)/.exec('ab')[1] + JSON.stringify({ a: 1 }) + new Date(0).getTime();").success());
+
+        assertEquals(2.0, poolCount("scripting.pool.lease", "result", "hit"));
+        assertEquals(0.0, poolCount("scripting.pool.discarded"));
+    }
+
+    @Test
+    void globalsAddedByARunAreRemoved() {
+        assertTrue(run("leaked = 5; globalThis.other = 6; return 1;").success());
+
+        GraalJSEngine.ExecutionResult next = run("return [typeof leaked, typeof other];");
+
+        assertEquals(List.of("undefined", "undefined"), next.result());
+    }
+
+    @Test
+    void replacingThePreludeDiscardsTheContext() {
+        assertTrue(run("ERP = { round: function() { return 0; } }; return 1;").success());
+
+        GraalJSEngine.ExecutionResult next = run("return ERP.round(1.26, 1);");
+
+        assertEquals(1.3, next.result());
+        assertEquals(1.0, poolCount("scripting.pool.discarded"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Math.round = function() { return 42; };",
+            "Array.prototype.sum = 1;",
+            "Object.prototype.injected = true;",
+            "Object.defineProperty(String.prototype, 'trim', { value: function() { return 'x'; } });",
+            "delete JSON.stringify;",
+            "Object.setPrototypeOf(Promise.prototype, null);",
+            "Object.freeze(Array.prototype);"
+    })
+    void patchedBuiltInsDoNotReachTheNextRun(String patch) {
+        assertTrue(run(patch + " return 1;").success());
+
+        GraalJSEngine.ExecutionResult next = run(
+                "return [ERP.round(1.26, 1), typeof [].sum, typeof ({}).injected, ' a '.trim(), "
+                        + "JSON.stringify([1]), typeof Promise.prototype.then, Object.isFrozen(Array.prototype)];");
+
+        assertTrue(next.success(), next.error());
+        assertEquals(List.of(1.3, "undefined", "undefined", "a", "[1]", "function", false), next.result());
+        assertEquals(1.0, poolCount("scripting.pool.discarded"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "parseInt = function() { return 42; };",
+            "Uint8Array.prototype.x = 1;",
+            "TypeError.foo = 1;",
+            "Object.getPrototypeOf(async function() {}).x = 1;",
+            "Object.getPrototypeOf(function*() {}).prototype.x = 1;",
+            "Object.getPrototypeOf(''[Symbol.iterator]()).next = function() { return { done: true }; };"
+    })
+    void patchedIntrinsicsDoNotReachTheNextRun(String patch) {
+        assertTrue(run(patch + " return 1;").success());
+
+        GraalJSEngine.ExecutionResult next = run("""
+                var chars = [];
+                for (var c of 'ab') chars.push(c);
+                return [parseInt('7'), typeof new Uint8Array(1).x, typeof TypeError.foo,
+                        typeof (async function() {}).x, typeof (function*() {})().x, chars.join('')];
+                """);
+
+        assertTrue(next.success(), next.error());
+        assertEquals(List.of(7, "undefined", "undefined", "undefined", "undefined", "ab"), next.result());
+        assertEquals(1.0, poolCount("scripting.pool.discarded"));
+    }
+
+    @Test
+    void preludeFunctionsCannotBePatched() {
+        run("ERP.load.x = 1; ERP.round.prototype.y = 2; console.log.foo = 3; return 1;");
+
+        GraalJSEngine.ExecutionResult next = run("return [typeof ERP.load.x, typeof ERP.round.prototype.y, typeof console.log.foo];");
+
+        assertTrue(next.success(), next.error());
+        assertEquals(List.of("undefined", "undefined", "undefined"), next.result());
+    }
+
+    @Test
+    void contextsAreNotSharedBetweenTenants() {
+        assertTrue(engine.execute("Math.random = function() { return 7; }; return 1;", Map.of(), null, "company-1").success());
+
+        GraalJSEngine.ExecutionResult other = engine.execute("return Math.random() < 1;", Map.of(), null, "company-2");
+
+        assertEquals(true, other.result());
+    }
+
+    @Test
+    void changesToAnImportedModuleDoNotReachTheNextRun() {
+        assertTrue(run("import { rates } from 'vat'; rates.DE = 500; return 1;").success());
+
+        GraalJSEngine.ExecutionResult next = run("import { gross } from 'vat'; return gross(100);");
+
+        assertTrue(next.success(), next.error());
+        assertEquals(119.0, ((Number) next.result()).doubleValue());
+        assertEquals(2.0, poolCount("scripting.pool.discarded"));
+    }
+
+    @Test
+    void moduleVariablesStartOverInEveryRun() {
+        assertEquals(1, run("import { count } from 'vat'; return count();").result());
+        assertEquals(1, run("import { count } from 'vat'; return count();").result());
+    }
+}
@@ -0,0 +1,177 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ScriptImports} — imports are found only in code, never inside
+ * strings, comments, templates or regular expressions, and rewritten declarations are
+ * hoisted without moving the script's own lines.
+ */
+class ScriptImportsTest {
+
+    // ── Specifiers ───────────────────────────────────────────────────────────
+
+    @Nested
+    class Specifiers {
+
+        @Test
+        void findsStaticDynamicAndReExports() {
+            String code = """
+                    import vat, { gross } from 'vat';
+                    import "polyfill";
+                    export { round } from './round';
+                    const lazy = await import('lazy');
+                    """;
+
+            assertEquals(List.of("vat", "./round", "polyfill", "lazy"), List.copyOf(ScriptImports.specifiers(code)));
+        }
+
+        @Test
+        void ignoresImportsInStringsCommentsAndTemplates() {
+            String code = """
+                    // import a from 'line-comment';
+                    /*
+                    import b from 'block-comment';
+                    */
+                    const help = "import('string')";
+                    const doc = `
+                    import c from 'template';
+                    ${ value }
+                    import d from 'after-substitution';
+                    `;
+                    return help;
+                    """;
+
+            assertEquals(Set.of(), ScriptImports.specifiers(code));
+        }
+
+        @Test
+        void findsImportsInsideTemplateSubstitutions() {
+            String code = "const text = `total: ${ (await import('vat')).gross(1) }`;";
+
+            assertEquals(Set.of("vat"), ScriptImports.specifiers(code));
+        }
+
+        @Test
+        void ignoresImportsInRegularExpressions() {
+            String code = "const pattern = /import('regex')/g;\nreturn 4 / 2;";
+
+            assertEquals(Set.of(), ScriptImports.specifiers(code));
+        }
+
+        @Test
+        void nullCodeHasNone() {
+            assertEquals(Set.of(), ScriptImports.specifiers(null));
+        }
+    }
+
+    // ── Rewrite ──────────────────────────────────────────────────────────────
+
+    @Nested
+    class Rewrite {
+
+        @Test
+        void codeWithoutImportsIsUnchanged() {
+            String code = "const imported = 'import x from \"y\"';\nreturn imported;";
+
+            ScriptImports.DynamicImports rewritten = ScriptImports.toDynamicImports(code);
+
+            assertEquals(code, rewritten.code());
+            assertEquals(0, rewritten.hoistedLength());
+        }
+
+        @Test
+        void bindsEveryClauseForm() {
+            String code = """
+                    import vat, { gross as g, net } from 'vat';
+                    import * as round from 'round';
+                    import base, * as all from 'base';
+                    import 'polyfill';
+                    """;
+
+            String hoisted = ScriptImports.toDynamicImports(code).code().lines().findFirst().orElseThrow();
+
+            assertTrue(hoisted.contains("const { default: vat, gross: g, net } = await import('vat');"), hoisted);
+            assertTrue(hoisted.contains("const round = await import('round');"), hoisted);
+            assertTrue(hoisted.contains("const all = await import('base'), base = all.default;"), hoisted);
+            assertTrue(hoisted.contains("await import('polyfill');"), hoisted);
+        }
+
+        @Test
+        void hoistsDeclarationsAndKeepsLinesAndColumns() {
+            String code = "const a = 1;\nimport { gross } from 'vat';\nreturn gross(a);";
+
+            ScriptImports.DynamicImports rewritten = ScriptImports.toDynamicImports(code);
+
+            String body = rewritten.code().substring(rewritten.hoistedLength());
+            assertEquals(code.length(), body.length());
+            assertEquals(List.of("const a = 1;", "", "return gross(a);"),
+                    body.lines().map(String::stripTrailing).toList());
+            assertTrue(rewritten.code().startsWith("const { gross } = await import('vat'); "));
+        }
+
+        @Test
+        void leavesDeclarationsInsideTemplatesAlone() {
+            String code = "return `\nimport { gross } from 'vat';\n`;";
+
+            assertEquals(code, ScriptImports.toDynamicImports(code).code());
+        }
+    }
+
+    // ── Engine ───────────────────────────────────────────────────────────────
+
+    @Nested
+    class Engine {
+
+        private final ScriptLibraries libraries = (companyId, name) -> "vat".equals(name)
+                ? new ScriptLibraries.Library("vat", "1", "export function gross(net) { return net * 1.2; }")
+                : null;
+
+        private GraalJSEngine.ExecutionResult run(String code) {
+            GraalJSEngine engine = TestEngines.create(new DataProxyService(new ObjectMapper()), libraries,
+                    new SimpleMeterRegistry(), Map.of());
+            try {
+                return engine.execute(code, Map.of(), null, "company-1");
+            } finally {
+                engine.shutdown();
+            }
+        }
+
+        @Test
+        void importedBindingsAreUsableBeforeTheDeclaration() {
+            GraalJSEngine.ExecutionResult result = run("""
+                    const total = gross(100);
+                    import { gross } from 'vat';
+                    return total;
+                    """);
+
+            assertTrue(result.success(), result.error());
+            assertEquals(120.0, ((Number) result.result()).doubleValue());
+        }
+
+        @Test
+        void syntaxErrorsKeepTheirPositionAfterHoisting() {
+            GraalJSEngine engine = TestEngines.create(new DataProxyService(new ObjectMapper()), libraries,
+                    new SimpleMeterRegistry(), Map.of());
+            try {
+                ScriptSyntaxException error = assertThrows(ScriptSyntaxException.class,
+                        () -> engine.validate("import { gross } from 'vat'; return gross(;"));
+
+                assertEquals(1, error.getLine());
+                assertEquals(43, error.getColumn());
+            } finally {
+                engine.shutdown();
+            }
+        }
+    }
+}
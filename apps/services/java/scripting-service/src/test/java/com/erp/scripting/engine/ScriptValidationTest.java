@@ -0,0 +1,122 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for save-time validation — syntax errors are reported with their line and
+ * column in the code as saved, and valid code is neither run nor rejected.
+ */
+class ScriptValidationTest {
+
+    private GraalJSEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new GraalJSEngine(new ObjectMapper(), new DataProxyService(new ObjectMapper()),
+                new SimpleMeterRegistry(), ScriptLibraries.NONE);
+        TestValues.withDefaults(engine);
+        ReflectionTestUtils.invokeMethod(engine, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    private ScriptSyntaxException syntaxError(String code) {
+        return assertThrows(ScriptSyntaxException.class, () -> engine.validate(code));
+    }
+
+    @Test
+    void validCodeIsAccepted() {
+        assertDoesNotThrow(() -> engine.validate("var total = input.qty * 2;\nreturn await Promise.resolve(total);"));
+    }
+
+    @Test
+    void validationDoesNotRunTheCode() {
+        assertDoesNotThrow(() -> engine.validate("while (true) {}"));
+    }
+
+    @Test
+    void errorOnTheFirstLineIsReportedWithoutTheWrapper() {
+        ScriptSyntaxException error = syntaxError("return 1 +;");
+
+        assertEquals(1, error.getLine());
+        assertEquals(11, error.getColumn());
+        assertTrue(error.getMessage().startsWith("Syntax error at line 1, column 11: "), error.getMessage());
+    }
+
+    @Test
+    void errorOnALaterLineKeepsItsColumn() {
+        ScriptSyntaxException error = syntaxError("var a = 1;\nvar b = 2;\n  var = 3;\nreturn a + b;");
+
+        assertEquals(3, error.getLine());
+        assertEquals(7, error.getColumn());
+    }
+
+    @Test
+    void unexpectedEndOfInputPointsPastTheLastLine() {
+        ScriptSyntaxException error = syntaxError("if (input.ok) {\n  return 1;");
+
+        assertEquals(2, error.getLine());
+        assertEquals(12, error.getColumn());
+    }
+
+    @Test
+    void compileRejectsInvalidCodeToo() {
+        ScriptSyntaxException error = assertThrows(ScriptSyntaxException.class,
+                () -> engine.compile(UUID.randomUUID(), 1, "return (;"));
+
+        assertEquals(1, error.getLine());
+        assertFalse(error.getDetail().isBlank());
+    }
+
+    @Test
+    void compiledScriptsRunFromTheParsedSource() {
+        UUID scriptId = UUID.randomUUID();
+        engine.compile(scriptId, 1, "return input.qty * 2;");
+
+        GraalJSEngine.ExecutionResult result = engine.execute(
+                scriptId, 1, "return input.qty * 2;", Map.of("input", Map.of("qty", 21)), null, "company-1");
+
+        assertTrue(result.success(), result.error());
+        assertEquals(42, result.result());
+    }
+
+    @Test
+    void validationDoesNotWaitForABusyPool() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        GraalJSEngine busy = TestEngines.create(new DataProxyService(new ObjectMapper()), ScriptLibraries.NONE,
+                meterRegistry, Map.of("poolMaxPerTenant", 1, "poolAcquireTimeoutMs", 50L, "maxStatements", 100_000_000));
+        try {
+            // Holds the tenant's only context
+            CompletableFuture<GraalJSEngine.ExecutionResult> run = CompletableFuture.supplyAsync(() -> busy.execute(
+                    "var end = Date.now() + 1000; while (Date.now() < end) {} return 1;", Map.of(), null, "company-1"));
+            while (meterRegistry.get("scripting.pool.leased").gauge().value() < 1 && !run.isDone()) {
+                Thread.sleep(10);
+            }
+            assertFalse(busy.execute("return 2;", Map.of(), null, "company-1").success());
+
+            assertDoesNotThrow(() -> busy.validate("return input.qty * 2;"));
+            assertDoesNotThrow(() -> busy.compile(UUID.randomUUID(), 1, "return input.qty * 2;"));
+            assertThrows(ScriptSyntaxException.class, () -> busy.validate("return (;"));
+            assertTrue(run.get(10, TimeUnit.SECONDS).success());
+        } finally {
+            busy.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the per-company concurrency quota — runs beyond it fail after quota-wait-ms,
+ * while runs with a caller deadline (trigger scripts) wait for a slot until that deadline.
+ */
+class TenantQuotaTest {
+
+    private static final String BUSY = "var end = Date.now() + 200; while (Date.now() < end) {} return 1;";
+
+    private GraalJSEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = TestEngines.create(new DataProxyService(new ObjectMapper()), ScriptLibraries.NONE,
+                new SimpleMeterRegistry(), Map.of("maxConcurrentPerCompany", 2, "quotaWaitMs", 20L,
+                        "maxStatements", 100_000_000, "timeoutMs", 10_000L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    private List<GraalJSEngine.ExecutionResult> runConcurrently(int runs, Supplier<GraalJSEngine.ExecutionResult> run) {
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<GraalJSEngine.ExecutionResult>> futures = IntStream.range(0, runs)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(run, callers))
+                    .toList();
+            return futures.stream().map(CompletableFuture::join).toList();
+        }
+    }
+
+    @Test
+    void runsBeyondTheQuotaAreRejected() {
+        List<GraalJSEngine.ExecutionResult> results = runConcurrently(5,
+                () -> engine.execute(BUSY, Map.of(), null, "company-1"));
+
+        assertTrue(results.stream().anyMatch(result -> !result.success()
+                && "Too many concurrent script executions for this company".equals(result.error())));
+    }
+
+    @Test
+    void runsWithADeadlineWaitForASlot() {
+        UUID scriptId = UUID.randomUUID();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        List<GraalJSEngine.ExecutionResult> results = runConcurrently(5,
+                () -> engine.execute(scriptId, 1, BUSY, Map.of(), null, "company-1", deadline));
+
+        results.forEach(result -> assertTrue(result.success(), result.error()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.erp.scripting.engine;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.service.DataProxyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+/**
+ * Builds a started {@link GraalJSEngine} with the default {@code scripting.*} settings.
+ * Tests must call {@link GraalJSEngine#shutdown()}.
+ */
+final class TestEngines {
+
+    private TestEngines() {
+    }
+
+    static GraalJSEngine create(DataProxyService dataProxyService, ScriptLibraries libraries,
+                                MeterRegistry meterRegistry, Map<String, Object> overrides) {
+        GraalJSEngine engine = new GraalJSEngine(new ObjectMapper(), dataProxyService, meterRegistry, libraries);
+        TestValues.withDefaults(engine, overrides);
+        ReflectionTestUtils.invokeMethod(engine, "init");
+        return engine;
+    }
+}
@@ -0,0 +1,133 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DataProxyService.executeGraphQLAsync — answers, failures, timeouts and
+ * cancellations all complete the future and hand the service's concurrency slot back.
+ */
+class AsyncForwardingTest {
+
+    private TestGraphQLServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private DataProxyService service;
+
+    @BeforeEach
+    void setUp() {
+        server = new TestGraphQLServer();
+        meterRegistry = new SimpleMeterRegistry();
+        service = TestValues.withDefaults(new DataProxyService(new ObjectMapper(), null, meterRegistry, null),
+                Map.of("shopUrl", server.url(), "httpVersion", "HTTP_1_1", "readTimeoutMs", 300L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("erp.proxy.inflight").tag("service", "shop").gauge().value();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> shopStatus() {
+        List<Map<String, Object>> services = (List<Map<String, Object>>) service.getAvailableServices().get("services");
+        return services.stream().filter(status -> "shop".equals(status.get("name"))).findFirst().orElseThrow();
+    }
+
+    @Test
+    void answerCompletesTheFuture() throws Exception {
+        server.respond(request -> TestGraphQLServer.Reply.ok("{\"data\":{\"products\":[]}}"));
+
+        Map<String, Object> result = service.executeGraphQLAsync("shop", "{ products { id } }", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(Map.of("products", List.of()), result.get("data"));
+        assertEquals(0.0, inFlight());
+    }
+
+    @Test
+    void httpErrorsCompleteExceptionally() {
+        server.respond(request -> new TestGraphQLServer.Reply(503, "{}"));
+
+        CompletableFuture<Map<String, Object>> future =
+                service.executeGraphQLAsync("shop", "{ products { id } }", null, null, null);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause().getMessage().contains("HTTP 503"), failure.getCause().getMessage());
+        assertEquals(0.0, inFlight());
+    }
+
+    @Test
+    void timeoutReleasesTheSlot() {
+        server.respond(request -> {
+            try {
+                Thread.sleep(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TestGraphQLServer.Reply.ok("{\"data\":{}}");
+        });
+
+        CompletableFuture<Map<String, Object>> future =
+                service.executeGraphQLAsync("shop", "{ products { id } }", null, null, null);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause().getMessage().contains("Failed to query shop"), failure.getCause().getMessage());
+        assertEquals(0.0, inFlight());
+    }
+
+    @Test
+    void unknownServicesAreRejectedBeforeSending() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.executeGraphQLAsync("billing", "{ a }", null, null, null));
+        assertTrue(server.requests().isEmpty());
+    }
+
+    @Test
+    void cancellingTheFutureAbortsTheRequestAndFreesTheSlot() throws Exception {
+        ReflectionTestUtils.setField(service, "readTimeoutMs", 30_000L);
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        server.respond(request -> {
+            received.countDown();
+            try {
+                answer.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TestGraphQLServer.Reply.ok("{\"data\":{}}");
+        });
+
+        try {
+            CompletableFuture<Map<String, Object>> future =
+                    service.executeGraphQLAsync("shop", "{ products { id } }", null, null, null);
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            assertEquals(1, shopStatus().get("inFlight"));
+
+            assertTrue(future.cancel(true));
+
+            assertEquals(0, shopStatus().get("inFlight"));
+            // Abandoning a request says nothing about the service's health
+            assertEquals("CLOSED", shopStatus().get("circuit"));
+            assertEquals(1, meterRegistry.get("erp.proxy.request").tag("outcome", "cancelled").timer().count());
+        } finally {
+            answer.countDown();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.entity.ScriptExecution;
+import com.erp.scripting.entity.ScriptExecution.ExecutionStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ExecutionAuditWriter — what is written, when, and that queued records are
+ * not affected by later changes to the objects they were recorded from.
+ */
+class ExecutionAuditWriterTest {
+
+    private PreparedStatement statement;
+    private ExecutionAuditWriter writer;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        statement = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getMetaData()).thenReturn(mock(DatabaseMetaData.class));
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.getConnection()).thenReturn(connection);
+        meterRegistry = new SimpleMeterRegistry();
+        writer = new ExecutionAuditWriter(dataSource, new ObjectMapper(), meterRegistry);
+    }
+
+    private void configure(Map<String, Object> overrides) {
+        TestValues.withDefaults(writer, overrides);
+    }
+
+    private static ScriptExecution execution(ExecutionStatus status) {
+        return ScriptExecution.builder()
+                .id(UUID.randomUUID())
+                .scriptId(UUID.randomUUID())
+                .companyId(UUID.randomUUID())
+                .status(status)
+                .startedAt(OffsetDateTime.now())
+                .completedAt(OffsetDateTime.now())
+                .executionTimeMs(1L)
+                .build();
+    }
+
+    @Test
+    void queuedRecordsKeepThePayloadsAsTheyWereRecorded() throws Exception {
+        configure(Map.of("mode", "async"));
+        // A queue nobody drains yet, so the write happens after the caller changed its objects
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(10);
+        ReflectionTestUtils.setField(writer, "queue", queue);
+        Map<String, Object> input = new HashMap<>(Map.of("qty", 1));
+        List<Object> output = new ArrayList<>(List.of("a"));
+
+        writer.record(execution(ExecutionStatus.SUCCESS), input, output);
+        input.put("qty", 2);
+        output.add("b");
+        List<Object> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        ReflectionTestUtils.invokeMethod(writer, "write", batch);
+
+        verify(statement).setString(5, "{\"qty\":1}");
+        verify(statement).setString(6, "[\"a\"]");
+    }
+
+    @Test
+    void syncModeWritesOnTheCallersThread() throws Exception {
+        configure(Map.of("mode", "sync"));
+        ReflectionTestUtils.invokeMethod(writer, "start");
+
+        writer.record(execution(ExecutionStatus.FAILED), Map.of("id", 7), null);
+
+        verify(statement).setString(5, "{\"id\":7}");
+        verify(statement).setString(7, "FAILED");
+    }
+
+    @Test
+    void sampledModeAlwaysKeepsFailures() {
+        configure(Map.of("mode", "sampled", "sampleRate", 0.0));
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(10);
+        ReflectionTestUtils.setField(writer, "queue", queue);
+
+        writer.record(execution(ExecutionStatus.SUCCESS), null, null);
+        writer.record(execution(ExecutionStatus.TIMEOUT), null, null);
+
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void oversizedPayloadsAreReplacedByAStub() throws Exception {
+        configure(Map.of("mode", "sync", "maxPayloadBytes", 100));
+        ReflectionTestUtils.invokeMethod(writer, "start");
+
+        writer.record(execution(ExecutionStatus.SUCCESS), Map.of("text", "x".repeat(500)), null);
+
+        verify(statement).setString(eq(5), argThat(json -> json.startsWith("{\"_truncated\":true,\"sizeBytes\":511,")));
+    }
+
+    @Test
+    void fullQueueCountsDroppedRecords() {
+        configure(Map.of("mode", "async"));
+        ReflectionTestUtils.setField(writer, "queue", new ArrayBlockingQueue<>(1));
+
+        writer.record(execution(ExecutionStatus.SUCCESS), null, null);
+        writer.record(execution(ExecutionStatus.SUCCESS), null, null);
+
+        assertEquals(1.0, meterRegistry.get("scripting.audit.dropped").tag("reason", "queue_full").counter().count());
+    }
+
+    @Test
+    void failedFlushOnShutdownCountsDroppedRecords() throws Exception {
+        configure(Map.of("mode", "async"));
+        ReflectionTestUtils.setField(writer, "queue", new ArrayBlockingQueue<>(10));
+        when(statement.executeUpdate()).thenThrow(new SQLException("connection lost"));
+        when(statement.executeBatch()).thenThrow(new SQLException("connection lost"));
+        for (int i = 0; i < 3; i++) {
+            writer.record(execution(ExecutionStatus.SUCCESS), null, null);
+        }
+
+        // Stopped (running is false) while waiting for records: the writer flushes and returns
+        Thread.currentThread().interrupt();
+        assertDoesNotThrow(() -> ReflectionTestUtils.invokeMethod(writer, "writeLoop"));
+        Thread.interrupted();
+
+        assertEquals(3.0, meterRegistry.get("scripting.audit.dropped").tag("reason", "write_failed").counter().count());
+    }
+}
@@ -0,0 +1,184 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.entity.ScriptExecution.ExecutionStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ExecutionStatsService — latency percentiles from the bucket histogram,
+ * merging persisted totals with unflushed deltas, and flushing deltas to script_stats.
+ */
+class ExecutionStatsServiceTest {
+
+    private static final UUID SCRIPT_ID = UUID.randomUUID();
+
+    // ── Percentiles ──────────────────────────────────────────────────────────
+
+    @Nested
+    class Percentiles {
+
+        private ExecutionStatsService.Aggregate aggregate(long timeMs, int count) {
+            ExecutionStatsService.Aggregate aggregate = new ExecutionStatsService.Aggregate();
+            for (int i = 0; i < count; i++) {
+                aggregate.add(ExecutionStatus.SUCCESS, timeMs);
+            }
+            return aggregate;
+        }
+
+        @Test
+        void bucketBoundsAreInclusive() {
+            assertEquals(0, ExecutionStatsService.bucketOf(0));
+            assertEquals(0, ExecutionStatsService.bucketOf(1));
+            assertEquals(1, ExecutionStatsService.bucketOf(2));
+            assertEquals(11, ExecutionStatsService.bucketOf(100));
+            assertEquals(12, ExecutionStatsService.bucketOf(101));
+            assertEquals(ExecutionStatsService.BUCKET_BOUNDS_MS.length, ExecutionStatsService.bucketOf(60_001));
+        }
+
+        @Test
+        void interpolatesWithinTheMatchingBucket() {
+            ExecutionStatsService.Aggregate aggregate = aggregate(1, 50);
+            aggregate.merge(aggregate(100, 50));
+
+            assertEquals(1.0, aggregate.percentile(0.50), 1e-9);
+            // 45 of the 50 runs in (75, 100]
+            assertEquals(97.5, aggregate.percentile(0.95), 1e-9);
+            assertEquals(99.5, aggregate.percentile(0.99), 1e-9);
+        }
+
+        @Test
+        void openEndedBucketReportsItsLowerBound() {
+            assertEquals(60_000.0, aggregate(120_000, 3).percentile(0.99));
+        }
+
+        @Test
+        void onlySuccessfulRunsCount() {
+            ExecutionStatsService.Aggregate aggregate = new ExecutionStatsService.Aggregate();
+            aggregate.add(ExecutionStatus.FAILED, 5_000);
+            aggregate.add(ExecutionStatus.TIMEOUT, 5_000);
+
+            assertEquals(0.0, aggregate.percentile(0.5));
+            assertEquals(1, aggregate.failed);
+            assertEquals(1, aggregate.timeout);
+        }
+    }
+
+    // ── Service ──────────────────────────────────────────────────────────────
+
+    @Nested
+    class Service {
+
+        private Connection connection;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        private ExecutionStatsService service;
+
+        @BeforeEach
+        void setUp() throws Exception {
+            DataSource dataSource = mock(DataSource.class);
+            connection = mock(Connection.class);
+            statement = mock(PreparedStatement.class);
+            resultSet = mock(ResultSet.class);
+            when(dataSource.getConnection()).thenReturn(connection);
+            when(connection.getMetaData()).thenReturn(mock(DatabaseMetaData.class));
+            when(connection.prepareStatement(anyString())).thenReturn(statement);
+            when(connection.createArrayOf(eq("bigint"), any())).thenReturn(mock(Array.class));
+            when(statement.getConnection()).thenReturn(connection);
+            when(statement.executeQuery()).thenReturn(resultSet);
+            service = TestValues.withDefaults(new ExecutionStatsService(dataSource));
+            ReflectionTestUtils.invokeMethod(service, "start");
+        }
+
+        @AfterEach
+        void tearDown() {
+            ReflectionTestUtils.invokeMethod(service, "stop");
+        }
+
+        private void persistedRow(long success, long successTimeMs, Long[] histogram) throws SQLException {
+            Array array = mock(Array.class);
+            when(array.getArray()).thenReturn(histogram);
+            when(resultSet.next()).thenReturn(true, false);
+            when(resultSet.getLong("success_count")).thenReturn(success);
+            when(resultSet.getLong("success_time_ms")).thenReturn(successTimeMs);
+            when(resultSet.getArray("histogram")).thenReturn(array);
+        }
+
+        @Test
+        void statsCombinePersistedTotalsWithPendingDeltas() throws Exception {
+            Long[] histogram = new Long[ExecutionStatsService.BUCKET_BOUNDS_MS.length + 1];
+            Arrays.fill(histogram, 0L);
+            histogram[ExecutionStatsService.bucketOf(1)] = 50L;
+            persistedRow(50, 50, histogram);
+            for (int i = 0; i < 50; i++) {
+                service.record(SCRIPT_ID, ExecutionStatus.SUCCESS, 100);
+            }
+            service.record(SCRIPT_ID, ExecutionStatus.CANCELLED, 10);
+
+            ScriptService.ScriptStats stats = service.getStats(SCRIPT_ID);
+
+            assertEquals(100, stats.successCount());
+            assertEquals(1, stats.cancelledCount());
+            assertEquals(50.5, stats.averageExecutionTimeMs(), 1e-9);
+            assertEquals(1.0, stats.p50ExecutionTimeMs(), 1e-9);
+            assertEquals(97.5, stats.p95ExecutionTimeMs(), 1e-9);
+            // Rates cover this replica's runs only
+            assertEquals(51, stats.recentExecutions());
+        }
+
+        @Test
+        void scriptWithoutHistoryHasEmptyStats() throws Exception {
+            when(resultSet.next()).thenReturn(false);
+
+            ScriptService.ScriptStats stats = service.getStats(SCRIPT_ID);
+
+            assertEquals(0, stats.successCount());
+            assertEquals(0.0, stats.p99ExecutionTimeMs());
+        }
+
+        @Test
+        void flushWritesDeltasOnce() throws Exception {
+            service.record(SCRIPT_ID, ExecutionStatus.SUCCESS, 20);
+            service.record(SCRIPT_ID, ExecutionStatus.FAILED, 0);
+
+            service.flush();
+            service.flush();
+
+            verify(statement, times(1)).executeUpdate();
+            verify(statement).setLong(2, 1);
+            verify(statement).setLong(3, 1);
+            verify(statement).setLong(6, 20);
+        }
+
+        @Test
+        void failedFlushKeepsTheDeltas() throws Exception {
+            when(statement.executeUpdate()).thenThrow(new SQLException("connection reset")).thenReturn(1);
+            service.record(SCRIPT_ID, ExecutionStatus.SUCCESS, 20);
+
+            service.flush();
+            service.record(SCRIPT_ID, ExecutionStatus.SUCCESS, 30);
+            service.flush();
+
+            verify(statement, times(2)).executeUpdate();
+            verify(statement).setLong(2, 2);
+            verify(statement).setLong(6, 50);
+        }
+    }
+}
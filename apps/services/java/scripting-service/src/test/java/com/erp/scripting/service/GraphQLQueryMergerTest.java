@@ -0,0 +1,157 @@
+package com.erp.scripting.service;
+
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.OperationDefinition;
+import graphql.language.VariableDefinition;
+import graphql.parser.Parser;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GraphQLQueryMerger — which queries can be merged, how root fields and
+ * variables are prefixed, and how a merged response is split back per query.
+ */
+class GraphQLQueryMergerTest {
+
+    // ── Mergeable ────────────────────────────────────────────────────────────
+
+    @Nested
+    class Mergeable {
+
+        @ParameterizedTest
+        @ValueSource(strings = {
+                "{ customer(id: 1) { name } }",
+                "query Customer($id: ID!) { customer(id: $id) { name } orders { id } }",
+                "query { c: customer(id: 1) { ...Fields } }"
+        })
+        void plainFieldQueriesAreMergeable(String query) {
+            assertNotNull(GraphQLQueryMerger.mergeableOperation(query));
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {
+                "mutation { deleteCustomer(id: 1) }",
+                "query @cached { customer(id: 1) { name } }",
+                "{ customer(id: 1) @include(if: true) { name } }",
+                "{ ...RootFields }",
+                "query A { a } query B { b }",
+                "{ customer(id: 1) { ...F } } fragment F on Customer { name }",
+                "{ customer(id: "
+        })
+        void everythingElseIsSentAlone(String query) {
+            assertNull(GraphQLQueryMerger.mergeableOperation(query));
+        }
+    }
+
+    // ── Merge ────────────────────────────────────────────────────────────────
+
+    @Nested
+    class Merge {
+
+        @Test
+        void prefixesRootFieldsAndVariablesPerQuery() {
+            GraphQLQueryMerger.Merged merged = GraphQLQueryMerger.merge(
+                    List.of(GraphQLQueryMerger.mergeableOperation("query($id: ID!) { customer(id: $id) { name } }"),
+                            GraphQLQueryMerger.mergeableOperation("query($id: ID!) { c: customer(id: $id) { id } }")),
+                    List.of(Map.of("id", "1"), Map.of("id", "2")));
+
+            Document document = Parser.parse(merged.query());
+            OperationDefinition operation = (OperationDefinition) document.getDefinitions().get(0);
+            assertEquals("ScriptBatch", operation.getName());
+            assertEquals(List.of("b0_id", "b1_id"),
+                    operation.getVariableDefinitions().stream().map(VariableDefinition::getName).toList());
+            List<Field> fields = operation.getSelectionSet().getSelectionsOfType(Field.class);
+            assertEquals(List.of("b0_customer", "b1_c"), fields.stream().map(Field::getAlias).toList());
+            assertEquals(List.of("customer", "customer"), fields.stream().map(Field::getName).toList());
+            assertTrue(merged.query().contains("customer(id:$b1_id)"), merged.query());
+            assertEquals(Map.of("b0_id", "1", "b1_id", "2"), merged.variables());
+        }
+
+        @Test
+        void queriesWithoutVariablesMergeToo() {
+            List<Map<String, Object>> variables = new ArrayList<>();
+            variables.add(null);
+            variables.add(Map.of());
+
+            GraphQLQueryMerger.Merged merged = GraphQLQueryMerger.merge(
+                    List.of(GraphQLQueryMerger.mergeableOperation("{ a }"),
+                            GraphQLQueryMerger.mergeableOperation("{ b }")),
+                    variables);
+
+            assertEquals(Map.of(), merged.variables());
+            assertEquals("query ScriptBatch{b0_a:a b1_b:b}", merged.query());
+        }
+    }
+
+    // ── Split ────────────────────────────────────────────────────────────────
+
+    @Nested
+    class Split {
+
+        private static Map<String, Object> response(Map<String, Object> data, List<Map<String, Object>> errors) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("data", data);
+            if (errors != null) {
+                response.put("errors", errors);
+            }
+            return response;
+        }
+
+        @Test
+        void dataIsReturnedUnderTheOriginalNames() {
+            List<Map<String, Object>> results = GraphQLQueryMerger.split(
+                    response(Map.of("b0_customer", Map.of("name", "ACME"), "b1_c", Map.of("id", "2")), null), 2);
+
+            assertEquals(List.of(
+                    Map.of("data", Map.of("customer", Map.of("name", "ACME"))),
+                    Map.of("data", Map.of("c", Map.of("id", "2")))), results);
+        }
+
+        @Test
+        void fieldErrorsGoToTheirQueryWithTheOriginalPath() {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("b0_a", 1);
+            data.put("b1_b", null);
+
+            List<Map<String, Object>> results = GraphQLQueryMerger.split(response(data,
+                    List.of(Map.of("message", "denied", "path", List.of("b1_b", "x")))), 2);
+
+            assertNull(results.get(0).get("errors"));
+            assertEquals(List.of(Map.of("message", "denied", "path", List.of("b", "x"))), results.get(1).get("errors"));
+        }
+
+        @Test
+        void unattributedErrorsApplyToEveryQuery() {
+            Map<String, Object> error = Map.of("message", "slow down");
+
+            List<Map<String, Object>> results = GraphQLQueryMerger.split(
+                    response(Map.of("b0_a", 1, "b1_b", 2), List.of(error)), 2);
+
+            assertEquals(List.of(error), results.get(0).get("errors"));
+            assertEquals(List.of(error), results.get(1).get("errors"));
+        }
+
+        @Test
+        void documentErrorsWithoutDataMeanRetryOneByOne() {
+            assertNull(GraphQLQueryMerger.split(
+                    response(null, List.of(Map.of("message", "Validation error"))), 2));
+        }
+
+        @Test
+        void queriesWithoutDataInTheResponseGetAnEmptyObject() {
+            List<Map<String, Object>> results = GraphQLQueryMerger.split(response(Map.of("b0_a", 1), null), 2);
+
+            assertEquals(Map.of(), results.get(1).get("data"));
+        }
+    }
+}
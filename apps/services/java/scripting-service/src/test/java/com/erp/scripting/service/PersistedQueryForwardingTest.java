@@ -0,0 +1,118 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.entity.PersistedQuery;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for persisted queries sent as automatic persisted queries (APQ) — hash first,
+ * the document only when the target asks, and full documents only for targets that say they
+ * do not support APQ.
+ */
+class PersistedQueryForwardingTest {
+
+    private static final String COMPANY = UUID.randomUUID().toString();
+    private static final String NOT_FOUND = "{\"errors\":[{\"message\":\"PersistedQueryNotFound\"}]}";
+    private static final String NOT_SUPPORTED = "{\"errors\":[{\"message\":\"PersistedQueryNotSupported\"}]}";
+    private static final String DATA = "{\"data\":{\"products\":[]}}";
+
+    private TestGraphQLServer server;
+    private DataProxyService service;
+
+    @BeforeEach
+    void setUp() {
+        server = new TestGraphQLServer();
+        PersistedQueryService registry = mock(PersistedQueryService.class);
+        when(registry.resolve(any(), eq("products"))).thenReturn(PersistedQuery.builder()
+                .name("products")
+                .service("shop")
+                .sha256("a".repeat(64))
+                .document("{ products { id } }")
+                .build());
+        service = new DataProxyService(new ObjectMapper(), null, new SimpleMeterRegistry(), registry);
+        TestValues.withDefaults(service, Map.of("apqEnabled", true, "shopUrl", server.url(), "httpVersion", "HTTP_1_1"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private Map<String, Object> run() {
+        return service.executePersistedQuery("products", null, null, COMPANY, false);
+    }
+
+    private static boolean hasDocument(Map<String, Object> request) {
+        return request.containsKey("query");
+    }
+
+    @Test
+    void knownHashIsAnsweredWithoutTheDocument() {
+        server.respond(request -> TestGraphQLServer.Reply.ok(DATA));
+
+        assertEquals(Map.of("products", List.of()), run().get("data"));
+        assertEquals(1, server.requests().size());
+        assertFalse(hasDocument(server.requests().get(0)));
+    }
+
+    @Test
+    void unknownHashIsRegisteredWithTheDocument() {
+        server.respond(request -> TestGraphQLServer.Reply.ok(hasDocument(request) ? DATA : NOT_FOUND));
+
+        run();
+        run();
+
+        // Hash, hash + document, then the hash again: APQ stays on
+        assertEquals(4, server.requests().size());
+        assertTrue(server.requests().get(1).containsKey("extensions"));
+        assertFalse(hasDocument(server.requests().get(2)));
+    }
+
+    @Test
+    void explicitNotSupportedTurnsApqOff() {
+        server.respond(request -> hasDocument(request)
+                ? TestGraphQLServer.Reply.ok(DATA)
+                : new TestGraphQLServer.Reply(400, NOT_SUPPORTED));
+
+        assertNotNull(run().get("data"));
+        run();
+
+        assertEquals(3, server.requests().size());
+        assertTrue(hasDocument(server.requests().get(2)));
+    }
+
+    @Test
+    void transportErrorsDoNotTurnApqOff() {
+        server.respond(request -> new TestGraphQLServer.Reply(503, "unavailable"));
+        assertThrows(RuntimeException.class, this::run);
+
+        server.respond(request -> TestGraphQLServer.Reply.ok(DATA));
+        run();
+
+        assertEquals(2, server.requests().size());
+        assertFalse(hasDocument(server.requests().get(1)));
+    }
+
+    @Test
+    void otherRequestErrorsAreNotMistakenForNotSupported() {
+        server.respond(request -> new TestGraphQLServer.Reply(400, "not json"));
+        assertThrows(RuntimeException.class, this::run);
+
+        server.respond(request -> TestGraphQLServer.Reply.ok(DATA));
+        run();
+
+        assertFalse(hasDocument(server.requests().get(server.requests().size() - 1)));
+    }
+}
@@ -0,0 +1,216 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the proxy's response cache — which requests are cached, and that mutations
+ * make earlier answers unreachable.
+ */
+class ProxyResponseCacheTest {
+
+    private static final String COMPANY = "company-1";
+    private static final String QUERY = "{ products { id } }";
+    private static final String MUTATION = "mutation { deleteProduct(id: 1) }";
+
+    private TestGraphQLServer server;
+    private DataProxyService service;
+    private final AtomicInteger version = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        server = new TestGraphQLServer();
+        server.respond(request -> {
+            if (String.valueOf(request.get("query")).contains("mutation")) {
+                version.incrementAndGet();
+            }
+            return TestGraphQLServer.Reply.ok("{\"data\":{\"version\":" + version.get() + "}}");
+        });
+        service = new DataProxyService(new ObjectMapper());
+        TestValues.withDefaults(service, Map.of("cacheEnabled", true, "shopUrl", server.url(), "httpVersion", "HTTP_1_1"));
+        ReflectionTestUtils.invokeMethod(service, "initCache");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object version(Map<String, Object> response) {
+        return ((Map<?, ?>) response.get("data")).get("version");
+    }
+
+    private Map<String, Object> query(String query, String authHeader) {
+        return service.executeGraphQL("shop", query, null, authHeader, COMPANY);
+    }
+
+    // ── Read detection ───────────────────────────────────────────────────
+
+    @Nested
+    class ReadDetection {
+
+        @ParameterizedTest
+        @ValueSource(strings = {
+                "{ products { id } }",
+                "query Products { products { id } }",
+                "# list them\n  query { products { id } }",
+                "fragment P on Product { id }\nquery { products { ...P } }",
+                "query A { a } query B { b }"
+        })
+        void queriesAreReads(String query) {
+            assertTrue(DataProxyService.isReadQuery(query));
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {
+                "mutation { deleteProduct(id: 1) }",
+                "# not a query\nmutation { deleteProduct(id: 1) }",
+                "fragment P on Product { id }\nmutation { createProduct { ...P } }",
+                "query A { a } mutation B { deleteProduct(id: 1) }",
+                "subscription { productChanged { id } }",
+                "query { unclosed",
+                "   "
+        })
+        void everythingElseIsAWrite(String query) {
+            assertFalse(DataProxyService.isReadQuery(query));
+        }
+    }
+
+    // ── Caching ──────────────────────────────────────────────────────────
+
+    @Nested
+    class Caching {
+
+        @Test
+        void repeatedQueriesAreAnsweredFromTheCache() {
+            query(QUERY, null);
+            query("query {\n  products {\n    id\n  }\n}", null);
+
+            assertEquals(1, server.requests().size());
+        }
+
+        @Test
+        void usersDoNotShareEntries() {
+            query(QUERY, "Bearer a");
+            query(QUERY, "Bearer b");
+
+            assertEquals(2, server.requests().size());
+        }
+
+        @Test
+        void asyncMutationsInvalidateOnceDone() throws Exception {
+            CountDownLatch mutationReceived = new CountDownLatch(1);
+            CountDownLatch mutationAnswered = new CountDownLatch(1);
+            server.respond(request -> {
+                if (String.valueOf(request.get("query")).contains("mutation")) {
+                    mutationReceived.countDown();
+                    await(mutationAnswered);
+                    version.incrementAndGet();
+                }
+                return TestGraphQLServer.Reply.ok("{\"data\":{\"version\":" + version.get() + "}}");
+            });
+            query(QUERY, null);
+
+            CompletableFuture<Map<String, Object>> mutation = service.executeGraphQLAsync(
+                    "shop", MUTATION, null, null, COMPANY);
+            assertTrue(mutationReceived.await(5, TimeUnit.SECONDS));
+            // Read while the mutation is in flight: still the old data, from the cache
+            assertEquals(0, version(query(QUERY, null)));
+            mutationAnswered.countDown();
+            mutation.get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, version(query(QUERY, null)));
+        }
+
+        @Test
+        void mutationsWithALeadingCommentInvalidate() {
+            query(QUERY, null);
+            service.executeGraphQL("shop", "# cleanup\n" + MUTATION, null, null, COMPANY);
+
+            assertEquals(1, version(query(QUERY, null)));
+        }
+    }
+
+    // ── Other replicas ───────────────────────────────────────────────────
+
+    @Nested
+    class Replicas {
+
+        private ScriptChangeNotifier notifier;
+        private ScriptChangeNotifier.ProxyCacheListener listener;
+
+        @BeforeEach
+        void setUp() {
+            notifier = mock(ScriptChangeNotifier.class);
+            service = new DataProxyService(new ObjectMapper(), null, new SimpleMeterRegistry(), null, notifier);
+            TestValues.withDefaults(service, Map.of("cacheEnabled", true, "shopUrl", server.url(), "httpVersion", "HTTP_1_1"));
+            ReflectionTestUtils.invokeMethod(service, "initCache");
+            ArgumentCaptor<ScriptChangeNotifier.ProxyCacheListener> registered =
+                    ArgumentCaptor.forClass(ScriptChangeNotifier.ProxyCacheListener.class);
+            verify(notifier).onProxyInvalidation(registered.capture());
+            listener = registered.getValue();
+        }
+
+        @Test
+        void mutationsArePublished() {
+            service.executeGraphQL("shop", MUTATION, null, null, COMPANY);
+
+            verify(notifier).publishProxyInvalidation("shop", COMPANY);
+        }
+
+        @Test
+        void readsAreNotPublished() {
+            query(QUERY, null);
+
+            verify(notifier, never()).publishProxyInvalidation(any(), any());
+        }
+
+        @Test
+        void invalidationsFromOtherReplicasDropEntries() {
+            query(QUERY, null);
+            version.incrementAndGet();
+
+            listener.invalidate("shop", "other-company");
+            assertEquals(0, version(query(QUERY, null)));
+            listener.invalidate("shop", COMPANY);
+            assertEquals(1, version(query(QUERY, null)));
+        }
+
+        @Test
+        void missedNotificationsDropEverything() {
+            query(QUERY, null);
+            version.incrementAndGet();
+
+            listener.invalidateAll();
+
+            assertEquals(1, version(query(QUERY, null)));
+        }
+    }
+}
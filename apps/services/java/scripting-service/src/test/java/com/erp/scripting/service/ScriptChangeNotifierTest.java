@@ -0,0 +1,117 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the proxy cache invalidations of ScriptChangeNotifier — they are sent by a
+ * background thread, and repeated invalidations of one service and company are merged while
+ * they wait.
+ */
+class ScriptChangeNotifierTest {
+
+    private DataSource dataSource;
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstSend = new CountDownLatch(1);
+    private final CountDownLatch database = new CountDownLatch(1);
+    private ScriptChangeNotifier notifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        // The listener finds no notifications
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+        PGConnection pgConnection = mock(PGConnection.class);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getNotifications(anyInt())).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            return null;
+        });
+        // The first notification is held up until the test lets the database answer
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement("SELECT pg_notify(?, ?)")).thenReturn(statement);
+        doAnswer(invocation -> {
+            sent.add(invocation.getArgument(1));
+            return null;
+        }).when(statement).setString(eq(2), anyString());
+        when(statement.execute()).thenAnswer(invocation -> {
+            firstSend.countDown();
+            database.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.countDown();
+        notifier.stop();
+    }
+
+    private void start(boolean proxyListenNotify) {
+        notifier = TestValues.withDefaults(new ScriptChangeNotifier(dataSource, mock(ScriptTriggerIndex.class),
+                mock(ScriptLibraryService.class)), Map.of("proxyCacheEnabled", true, "proxyListenNotify", proxyListenNotify,
+                "enabled", false));
+        notifier.start();
+    }
+
+    @Test
+    void publishingDoesNotWaitForTheDatabase() throws Exception {
+        start(true);
+        notifier.publishProxyInvalidation("shop", "c1");
+        assertTrue(firstSend.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        notifier.publishProxyInvalidation("shop", "c2");
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+    }
+
+    @Test
+    void repeatedInvalidationsAreMergedWhileWaiting() throws Exception {
+        start(true);
+        notifier.publishProxyInvalidation("shop", "c1");
+        assertTrue(firstSend.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            notifier.publishProxyInvalidation("shop", "c1");
+            notifier.publishProxyInvalidation("accounting", "c1");
+        }
+        notifier.publishProxyInvalidation("shop", "c2");
+
+        database.countDown();
+
+        List<String> expected = List.of("PROXY|shop|c1", "PROXY|shop|c1", "PROXY|accounting|c1", "PROXY|shop|c2");
+        for (int i = 0; i < 100 && sent.size() < expected.size(); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, sent);
+    }
+
+    @Test
+    void nothingIsSentWhenSwitchedOff() throws Exception {
+        start(false);
+
+        notifier.publishProxyInvalidation("shop", "c1");
+
+        assertFalse(firstSend.await(200, TimeUnit.MILLISECONDS));
+        verify(dataSource, never()).getConnection();
+    }
+}
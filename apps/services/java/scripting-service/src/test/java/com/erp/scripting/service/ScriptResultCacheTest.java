@@ -0,0 +1,215 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.engine.GraalJSEngine;
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.entity.Script.ScriptType;
+import com.erp.scripting.repository.ScriptExecutionRepository;
+import com.erp.scripting.repository.ScriptRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ScriptResultCache — what makes up the key of a deterministic run, and that
+ * ScriptService answers repeated inputs from the cache without running the script.
+ */
+class ScriptResultCacheTest {
+
+    private ScriptLibraryService libraryService;
+    private ScriptResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        libraryService = mock(ScriptLibraryService.class);
+        when(libraryService.revision(any())).thenReturn("");
+        cache = createCache(Map.of());
+    }
+
+    private ScriptResultCache createCache(Map<String, Object> overrides) {
+        ScriptResultCache created = new ScriptResultCache(new ObjectMapper(), new SimpleMeterRegistry(), libraryService);
+        TestValues.withDefaults(created, overrides);
+        ReflectionTestUtils.invokeMethod(created, "init");
+        return created;
+    }
+
+    private static Script script(boolean deterministic, int version) {
+        return Script.builder()
+                .id(UUID.randomUUID())
+                .companyId(UUID.randomUUID())
+                .name("price")
+                .code("return input.qty * 2;")
+                .type(ScriptType.CALCULATION)
+                .isDeterministic(deterministic)
+                .isActive(true)
+                .version(version)
+                .build();
+    }
+
+    // ── Keys ─────────────────────────────────────────────────────────────────
+
+    @Nested
+    class Keys {
+
+        @Test
+        void onlyDeterministicScriptsAreCached() {
+            assertNull(cache.key(script(false, 1), Map.of("qty", 1)));
+            assertNotNull(cache.key(script(true, 1), Map.of("qty", 1)));
+        }
+
+        @Test
+        void disabledCacheHasNoKeys() {
+            assertNull(createCache(Map.of("enabled", false)).key(script(true, 1), Map.of("qty", 1)));
+        }
+
+        @Test
+        void equalInputsShareAKeyRegardlessOfMapOrder() {
+            Script script = script(true, 1);
+            Map<String, Object> first = new LinkedHashMap<>();
+            first.put("qty", 1);
+            first.put("item", Map.of("a", 1, "b", 2));
+            Map<String, Object> second = new LinkedHashMap<>();
+            second.put("item", new LinkedHashMap<>(Map.of("b", 2, "a", 1)));
+            second.put("qty", 1);
+
+            assertEquals(cache.key(script, first), cache.key(script, second));
+            assertNotEquals(cache.key(script, first), cache.key(script, Map.of("qty", 2)));
+            assertEquals(cache.key(script, null), cache.key(script, Map.of()));
+        }
+
+        @Test
+        void versionAndLibraryRevisionsArePartOfTheKey() {
+            Script script = script(true, 1);
+            ScriptResultCache.Key before = cache.key(script, Map.of("qty", 1));
+            cache.put(before, 2);
+
+            script.setVersion(2);
+            assertNull(cache.get(cache.key(script, Map.of("qty", 1))));
+
+            script.setVersion(1);
+            when(libraryService.revision(script)).thenReturn("vat@4");
+            assertNull(cache.get(cache.key(script, Map.of("qty", 1))));
+            assertEquals(2, cache.get(before).result());
+        }
+    }
+
+    // ── Entries ──────────────────────────────────────────────────────────────
+
+    @Nested
+    class Entries {
+
+        @Test
+        void nullResultsAreHitsToo() {
+            ScriptResultCache.Key key = cache.key(script(true, 1), Map.of());
+
+            assertNull(cache.get(key));
+            cache.put(key, null);
+
+            ScriptResultCache.Hit hit = cache.get(key);
+            assertNotNull(hit);
+            assertNull(hit.result());
+        }
+
+        @Test
+        void evictionDropsEveryResultOfTheScript() {
+            Script script = script(true, 1);
+            Script other = script(true, 1);
+            ScriptResultCache.Key first = cache.key(script, Map.of("qty", 1));
+            ScriptResultCache.Key second = cache.key(script, Map.of("qty", 2));
+            ScriptResultCache.Key kept = cache.key(other, Map.of("qty", 1));
+            cache.put(first, 2);
+            cache.put(second, 4);
+            cache.put(kept, 2);
+
+            cache.evict(script.getId());
+
+            assertNull(cache.get(first));
+            assertNull(cache.get(second));
+            assertNotNull(cache.get(kept));
+        }
+
+        @Test
+        void nullKeysAreIgnored() {
+            cache.put(null, 1);
+
+            assertNull(cache.get(null));
+        }
+    }
+
+    // ── Service ──────────────────────────────────────────────────────────────
+
+    @Nested
+    class Service {
+
+        private GraalJSEngine jsEngine;
+        private ScriptService scriptService;
+
+        @BeforeEach
+        void setUp() {
+            jsEngine = mock(GraalJSEngine.class);
+            scriptService = new ScriptService(mock(ScriptRepository.class), mock(ScriptExecutionRepository.class),
+                    jsEngine, mock(ScriptTriggerIndex.class), mock(ScriptChangeNotifier.class),
+                    mock(ExecutionAuditWriter.class), mock(ExecutionStatsService.class),
+                    mock(ScriptScheduleStore.class), cache, libraryService);
+            TestValues.withDefaults(scriptService);
+        }
+
+        @AfterEach
+        void tearDown() {
+            scriptService.shutdownTriggerExecutor();
+        }
+
+        private void engineReturns(GraalJSEngine.ExecutionResult result) {
+            when(jsEngine.execute(any(), anyInt(), anyString(), any(), any(), any())).thenReturn(result);
+        }
+
+        @Test
+        void repeatedInputsAreAnsweredWithoutRunningTheScript() {
+            Script script = script(true, 1);
+            engineReturns(GraalJSEngine.ExecutionResult.success(List.of(2), 5));
+
+            ScriptService.ScriptExecutionResult first = scriptService.executeScript(script, Map.of("qty", 1), null);
+            ScriptService.ScriptExecutionResult second = scriptService.executeScript(script, Map.of("qty", 1), null);
+
+            assertEquals(List.of(2), first.result());
+            assertTrue(second.success());
+            assertEquals(List.of(2), second.result());
+            verify(jsEngine, times(1)).execute(any(), anyInt(), anyString(), any(), any(), any());
+        }
+
+        @Test
+        void failedRunsAreNotCached() {
+            Script script = script(true, 1);
+            engineReturns(GraalJSEngine.ExecutionResult.error("boom", 5));
+
+            scriptService.executeScript(script, Map.of("qty", 1), null);
+            scriptService.executeScript(script, Map.of("qty", 1), null);
+
+            verify(jsEngine, times(2)).execute(any(), anyInt(), anyString(), any(), any(), any());
+        }
+
+        @Test
+        void nonDeterministicScriptsAlwaysRun() {
+            Script script = script(false, 1);
+            engineReturns(GraalJSEngine.ExecutionResult.success(2, 5));
+
+            scriptService.executeScript(script, Map.of("qty", 1), null);
+            scriptService.executeScript(script, Map.of("qty", 1), null);
+
+            verify(jsEngine, times(2)).execute(any(), anyInt(), anyString(), any(), any(), any());
+        }
+    }
+}
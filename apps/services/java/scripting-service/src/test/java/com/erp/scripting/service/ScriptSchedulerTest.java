@@ -0,0 +1,265 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.entity.Script.ScriptType;
+import com.erp.scripting.entity.Script.TriggerEvent;
+import com.erp.scripting.repository.ScriptRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for scheduled scripts — claiming due runs with SKIP LOCKED leases in
+ * ScriptScheduleStore, and running, skipping and rescheduling them in ScriptScheduler.
+ * The database is mocked.
+ */
+class ScriptSchedulerTest {
+
+    private static Script scheduled(String cron) {
+        return Script.builder()
+                .id(UUID.randomUUID())
+                .companyId(UUID.randomUUID())
+                .name("nightly")
+                .code("return 1;")
+                .type(ScriptType.AUTOMATION)
+                .triggerEvent(TriggerEvent.SCHEDULED)
+                .scheduleCron(cron)
+                .isActive(true)
+                .version(1)
+                .build();
+    }
+
+    // ── Store ────────────────────────────────────────────────────────────────
+
+    @Nested
+    class Store {
+
+        private JdbcTemplate jdbcTemplate;
+        private ScriptScheduleStore store;
+
+        @BeforeEach
+        void setUp() {
+            jdbcTemplate = mock(JdbcTemplate.class);
+            store = TestValues.withDefaults(
+                    new ScriptScheduleStore(mock(DataSource.class), mock(PlatformTransactionManager.class)));
+            ReflectionTestUtils.setField(store, "jdbcTemplate", jdbcTemplate);
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void claimsLeaseDueRowsSkippingLockedOnes() throws Exception {
+            UUID scriptId = UUID.randomUUID();
+            Instant due = Instant.parse("2026-01-01T02:00:00Z");
+            ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+            ArgumentCaptor<RowMapper<ScriptScheduleStore.Claim>> mapper = ArgumentCaptor.forClass(RowMapper.class);
+            when(jdbcTemplate.query(sql.capture(), mapper.capture(), eq(3), eq("replica-1"), eq(300L)))
+                    .thenReturn(List.of(new ScriptScheduleStore.Claim(scriptId, due)));
+
+            List<ScriptScheduleStore.Claim> claims = store.claimDue("replica-1", 3, Duration.ofMinutes(5));
+
+            assertEquals(List.of(new ScriptScheduleStore.Claim(scriptId, due)), claims);
+            assertTrue(sql.getValue().contains("FOR UPDATE SKIP LOCKED"), sql.getValue());
+            assertTrue(sql.getValue().contains("lease_until IS NULL OR lease_until < now()"), sql.getValue());
+            ResultSet row = mock(ResultSet.class);
+            when(row.getObject("script_id", UUID.class)).thenReturn(scriptId);
+            when(row.getTimestamp("next_run_at")).thenReturn(Timestamp.from(due));
+            assertEquals(new ScriptScheduleStore.Claim(scriptId, due), mapper.getValue().mapRow(row, 0));
+        }
+
+        @Test
+        void nothingDueMeansNoClaims() {
+            assertEquals(List.of(), store.claimDue("replica-1", 3, Duration.ofMinutes(5)));
+        }
+
+        @Test
+        void completingOnlyTouchesTheOwnLease() {
+            UUID scriptId = UUID.randomUUID();
+            Instant ranFor = Instant.parse("2026-01-01T02:00:00Z");
+            Instant next = Instant.parse("2026-01-02T02:00:00Z");
+
+            store.complete(scriptId, "replica-1", ranFor, next);
+
+            verify(jdbcTemplate).update(contains("WHERE script_id = ? AND lease_owner = ?"),
+                    eq(Timestamp.from(next)), eq(Timestamp.from(ranFor)), eq(scriptId), eq("replica-1"));
+        }
+
+        @Test
+        void runsAreSpreadByAStableJitter() {
+            Script script = scheduled("0 0 2 * * *");
+            Instant after = Instant.parse("2026-01-01T00:00:00Z");
+
+            Instant next = store.nextRun(script, after);
+
+            Instant cronTime = Instant.parse("2026-01-01T02:00:00Z");
+            assertFalse(next.isBefore(cronTime));
+            assertTrue(next.isBefore(cronTime.plusSeconds(30)));
+            assertEquals(next, store.nextRun(script, after));
+            // The run at the cron time plus jitter is not due again right after it
+            assertEquals(next.plus(Duration.ofDays(1)), store.nextRun(script, next));
+        }
+
+        @Test
+        void timeZonesShiftTheCronTime() {
+            Script script = scheduled("0 0 2 * * *");
+            script.setScheduleTimezone("Europe/Berlin");
+            ReflectionTestUtils.setField(store, "maxJitterSeconds", 0L);
+
+            assertEquals(Instant.parse("2026-01-01T01:00:00Z"),
+                    store.nextRun(script, Instant.parse("2026-01-01T00:00:00Z")));
+        }
+    }
+
+    // ── Polling ──────────────────────────────────────────────────────────────
+
+    @Nested
+    class Polling {
+
+        private ScriptScheduleStore store;
+        private ScriptRepository repository;
+        private ScriptService scriptService;
+        private SimpleMeterRegistry meterRegistry;
+        private ScriptScheduler scheduler;
+        private String owner;
+
+        @BeforeEach
+        void setUp() {
+            store = mock(ScriptScheduleStore.class);
+            repository = mock(ScriptRepository.class);
+            scriptService = mock(ScriptService.class);
+            meterRegistry = new SimpleMeterRegistry();
+            scheduler = new ScriptScheduler(store, repository, scriptService, meterRegistry);
+            TestValues.withDefaults(scheduler, Map.of("maxInFlight", 2));
+            ReflectionTestUtils.invokeMethod(scheduler, "init");
+            owner = (String) ReflectionTestUtils.getField(scheduler, "owner");
+            when(scriptService.executeScript(any(), any(), isNull()))
+                    .thenReturn(new ScriptService.ScriptExecutionResult(UUID.randomUUID(), true, 1, null, 1, 0, 0, null));
+        }
+
+        @AfterEach
+        void tearDown() {
+            ReflectionTestUtils.invokeMethod(scheduler, "shutdown");
+        }
+
+        private void configure(Map<String, Object> overrides) {
+            overrides.forEach((name, value) -> ReflectionTestUtils.setField(scheduler, name, value));
+        }
+
+        private Script claimed(Instant scheduledAt) {
+            Script script = scheduled("0 0 2 * * *");
+            when(repository.findById(script.getId())).thenReturn(Optional.of(script));
+            when(store.claimDue(eq(owner), anyInt(), any()))
+                    .thenReturn(List.of(new ScriptScheduleStore.Claim(script.getId(), scheduledAt)));
+            return script;
+        }
+
+        private double runs(String outcome) {
+            return meterRegistry.get("scripting.scheduler.runs").tag("outcome", outcome).counter().count();
+        }
+
+        @Test
+        void claimsNoMoreThanTheFreeRunSlots() {
+            scheduler.poll();
+
+            verify(store).claimDue(owner, 2, Duration.ofSeconds(300));
+        }
+
+        @Test
+        void runsTheClaimedScriptAndReleasesTheLease() {
+            Instant scheduledAt = Instant.now().minusSeconds(1);
+            Script script = claimed(scheduledAt);
+            Instant next = Instant.now().plus(Duration.ofDays(1));
+            when(store.nextRun(eq(script), any())).thenReturn(next);
+
+            scheduler.poll();
+
+            verify(store, timeout(5_000)).complete(script.getId(), owner, scheduledAt, next);
+            verify(scriptService).executeScript(eq(script), argThat(input ->
+                    ((Map<?, ?>) input.get("schedule")).get("scheduledAt").equals(scheduledAt.toString())), isNull());
+            assertEquals(1.0, runs("success"));
+        }
+
+        @Test
+        void runsOfDeletedScriptsAreDropped() {
+            UUID scriptId = UUID.randomUUID();
+            when(repository.findById(scriptId)).thenReturn(Optional.empty());
+            when(store.claimDue(eq(owner), anyInt(), any()))
+                    .thenReturn(List.of(new ScriptScheduleStore.Claim(scriptId, Instant.now())));
+
+            scheduler.poll();
+
+            verify(store, timeout(5_000)).remove(scriptId);
+            verifyNoInteractions(scriptService);
+        }
+
+        @Test
+        void skipModeDropsMisfiredRuns() {
+            configure(Map.of("catchUp", "skip"));
+            Script script = claimed(Instant.now().minus(Duration.ofMinutes(10)));
+            when(store.nextRun(eq(script), any())).thenReturn(Instant.now().plus(Duration.ofDays(1)));
+
+            scheduler.poll();
+
+            verify(store, timeout(5_000)).complete(eq(script.getId()), eq(owner), any(), any());
+            verifyNoInteractions(scriptService);
+            assertEquals(1.0, runs("skipped"));
+        }
+
+        @Test
+        void catchUpAllContinuesFromTheMissedRunWithinTheWindow() {
+            configure(Map.of("catchUp", "all"));
+            Instant scheduledAt = Instant.now().minus(Duration.ofMinutes(10));
+            Script script = claimed(scheduledAt);
+            when(store.nextRun(eq(script), any())).thenReturn(scheduledAt.plus(Duration.ofMinutes(5)));
+
+            scheduler.poll();
+
+            verify(store, timeout(5_000)).complete(eq(script.getId()), eq(owner), any(), any());
+            verify(store).nextRun(script, scheduledAt);
+        }
+
+        @Test
+        void catchUpAllNeverGoesBackFurtherThanTheWindow() {
+            configure(Map.of("catchUp", "all"));
+            Script script = claimed(Instant.now().minus(Duration.ofHours(5)));
+            when(store.nextRun(eq(script), any())).thenReturn(Instant.now());
+            Instant windowStart = Instant.now().minus(Duration.ofMinutes(60));
+
+            scheduler.poll();
+
+            verify(store, timeout(5_000)).complete(eq(script.getId()), eq(owner), any(), any());
+            ArgumentCaptor<Instant> after = ArgumentCaptor.forClass(Instant.class);
+            verify(store).nextRun(eq(script), after.capture());
+            assertFalse(after.getValue().isBefore(windowStart));
+        }
+
+        @Test
+        void failingClaimsAreRetriedOnTheNextPoll() {
+            when(store.claimDue(any(), anyInt(), any())).thenThrow(new IllegalStateException("database down"));
+
+            assertDoesNotThrow(scheduler::poll);
+            verifyNoInteractions(scriptService);
+        }
+    }
+}
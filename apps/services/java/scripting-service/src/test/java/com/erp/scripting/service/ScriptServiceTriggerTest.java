@@ -0,0 +1,158 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.TestValues;
+import com.erp.scripting.engine.GraalJSEngine;
+import com.erp.scripting.entity.Script;
+import com.erp.scripting.entity.Script.ScriptType;
+import com.erp.scripting.entity.Script.TriggerEvent;
+import com.erp.scripting.entity.ScriptExecution.ExecutionStatus;
+import com.erp.scripting.repository.ScriptExecutionRepository;
+import com.erp.scripting.repository.ScriptRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ScriptService.executeTrigger — BEFORE_* pipelines, parallel fan-out and the
+ * trigger deadline. The engine is mocked.
+ */
+class ScriptServiceTriggerTest {
+
+    private static final UUID COMPANY = UUID.randomUUID();
+
+    private GraalJSEngine jsEngine;
+    private ScriptTriggerIndex triggerIndex;
+    private ExecutionAuditWriter auditWriter;
+    private ExecutionStatsService statsService;
+    private ScriptService scriptService;
+
+    @BeforeEach
+    void setUp() {
+        jsEngine = mock(GraalJSEngine.class);
+        triggerIndex = mock(ScriptTriggerIndex.class);
+        auditWriter = mock(ExecutionAuditWriter.class);
+        statsService = mock(ExecutionStatsService.class);
+        scriptService = new ScriptService(mock(ScriptRepository.class), mock(ScriptExecutionRepository.class), jsEngine,
+                triggerIndex, mock(ScriptChangeNotifier.class), auditWriter, statsService,
+                mock(ScriptScheduleStore.class), mock(ScriptResultCache.class), mock(ScriptLibraryService.class));
+        TestValues.withDefaults(scriptService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scriptService.shutdownTriggerExecutor();
+    }
+
+    private Script script(String name, ScriptType type, int minutesAgo) {
+        return Script.builder()
+                .id(UUID.randomUUID())
+                .companyId(COMPANY)
+                .name(name)
+                .code(name)
+                .type(type)
+                .triggerEvent(TriggerEvent.AFTER_CREATE)
+                .isActive(true)
+                .version(1)
+                .createdAt(OffsetDateTime.now().minusMinutes(minutesAgo))
+                .build();
+    }
+
+    private void registered(Script... scripts) {
+        when(triggerIndex.find(eq(COMPANY), any(), eq("order"), any())).thenReturn(List.of(scripts));
+    }
+
+    private void engineRuns(String code, long sleepMs, GraalJSEngine.ExecutionResult result) {
+        when(jsEngine.execute(any(), anyInt(), eq(code), any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            Thread.sleep(sleepMs);
+            return result;
+        });
+    }
+
+    @Test
+    void beforeEventsPipeTransformationsInCreationOrder() {
+        Script validate = script("validate", ScriptType.VALIDATION, 1);
+        Script transform = script("transform", ScriptType.TRANSFORMATION, 2);
+        registered(validate, transform);
+        engineRuns("transform", 0, GraalJSEngine.ExecutionResult.success(Map.of("total", 2), 1));
+        engineRuns("validate", 0, GraalJSEngine.ExecutionResult.success(true, 1));
+
+        List<ScriptService.ScriptExecutionResult> results = scriptService.executeTrigger(
+                COMPANY, TriggerEvent.BEFORE_CREATE, "order", Map.of("total", 1), null);
+
+        assertEquals(List.of(Map.of("total", 2), true), results.stream().map(ScriptService.ScriptExecutionResult::result).toList());
+        verify(jsEngine).execute(any(), anyInt(), eq("validate"), eq(Map.of("total", 2)), any(), any(), anyLong());
+    }
+
+    @Test
+    void afterEventsRunInParallel() {
+        registered(script("a", ScriptType.AUTOMATION, 1), script("b", ScriptType.AUTOMATION, 2));
+        engineRuns("a", 300, GraalJSEngine.ExecutionResult.success("a", 300));
+        engineRuns("b", 300, GraalJSEngine.ExecutionResult.success("b", 300));
+
+        long start = System.nanoTime();
+        List<ScriptService.ScriptExecutionResult> results = scriptService.executeTrigger(
+                COMPANY, TriggerEvent.AFTER_CREATE, "order", Map.of(), null);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 550);
+        assertEquals(List.of("b", "a"), results.stream().map(ScriptService.ScriptExecutionResult::result).toList());
+        verify(auditWriter, times(2)).record(any(), any(), any(), any());
+    }
+
+    @Test
+    void runsAreStoppedAtTheTriggerDeadline() {
+        registered(script("slow", ScriptType.AUTOMATION, 1));
+        engineRuns("slow", 0, GraalJSEngine.ExecutionResult.success(null, 0));
+
+        long before = System.nanoTime();
+        scriptService.executeTrigger(COMPANY, TriggerEvent.AFTER_CREATE, "order", Map.of(), null, 200L);
+        long after = System.nanoTime();
+
+        long limit = TimeUnit.MILLISECONDS.toNanos(200);
+        verify(jsEngine).execute(any(), anyInt(), eq("slow"), any(), any(), any(),
+                longThat(deadline -> deadline - before >= limit && deadline - after <= limit));
+    }
+
+    @Test
+    void aRunPastTheDeadlineIsRecordedOnlyAsCancelled() {
+        registered(script("slow", ScriptType.AUTOMATION, 1));
+        // Finishes well after the trigger gave up on it
+        engineRuns("slow", 300, GraalJSEngine.ExecutionResult.success("late", 300));
+
+        List<ScriptService.ScriptExecutionResult> results = scriptService.executeTrigger(
+                COMPANY, TriggerEvent.AFTER_CREATE, "order", Map.of(), null, 50L);
+
+        assertEquals("Trigger deadline exceeded", results.get(0).error());
+        verify(auditWriter, after(500).times(1)).record(any(), any(), any());
+        verify(auditWriter, never()).record(any(), any(), any(), any());
+        verify(statsService, times(1)).record(any(), any(), anyLong());
+        verify(statsService).record(any(), eq(ExecutionStatus.CANCELLED), anyLong());
+    }
+
+    @Test
+    void aRunStoppedAtTheDeadlineIsRecordedOnce() {
+        registered(script("slow", ScriptType.AUTOMATION, 1));
+        // Stopped by the engine at the same moment the trigger stops waiting
+        when(jsEngine.execute(any(), anyInt(), eq("slow"), any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            long deadline = invocation.getArgument(6);
+            Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            return GraalJSEngine.ExecutionResult.timeout(100);
+        });
+
+        List<ScriptService.ScriptExecutionResult> results = scriptService.executeTrigger(
+                COMPANY, TriggerEvent.AFTER_CREATE, "order", Map.of(), null, 100L);
+
+        assertFalse(results.get(0).success());
+        verify(statsService, after(400).times(1)).record(any(), any(), anyLong());
+        assertEquals(1, mockingDetails(auditWriter).getInvocations().size());
+    }
+}
@@ -0,0 +1,151 @@
+package com.erp.scripting.service;
+
+import com.erp.scripting.service.ServiceCircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ServiceCircuitBreaker — opening on the failure rate of the window, failing
+ * fast while open, and closing again only after successful half-open probes.
+ */
+class ServiceCircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2_000);
+
+    /** Window of 4, at least 4 calls, opens at 50% failures, 1s slow-call threshold, 2 probes */
+    private static ServiceCircuitBreaker breaker(long openMs) {
+        return new ServiceCircuitBreaker("sales", 4, 4, 50, 1_000, openMs, 2);
+    }
+
+    private static void call(ServiceCircuitBreaker breaker, boolean failed, long durationNanos) {
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(failed, durationNanos);
+    }
+
+    @Test
+    void staysClosedUntilTheMinimumNumberOfCalls() {
+        ServiceCircuitBreaker breaker = breaker(60_000);
+
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+
+        assertEquals(State.CLOSED, breaker.state());
+        call(breaker, false, FAST);
+        assertEquals(State.OPEN, breaker.state());
+    }
+
+    @Test
+    void opensAtTheFailureRateThresholdAndFailsFast() {
+        ServiceCircuitBreaker breaker = breaker(60_000);
+
+        call(breaker, false, FAST);
+        call(breaker, false, FAST);
+        call(breaker, false, FAST);
+        call(breaker, true, FAST);
+        assertEquals(State.CLOSED, breaker.state());
+
+        call(breaker, true, FAST);
+
+        assertEquals(State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void slowCallsCountAsFailures() {
+        ServiceCircuitBreaker breaker = breaker(60_000);
+
+        call(breaker, false, FAST);
+        call(breaker, false, FAST);
+        call(breaker, false, SLOW);
+        call(breaker, false, SLOW);
+
+        assertEquals(State.OPEN, breaker.state());
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        ServiceCircuitBreaker breaker = breaker(60_000);
+
+        call(breaker, true, FAST);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+        call(breaker, true, FAST);
+
+        // The first failure has dropped out: 1 of the last 4 calls failed
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void successfulProbesCloseTheBreaker() {
+        ServiceCircuitBreaker breaker = breaker(0);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+
+        assertEquals(State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        // Only as many probes as configured are in flight at once
+        assertFalse(breaker.tryAcquire());
+        breaker.onResult(false, FAST);
+        breaker.onResult(false, FAST);
+
+        assertEquals(State.CLOSED, breaker.state());
+        // The window starts over: three new failures are below the minimum
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void failedProbeOpensTheBreakerAgain() {
+        ServiceCircuitBreaker breaker = breaker(60_000);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+        // Let the open period end
+        ReflectionTestUtils.setField(breaker, "openUntil", System.nanoTime());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(true, FAST);
+
+        assertEquals(State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void releasedProbePermitsCanBeTakenAgain() {
+        ServiceCircuitBreaker breaker = breaker(0);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+
+        breaker.release();
+
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void lateResultsWhileOpenAreIgnored() {
+        ServiceCircuitBreaker breaker = breaker(60_000);
+        assertTrue(breaker.tryAcquire());
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+
+        breaker.onResult(false, FAST);
+
+        assertEquals(State.OPEN, breaker.state());
+    }
+}
@@ -0,0 +1,75 @@
+package com.erp.scripting.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Local HTTP endpoint standing in for a downstream ERP service. Answers every POST with the
+ * responder's reply and keeps the parsed request bodies.
+ */
+final class TestGraphQLServer implements AutoCloseable {
+
+    record Reply(int status, String body) {
+        static Reply ok(String body) {
+            return new Reply(200, body);
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Map<String, Object>> requests = new CopyOnWriteArrayList<>();
+    private volatile Function<Map<String, Object>, Reply> responder = request -> Reply.ok("{\"data\":{}}");
+
+    TestGraphQLServer() {
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/", exchange -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> request = MAPPER.readValue(exchange.getRequestBody().readAllBytes(), Map.class);
+            requests.add(request);
+            Reply reply = responder.apply(request);
+            byte[] body = reply.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(reply.status(), body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        // Requests are answered concurrently, so a responder may hold one back
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void respond(Function<Map<String, Object>, Reply> responder) {
+        this.responder = responder;
+    }
+
+    List<Map<String, Object>> requests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}